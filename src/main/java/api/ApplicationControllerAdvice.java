@@ -1,5 +1,10 @@
 package api;
 
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -11,11 +16,32 @@ import org.springframework.web.server.ResponseStatusException;
 
 import api.exception.ApiErrors;
 import api.exception.BusinessException;
+import api.exception.NotFoundException;
+import api.exception.UnavailableException;
+import api.exception.ValidationErrorsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 
 @RestControllerAdvice
 public class ApplicationControllerAdvice {
 
+	private static final String ERRORS_METRIC = "library.errors";
+	private static final int RETRY_AFTER_SECONDS = 1;
+	private static final String CONCURRENT_UPDATE = "Resource was changed by another request";
+
+	private MeterRegistry registry;
+	private Counter validationErrors;
+	private Counter businessErrors;
+	private Counter notFoundErrors;
 
+	public ApplicationControllerAdvice(ObjectProvider<MeterRegistry> registry) {
+		this.registry = registry.getIfAvailable(() -> Metrics.globalRegistry);
+		// contadores dos erros mais frequentes resolvidos uma vez, sem busca no registry a cada erro
+		this.validationErrors = this.registry.counter(ERRORS_METRIC, "exception", "ValidationErrorsException", "status", "400");
+		this.businessErrors = this.registry.counter(ERRORS_METRIC, "exception", "BusinessException", "status", "400");
+		this.notFoundErrors = this.registry.counter(ERRORS_METRIC, "exception", "NotFoundException", "status", "404");
+	}
 
 	
 	/**
@@ -26,10 +52,29 @@ public class ApplicationControllerAdvice {
 	@ExceptionHandler(MethodArgumentNotValidException.class)  
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
 	public ApiErrors handleValidationExceptions(MethodArgumentNotValidException ex) {
+		registry.counter(ERRORS_METRIC, "exception", "MethodArgumentNotValidException", "status", "400").increment();
 		BindingResult bindResult = ex.getBindingResult();
+		if (bindResult.getErrorCount() == 1) {
+			return ApiErrors.of(bindResult.getAllErrors().get(0).getDefaultMessage());
+		}
 		return new ApiErrors(bindResult);
 	}
 
+	/**
+	 * Exception para payload inválido validado pelo próprio controller
+	 * @param ValidationErrorsException
+	 * @return ApiErrors(errors)
+	 */
+	@ExceptionHandler(ValidationErrorsException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public ApiErrors handleValidationExceptions(ValidationErrorsException ex) {
+		validationErrors.increment();
+		if (ex.getErrors().size() == 1) {
+			return ApiErrors.of(ex.getErrors().get(0));
+		}
+		return new ApiErrors(ex.getErrors());
+	}
+
 	/**
 	 * Exception para regra de negócio
 	 * @param BusinessException
@@ -38,11 +83,52 @@ public class ApplicationControllerAdvice {
 	@ExceptionHandler(BusinessException.class)
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
 	public ApiErrors handleValidationExceptions(BusinessException ex) {
-		return new ApiErrors(ex);
+		businessErrors.increment();
+		return ApiErrors.of(ex.getMessage());
+	}
+
+	/**
+	 * Exception para recurso inexistente
+	 * @param NotFoundException
+	 * @return ApiErrors(NotFoundException ex)
+	 */
+	@ExceptionHandler(NotFoundException.class)
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	public ApiErrors handleNotFoundException(NotFoundException ex) {
+		notFoundErrors.increment();
+		return ApiErrors.of(ex.getMessage());
 	}
 
 
 
+	/**
+	 * Exception para recurso temporariamente indisponível, com Retry-After.
+	 * Marca a requisição para que o 503 não reduza o limite de concorrência do RateLimitFilter.
+	 * @param UnavailableException
+	 * @param HttpServletRequest request
+	 * @return ResponseEntity<ApiErrors>
+	 */
+	@ExceptionHandler(UnavailableException.class)
+	public ResponseEntity<ApiErrors> handleUnavailableException(UnavailableException ex, HttpServletRequest request) {
+		request.setAttribute(UnavailableException.REQUEST_ATTRIBUTE, Boolean.TRUE);
+		registry.counter(ERRORS_METRIC, "exception", "UnavailableException", "status", "503").increment();
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+				.body(ApiErrors.of(ex.getMessage()));
+	}
+
+	/**
+	 * Exception para registro alterado por outra requisição entre a leitura e a escrita (versão desatualizada)
+	 * @param OptimisticLockingFailureException
+	 * @return ApiErrors("Resource was changed by another request")
+	 */
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(HttpStatus.CONFLICT)
+	public ApiErrors handleOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+		registry.counter(ERRORS_METRIC, "exception", "OptimisticLockingFailureException", "status", "409").increment();
+		return ApiErrors.of(CONCURRENT_UPDATE);
+	}
+
 	/**
 	 * ResponseStatusException: Utilizado para lançar erros da nossa API 
 	 * @param ResponseStatusException ex
@@ -50,6 +136,7 @@ public class ApplicationControllerAdvice {
 	 */
 	@ExceptionHandler(ResponseStatusException.class)
 	public ResponseEntity<ApiErrors> handleResponseStatusException(ResponseStatusException ex) {
+		registry.counter(ERRORS_METRIC, "exception", "ResponseStatusException", "status", String.valueOf(ex.getRawStatusCode())).increment();
 		return new ResponseEntity<ApiErrors>(new ApiErrors(ex), ex.getStatus());
 	}
 }
@@ -0,0 +1,81 @@
+package api.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limite adaptativo de requisições simultâneas (AIMD): cada resposta rápida soma 1/limite (cerca de +1 por janela
+ * de limite requisições) e cada sinal de sobrecarga (lenta ou 5xx) multiplica o limite por {@link #BACKOFF}.
+ * Acima do limite a requisição é recusada na hora, em vez de esperar numa fila do pool de threads ou de conexões.
+ */
+public final class AimdConcurrencyLimiter {
+
+	static final double BACKOFF = 0.9;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong limit;
+
+	public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdNanos = latencyThresholdNanos;
+		this.limit = new AtomicLong(Double.doubleToLongBits(Math.min(Math.max(initialLimit, minLimit), maxLimit)));
+	}
+
+	public boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= getLimit()) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Libera a vaga e ajusta o limite pelo resultado da requisição.
+	 * @param long latencyNanos
+	 * @param boolean failed resposta 5xx
+	 */
+	public void release(long latencyNanos, boolean failed) {
+		inFlight.decrementAndGet();
+		adjust(failed || latencyNanos > latencyThresholdNanos);
+	}
+
+	/**
+	 * Libera a vaga sem usar a latência, para requisições cuja duração depende do tamanho da transferência
+	 * (export, lote): só uma resposta 5xx reduz o limite, e as demais não o alteram.
+	 * @param boolean failed resposta 5xx
+	 */
+	public void releaseUnmeasured(boolean failed) {
+		inFlight.decrementAndGet();
+		if (failed) {
+			adjust(true);
+		}
+	}
+
+	private void adjust(boolean overloaded) {
+		while (true) {
+			long bits = limit.get();
+			double current = Double.longBitsToDouble(bits);
+			double next = overloaded ? Math.max(minLimit, current * BACKOFF) : Math.min(maxLimit, current + 1 / current);
+			if (next == current || limit.compareAndSet(bits, Double.doubleToLongBits(next))) {
+				return;
+			}
+		}
+	}
+
+	public int getLimit() {
+		return (int) Double.longBitsToDouble(limit.get());
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+}
@@ -0,0 +1,44 @@
+package api.config;
+
+import java.time.Clock;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import api.model.repository.BookRepository;
+import api.service.memory.CatalogSnapshotService;
+import api.service.search.BookSearchIndex;
+
+/**
+ * Snapshot binário do catálogo: lido na subida (mais o delta do banco) para carregar o catálogo sem lê-lo inteiro
+ * do banco e gerado pelo endpoint
+ * de administração catalogsnapshot (POST na porta de gerenciamento) ou por library.catalog.binary-snapshot.cron.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "library.catalog.binary-snapshot.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(CatalogSnapshotProperties.class)
+public class CatalogSnapshotConfig {
+
+	@Bean
+	public CatalogSnapshotService catalogSnapshotService(CatalogSnapshotProperties properties,
+			BookRepository bookRepository, PlatformTransactionManager transactionManager,
+			ObjectProvider<BookSearchIndex> searchIndex) {
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		return new CatalogSnapshotService(properties.getFile(), properties.getMaxAge(), properties.getDeltaMargin(),
+				bookRepository, readOnly, searchIndex.getIfAvailable(), Clock.systemUTC());
+	}
+
+	@Bean
+	public CatalogSnapshotEndpoint catalogSnapshotEndpoint(CatalogSnapshotService service) {
+		return new CatalogSnapshotEndpoint(service);
+	}
+
+}
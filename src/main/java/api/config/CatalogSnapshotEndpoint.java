@@ -0,0 +1,35 @@
+package api.config;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import api.service.memory.CatalogSnapshotService;
+
+/**
+ * Administração do snapshot binário do catálogo na porta de gerenciamento:
+ * GET /actuator/catalogsnapshot mostra o arquivo atual e POST gera um novo a partir do banco.
+ */
+@Endpoint(id = "catalogsnapshot")
+public class CatalogSnapshotEndpoint {
+
+	private final CatalogSnapshotService service;
+
+	public CatalogSnapshotEndpoint(CatalogSnapshotService service) {
+		this.service = service;
+	}
+
+	@ReadOperation
+	public Map<String, Object> status() {
+		return service.status();
+	}
+
+	@WriteOperation
+	public Map<String, Object> write() {
+		service.write();
+		return service.status();
+	}
+
+}
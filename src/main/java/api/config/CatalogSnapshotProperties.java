@@ -0,0 +1,33 @@
+package api.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Snapshot binário do catálogo (library.catalog.binary-snapshot.*).
+ */
+@Data
+@ConfigurationProperties("library.catalog.binary-snapshot")
+public class CatalogSnapshotProperties {
+
+	private boolean enabled = true;
+	private Path file = Paths.get("data", "catalog.snap");
+
+	/** Snapshots mais antigos que isso são ignorados na subida, em vez de completados com o delta do banco */
+	private Duration maxAge = Duration.ofHours(24);
+
+	/**
+	 * Quanto antes do watermark o delta da subida começa: o updated_at é gravado no flush, não no commit, então
+	 * deve cobrir a maior duração de uma transação de escrita mais a diferença entre os relógios das instâncias
+	 */
+	private Duration deltaMargin = Duration.ofMinutes(5);
+
+	/** Geração agendada; "-" desliga (o snapshot ainda pode ser gerado pelo endpoint catalogsnapshot) */
+	private String cron = "-";
+
+}
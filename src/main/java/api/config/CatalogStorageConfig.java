@@ -0,0 +1,77 @@
+package api.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.model.repository.LoanRepository;
+import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.impl.InMemoryBookService;
+import api.service.memory.BookSnapshots;
+import api.service.memory.CatalogSnapshot;
+import api.service.memory.CatalogSnapshotService;
+import api.service.memory.CompactBookStore;
+
+/**
+ * Com library.catalog.storage=memory, o BookService passa a ser o InMemoryBookService, carregado do snapshot
+ * binário (CatalogSnapshotService), do NDJSON em library.catalog.snapshot ou do banco.
+ * Sem a propriedade, vale o BookServiceImpl.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.catalog.storage", havingValue = "memory")
+@EnableConfigurationProperties(CatalogStorageProperties.class)
+public class CatalogStorageConfig {
+
+	private static final Logger log = LoggerFactory.getLogger(CatalogStorageConfig.class);
+
+	/**
+	 * Origem do catálogo, na ordem: snapshot binário em dia, snapshot NDJSON e, por último, o banco.
+	 */
+	@Bean
+	public CompactBookStore compactBookStore(CatalogStorageProperties properties, ObjectMapper objectMapper,
+			ObjectProvider<CatalogSnapshotService> snapshots) {
+		long start = System.nanoTime();
+		CatalogSnapshotService snapshotService = snapshots.getIfAvailable();
+		Optional<CatalogSnapshot> binary = snapshotService == null ? Optional.empty() : snapshotService.startupSnapshot();
+		CompactBookStore store;
+		String source;
+		if (binary.isPresent()) {
+			store = binary.get().getStore();
+			source = "binary snapshot";
+		} else if (Files.isRegularFile(properties.getSnapshot())) {
+			try {
+				store = BookSnapshots.readNdjson(properties.getSnapshot(), objectMapper);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			source = properties.getSnapshot().toString();
+		} else if (snapshotService != null) {
+			store = snapshotService.readDatabase().getStore();
+			source = "database";
+		} else {
+			throw new IllegalStateException("Catalog snapshot not found: " + properties.getSnapshot());
+		}
+		log.info("Catalog loaded from {}: {} books, {} bytes in {} ms", source, store.size(), store.sizeInBytes(),
+				(System.nanoTime() - start) / 1_000_000);
+		return store;
+	}
+
+	@Bean
+	public BookService inMemoryBookService(CompactBookStore store, BookAvailabilityIndex availability,
+			LoanRepository loanRepository) {
+		return new InMemoryBookService(store, availability, loanRepository);
+	}
+
+}
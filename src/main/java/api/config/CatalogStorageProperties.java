@@ -0,0 +1,23 @@
+package api.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Armazenamento do catálogo de livros (library.catalog.*).
+ */
+@Data
+@ConfigurationProperties("library.catalog")
+public class CatalogStorageProperties {
+
+	/** jpa (banco, leitura e escrita) ou memory (CompactBookStore, somente leitura) */
+	private String storage = "jpa";
+
+	/** Snapshot NDJSON (formato do GET /api/books/export), usado com storage=memory se não houver snapshot binário em dia */
+	private Path snapshot = Paths.get("data", "books.ndjson");
+
+}
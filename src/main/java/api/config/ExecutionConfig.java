@@ -0,0 +1,80 @@
+package api.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Modo de execução das requisições, escolhido por library.execution.mode:
+ * <ul>
+ * <li>platform (padrão): pool de threads do Tomcat, uma thread de plataforma por requisição;</li>
+ * <li>async: o POST /api/loans libera a thread do Tomcat enquanto o empréstimo aguarda o fsync do journal
+ * (library.loan.journal.enabled); a resposta é escrita quando o lote é gravado. Nos outros modos o mesmo
+ * CompletableFuture já volta completo;</li>
+ * <li>virtual: cada requisição roda em uma virtual thread (requer Java 21+ em tempo de execução; em versões
+ * anteriores a inicialização falha).</li>
+ * </ul>
+ * Em todos os modos a concorrência no banco é limitada pelo pool do Hikari (spring.datasource.hikari.maximum-pool-size).
+ */
+@Configuration
+public class ExecutionConfig {
+
+	public static final String MODE = "library.execution.mode";
+	public static final String ASYNC = "async";
+	static final String VIRTUAL = "virtual";
+
+	private static final Logger log = LoggerFactory.getLogger(ExecutionConfig.class);
+
+	public ExecutionConfig(Environment environment) {
+		if (VIRTUAL.equals(environment.getProperty(MODE)) && !virtualThreadsAvailable()) {
+			throw new IllegalStateException(MODE + "=virtual requires Java 21 or newer, running on " + Runtime.version());
+		}
+	}
+
+	/**
+	 * Executor das requisições no modo virtual; encerrado junto com o contexto, depois que o Tomcat para.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	@ConditionalOnProperty(name = MODE, havingValue = VIRTUAL)
+	public ExecutorService virtualThreadExecutor() {
+		log.info("Serving requests on virtual threads");
+		return newVirtualThreadPerTaskExecutor();
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = MODE, havingValue = VIRTUAL)
+	public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(
+			@Qualifier("virtualThreadExecutor") ExecutorService executor) {
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+
+	static boolean virtualThreadsAvailable() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * O projeto compila com Java 11, então a fábrica de virtual threads é obtida por reflexão.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create the virtual thread executor", e);
+		}
+	}
+
+}
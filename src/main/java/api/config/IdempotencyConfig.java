@@ -0,0 +1,29 @@
+package api.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Registra o IdempotencyFilter nos endpoints de library.idempotency.paths. Com library.idempotency.enabled=false
+ * o header Idempotency-Key é ignorado.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.idempotency.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(IdempotencyProperties.class)
+public class IdempotencyConfig {
+
+	@Bean
+	public IdempotencyFilter idempotencyFilter(IdempotencyProperties properties, ObjectMapper objectMapper,
+			ObjectProvider<MeterRegistry> registry) {
+		return new IdempotencyFilter(properties.getPaths(), properties.getClientHeader(), properties.getTtl(), properties.getMaxEntries(),
+				properties.getWaitTimeout(), objectMapper, registry);
+	}
+
+}
@@ -0,0 +1,336 @@
+package api.config;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import api.exception.ApiErrors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * POSTs com o header Idempotency-Key executam uma única vez: a resposta (status, headers e corpo) fica guardada
+ * por cliente, chave e endpoint e é repetida nas retentativas sem chegar ao controller nem ao service.
+ * O cliente é o hash do header Authorization, ou o header clientHeader (preenchido por um proxy confiável), ou o
+ * endereço remoto: a mesma chave enviada por outro cliente não recebe a resposta de ninguém.
+ * Repetições que chegam enquanto a original ainda executa esperam por ela (até waitTimeout; depois, 409).
+ * Reusar a chave com outro corpo responde 422. Respostas 5xx não são guardadas, para que a retentativa execute de novo.
+ * O armazenamento é local à instância, limitado por maxEntries e expira após ttl; as requisições em andamento
+ * ficam num mapa à parte e não podem ser despejadas pelo maxEntries antes de terminar.
+ * Respostas async (library.execution.mode=async) são guardadas no despacho ASYNC que as completa.
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+	public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+	private static final int MAX_KEY_LENGTH = 255;
+	private static final String ORIGINAL = IdempotencyFilter.class.getName() + ".ORIGINAL";
+
+	private final Set<String> paths;
+	private final String clientHeader;
+	private final Cache<String, Entry> responses;
+	private final ConcurrentMap<String, Entry> inFlight = new ConcurrentHashMap<>();
+	private final Duration waitTimeout;
+	private final ObjectMapper objectMapper;
+	private final Counter replays;
+
+	public IdempotencyFilter(List<String> paths, String clientHeader, Duration ttl, long maxEntries, Duration waitTimeout,
+			ObjectMapper objectMapper, ObjectProvider<MeterRegistry> registry) {
+		this.paths = new HashSet<>(paths);
+		this.clientHeader = clientHeader;
+		this.responses = Caffeine.newBuilder()
+				.expireAfterWrite(ttl)
+				.maximumSize(maxEntries)
+				.build();
+		this.waitTimeout = waitTimeout;
+		this.objectMapper = objectMapper;
+		this.replays = Counter.builder("library.idempotency.replays")
+				.description("Responses replayed for a repeated Idempotency-Key")
+				.register(registry.getIfAvailable(() -> Metrics.globalRegistry));
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !"POST".equals(request.getMethod())
+				|| request.getHeader(IDEMPOTENCY_KEY) == null
+				|| !paths.contains(request.getRequestURI().substring(request.getContextPath().length()));
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		Original original = (Original) request.getAttribute(ORIGINAL);
+		if (original != null && isAsyncDispatch(request)) {
+			// o despacho ASYNC costuma receber o wrapper do startAsync; senão, escreve no wrapper da original
+			boolean wrapped = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class) != null;
+			proceed(original, request, wrapped ? response : original.wrapper, filterChain);
+			return;
+		}
+		String key = request.getHeader(IDEMPOTENCY_KEY).trim();
+		if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+			writeError(response, HttpStatus.BAD_REQUEST, "Idempotency-Key must have between 1 and " + MAX_KEY_LENGTH + " characters");
+			return;
+		}
+		byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+		String cacheKey = client(request) + " " + request.getRequestURI() + " " + key;
+		Entry entry = new Entry(fingerprint(body));
+		Entry previous = inFlight.putIfAbsent(cacheKey, entry);
+		if (previous == null) {
+			// a original pode ter terminado entre as duas consultas: a resposta guardada vale
+			previous = responses.getIfPresent(cacheKey);
+			if (previous != null) {
+				inFlight.remove(cacheKey, entry);
+			}
+		}
+		if (previous != null) {
+			replay(previous, entry.fingerprint, response);
+			return;
+		}
+
+		original = new Original(cacheKey, entry, new ContentCachingResponseWrapper(response));
+		request.setAttribute(ORIGINAL, original);
+		proceed(original, new CachedBodyRequest(request, body), original.wrapper, filterChain);
+	}
+
+	/**
+	 * Executa a requisição original e guarda a resposta. Numa resposta async, o controller termina em um segundo
+	 * despacho (ASYNC), que passa de novo pelo filtro e só então guarda a resposta.
+	 */
+	private void proceed(Original original, HttpServletRequest request, HttpServletResponse response,
+			FilterChain filterChain) throws ServletException, IOException {
+		boolean completed = false;
+		try {
+			filterChain.doFilter(request, response);
+			completed = true;
+		} finally {
+			if (!completed || !isAsyncStarted(request)) {
+				finish(original, completed);
+			}
+		}
+	}
+
+	private void finish(Original original, boolean completed) throws IOException {
+		StoredResponse stored = completed ? StoredResponse.of(original.wrapper) : null;
+		if (stored != null && stored.status < 500) {
+			responses.put(original.cacheKey, original.entry);
+		}
+		inFlight.remove(original.cacheKey, original.entry);
+		if (stored == null) {
+			original.entry.response.completeExceptionally(new IllegalStateException("Original request failed"));
+		} else {
+			original.entry.response.complete(stored);
+		}
+		original.wrapper.copyBodyToResponse();
+	}
+
+	private void replay(Entry original, String fingerprint, HttpServletResponse response) throws IOException {
+		if (!original.fingerprint.equals(fingerprint)) {
+			writeError(response, HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key already used with a different request");
+			return;
+		}
+		StoredResponse stored;
+		try {
+			stored = original.response.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writeError(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+			return;
+		} catch (TimeoutException e) {
+			writeError(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+			return;
+		} catch (ExecutionException e) {
+			writeError(response, HttpStatus.CONFLICT, "The request with this Idempotency-Key failed; retry it");
+			return;
+		}
+		replays.increment();
+		response.setStatus(stored.status);
+		stored.headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+		response.setHeader(IDEMPOTENT_REPLAYED, "true");
+		response.setContentLength(stored.body.length);
+		response.getOutputStream().write(stored.body);
+	}
+
+	private String client(HttpServletRequest request) {
+		String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (authorization != null) {
+			return "auth:" + fingerprint(authorization.getBytes(StandardCharsets.UTF_8));
+		}
+		String client = clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+		return client == null || client.isEmpty() ? "addr:" + request.getRemoteAddr() : "client:" + client;
+	}
+
+	private void writeError(HttpServletResponse response, HttpStatus status, String error) throws IOException {
+		response.setStatus(status.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		objectMapper.writeValue(response.getOutputStream(), ApiErrors.of(error));
+	}
+
+	private static String fingerprint(byte[] body) {
+		try {
+			return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Requisição original em andamento ou já respondida, com o hash do corpo que a criou */
+	private static final class Entry {
+
+		private final String fingerprint;
+		private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+		private Entry(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+	}
+
+	/** Requisição original executando, guardada como atributo para o despacho ASYNC de uma resposta async */
+	private static final class Original {
+
+		private final String cacheKey;
+		private final Entry entry;
+		private final ContentCachingResponseWrapper wrapper;
+
+		private Original(String cacheKey, Entry entry, ContentCachingResponseWrapper wrapper) {
+			this.cacheKey = cacheKey;
+			this.entry = entry;
+			this.wrapper = wrapper;
+		}
+
+	}
+
+	private static final class StoredResponse {
+
+		private final int status;
+		private final Map<String, List<String>> headers;
+		private final byte[] body;
+
+		private StoredResponse(int status, Map<String, List<String>> headers, byte[] body) {
+			this.status = status;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		private static StoredResponse of(ContentCachingResponseWrapper response) {
+			Map<String, List<String>> headers = new LinkedHashMap<>();
+			for (String name : response.getHeaderNames()) {
+				if (!HttpHeaders.SET_COOKIE.equalsIgnoreCase(name)) {
+					headers.put(name, new ArrayList<>(response.getHeaders(name)));
+				}
+			}
+			if (response.getContentType() != null) {
+				headers.put(HttpHeaders.CONTENT_TYPE, List.of(response.getContentType()));
+			}
+			return new StoredResponse(response.getStatus(), headers, response.getContentAsByteArray());
+		}
+
+	}
+
+	/** O corpo já foi lido para calcular o hash; o controller lê a cópia em memória */
+	private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+		private final byte[] body;
+
+		private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			ByteArrayInputStream in = new ByteArrayInputStream(body);
+			return new ServletInputStream() {
+
+				@Override
+				public int read() {
+					return in.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return in.read(b, off, len);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return in.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				/** O corpo inteiro já está em memória: os dados estão disponíveis de imediato */
+				@Override
+				public void setReadListener(ReadListener listener) {
+					try {
+						if (!isFinished()) {
+							listener.onDataAvailable();
+						}
+						listener.onAllDataRead();
+					} catch (IOException | RuntimeException e) {
+						listener.onError(e);
+					}
+				}
+
+			};
+		}
+
+		@Override
+		public BufferedReader getReader() {
+			String encoding = getCharacterEncoding();
+			Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+			return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+		}
+
+	}
+
+}
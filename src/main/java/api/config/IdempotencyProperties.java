@@ -0,0 +1,39 @@
+package api.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Chaves de idempotência (header Idempotency-Key) nos POSTs de criação (library.idempotency.*).
+ */
+@Data
+@ConfigurationProperties("library.idempotency")
+public class IdempotencyProperties {
+
+	private boolean enabled = true;
+
+	/** Endpoints (POST) que aceitam o header */
+	private List<String> paths = new ArrayList<>(Arrays.asList("/api/books", "/api/loans"));
+
+	/**
+	 * Header que identifica o cliente, preenchido por um proxy confiável (ex.: X-Client-Id). Sem Authorization e
+	 * sem esse header, as chaves são separadas pelo endereço remoto.
+	 */
+	private String clientHeader = "";
+
+	/** Por quanto tempo a resposta original é reaproveitada */
+	private Duration ttl = Duration.ofHours(24);
+
+	/** Respostas guardadas; as requisições ainda em andamento não contam nem são despejadas */
+	private long maxEntries = 100_000;
+
+	/** Quanto uma repetição espera pela requisição original ainda em andamento antes de responder 409 */
+	private Duration waitTimeout = Duration.ofSeconds(10);
+
+}
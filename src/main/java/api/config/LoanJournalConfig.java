@@ -0,0 +1,36 @@
+package api.config;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import api.service.journal.LoanJournal;
+import api.service.journal.LoanProjector;
+import api.service.journal.LoanWriteBehind;
+
+/**
+ * Com library.loan.journal.enabled=true, o LoanServiceImpl grava os empréstimos no journal e responde
+ * após o fsync; a tabela loan é atualizada em segundo plano. Sem a propriedade, o insert continua síncrono.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.loan.journal.enabled", havingValue = "true")
+@EnableConfigurationProperties(LoanJournalProperties.class)
+public class LoanJournalConfig {
+
+	@Bean
+	public LoanWriteBehind loanWriteBehind(LoanJournalProperties properties, JdbcTemplate jdbc,
+			PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory) {
+		LoanJournal journal = new LoanJournal(properties.getDir(), properties.getSegmentSize().toBytes());
+		LoanProjector projector = new LoanProjector(jdbc, new TransactionTemplate(transactionManager));
+		return new LoanWriteBehind(journal, projector, entityManagerFactory.unwrap(SessionFactoryImplementor.class),
+				properties.getMaxBatch(), properties.getReplayTimeout());
+	}
+
+}
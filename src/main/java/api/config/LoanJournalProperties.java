@@ -0,0 +1,31 @@
+package api.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+/**
+ * Journal write-behind de empréstimos (library.loan.journal.*).
+ */
+@Data
+@ConfigurationProperties("library.loan.journal")
+public class LoanJournalProperties {
+
+	private boolean enabled;
+	private Path dir = Paths.get("data", "loan-journal");
+
+	/** Tamanho a partir do qual um novo segmento é aberto */
+	private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+	/** Máximo de empréstimos por fsync e por batch de projeção */
+	private int maxBatch = 512;
+
+	/** Prazo para o replay da inicialização aplicar o journal no banco; esgotado, a aplicação não sobe */
+	private Duration replayTimeout = Duration.ofMinutes(2);
+
+}
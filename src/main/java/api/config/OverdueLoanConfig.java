@@ -0,0 +1,45 @@
+package api.config;
+
+import java.time.Clock;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.model.repository.LoanRepository;
+import api.service.overdue.FileOverdueLoanSink;
+import api.service.overdue.LoggingOverdueLoanSink;
+import api.service.overdue.OverdueLoanScanner;
+import api.service.overdue.OverdueLoanSink;
+
+/**
+ * Agenda a varredura de empréstimos em atraso (library.loan.overdue.cron). O destino padrão das notificações
+ * é escolhido por library.loan.overdue.sink; outros beans OverdueLoanSink recebem os mesmos lotes.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "library.loan.overdue.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(OverdueLoanProperties.class)
+public class OverdueLoanConfig {
+
+	@Bean
+	public OverdueLoanSink defaultOverdueLoanSink(OverdueLoanProperties properties, ObjectMapper objectMapper) {
+		if ("file".equalsIgnoreCase(properties.getSink())) {
+			return new FileOverdueLoanSink(properties.getFile(), objectMapper);
+		}
+		return new LoggingOverdueLoanSink();
+	}
+
+	@Bean
+	public OverdueLoanScanner overdueLoanScanner(LoanRepository repository, List<OverdueLoanSink> sinks,
+			OverdueLoanProperties properties) {
+		return new OverdueLoanScanner(repository, sinks, properties.getPeriod(), properties.getChunkSize(),
+				properties.getCheckpointFile(), Clock.systemDefaultZone());
+	}
+
+}
@@ -0,0 +1,31 @@
+package api.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Period;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Varredura de empréstimos em atraso (library.loan.overdue.*).
+ */
+@Data
+@ConfigurationProperties("library.loan.overdue")
+public class OverdueLoanProperties {
+
+	private boolean enabled = true;
+	private String cron = "0 0 6 * * *";
+
+	/** Prazo do empréstimo; depois dele, o empréstimo não devolvido está em atraso */
+	private Period period = Period.ofDays(14);
+
+	private int chunkSize = 1000;
+	private Path checkpointFile = Paths.get("data", "overdue-loans.checkpoint");
+
+	/** Destino padrão das notificações: log ou file */
+	private String sink = "log";
+	private Path file = Paths.get("data", "overdue-loans.ndjson");
+
+}
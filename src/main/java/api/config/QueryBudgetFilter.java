@@ -0,0 +1,58 @@
+package api.config;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Conta os comandos SQL executados em cada requisição e avisa no log quando passam de
+ * library.jpa.max-queries-per-request (sintoma típico de N+1). A distribuição fica na métrica library.request.queries.
+ * Consultas lentas são registradas pelo próprio Hibernate (logger org.hibernate.SQL_SLOW).
+ */
+@Component
+public class QueryBudgetFilter extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(QueryBudgetFilter.class);
+
+	private final int maxQueriesPerRequest;
+	private final DistributionSummary queries;
+
+	public QueryBudgetFilter(@Value("${library.jpa.max-queries-per-request:10}") int maxQueriesPerRequest,
+			ObjectProvider<MeterRegistry> registry) {
+		this.maxQueriesPerRequest = maxQueriesPerRequest;
+		this.queries = DistributionSummary.builder("library.request.queries")
+				.description("SQL statements executed per HTTP request")
+				.register(registry.getIfAvailable(() -> Metrics.globalRegistry));
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		QueryCounter.reset();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			int count = QueryCounter.count();
+			queries.record(count);
+			if (count > maxQueriesPerRequest) {
+				log.warn("{} {} executed {} SQL statements (budget {})", request.getMethod(), request.getRequestURI(),
+						count, maxQueriesPerRequest);
+			}
+		}
+	}
+
+}
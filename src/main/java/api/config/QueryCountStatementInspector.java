@@ -0,0 +1,19 @@
+package api.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Conta cada comando SQL preparado pelo Hibernate na thread corrente, sem alterá-lo.
+ * Registrado em spring.jpa.properties.hibernate.session_factory.statement_inspector.
+ */
+public class QueryCountStatementInspector implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public String inspect(String sql) {
+		QueryCounter.increment();
+		return sql;
+	}
+
+}
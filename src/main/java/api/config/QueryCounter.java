@@ -0,0 +1,26 @@
+package api.config;
+
+/**
+ * Contador de comandos SQL por thread, alimentado pelo {@link QueryCountStatementInspector}.
+ * O {@link QueryBudgetFilter} zera o contador a cada requisição.
+ */
+public final class QueryCounter {
+
+	private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+	private QueryCounter() {
+	}
+
+	public static void reset() {
+		COUNT.get()[0] = 0;
+	}
+
+	public static int count() {
+		return COUNT.get()[0];
+	}
+
+	static void increment() {
+		COUNT.get()[0]++;
+	}
+
+}
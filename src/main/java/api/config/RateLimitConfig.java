@@ -0,0 +1,36 @@
+package api.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Registra o RateLimitFilter nos endpoints de library.ratelimit.paths quando library.ratelimit.enabled=true
+ * (desligado por padrão).
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.ratelimit.enabled", havingValue = "true")
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig {
+
+	@Bean
+	public AimdConcurrencyLimiter aimdConcurrencyLimiter(RateLimitProperties properties) {
+		return new AimdConcurrencyLimiter(properties.getInitialConcurrency(), properties.getMinConcurrency(),
+				properties.getMaxConcurrency(), properties.getLatencyThreshold().toNanos());
+	}
+
+	@Bean
+	public RateLimitFilter rateLimitFilter(RateLimitProperties properties, AimdConcurrencyLimiter limiter,
+			ObjectMapper objectMapper, ObjectProvider<MeterRegistry> registry) {
+		return new RateLimitFilter(properties.getPaths(), properties.getStreamingPaths(), properties.getClientHeader(),
+				properties.getRequestsPerSecond(), properties.getBurst(), properties.getMaxClients(),
+				properties.getClientIdle(), limiter, objectMapper, registry);
+	}
+
+}
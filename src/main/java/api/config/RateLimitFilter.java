@@ -0,0 +1,221 @@
+package api.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import api.exception.ApiErrors;
+import api.exception.UnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Protege os endpoints de library.ratelimit.paths em duas etapas, ambas sem fila:
+ * um balde de fichas por cliente (header library.ratelimit.client-header ou endereço remoto) responde 429,
+ * e o limite adaptativo de concorrência (AimdConcurrencyLimiter) responde 503 quando o sistema está saturado.
+ * As recusas usam o mesmo corpo ApiErrors do ApplicationControllerAdvice, com Retry-After.
+ * Os caminhos de library.ratelimit.streaming-paths ocupam uma vaga de concorrência, mas a sua duração não entra
+ * no sinal de latência do limite adaptativo.
+ * Sem client-header, todos os clientes atrás de um mesmo proxy dividem o balde do endereço do proxy.
+ * Uma resposta async (library.execution.mode=async) ocupa a vaga até o fim da requisição, não só do primeiro despacho.
+ * O 503 da própria aplicação (UnavailableException, ex.: índice de busca em carga) não é sinal de sobrecarga:
+ * senão um início a frio levaria o limite ao mínimo.
+ */
+public class RateLimitFilter extends OncePerRequestFilter implements Ordered {
+
+	private static final String TOO_MANY_REQUESTS = "Too many requests";
+	private static final String OVERLOADED = "Server overloaded, retry later";
+
+	private final List<String> paths;
+	private final List<String> streamingPaths;
+	private final String clientHeader;
+	private final double requestsPerSecond;
+	private final int burst;
+	private final Cache<String, TokenBucket> buckets;
+	private final AimdConcurrencyLimiter limiter;
+	private final ObjectMapper objectMapper;
+	private final Counter rateLimited;
+	private final Counter shed;
+
+	public RateLimitFilter(List<String> paths, List<String> streamingPaths, String clientHeader, double requestsPerSecond, int burst, long maxClients,
+			Duration clientIdle, AimdConcurrencyLimiter limiter, ObjectMapper objectMapper,
+			ObjectProvider<MeterRegistry> registry) {
+		this.paths = paths;
+		this.streamingPaths = streamingPaths;
+		this.clientHeader = clientHeader;
+		this.requestsPerSecond = requestsPerSecond;
+		this.burst = burst;
+		this.buckets = Caffeine.newBuilder()
+				.expireAfterAccess(clientIdle)
+				.maximumSize(maxClients)
+				.build();
+		this.limiter = limiter;
+		this.objectMapper = objectMapper;
+		MeterRegistry meters = registry.getIfAvailable(() -> Metrics.globalRegistry);
+		this.rateLimited = Counter.builder("library.ratelimit.rejected").tag("reason", "rate")
+				.description("Requests rejected by the per-client rate limit or the concurrency limit")
+				.register(meters);
+		this.shed = Counter.builder("library.ratelimit.rejected").tag("reason", "concurrency")
+				.description("Requests rejected by the per-client rate limit or the concurrency limit")
+				.register(meters);
+		Gauge.builder("library.ratelimit.concurrency.limit", limiter, AimdConcurrencyLimiter::getLimit)
+				.description("Current adaptive concurrency limit")
+				.register(meters);
+	}
+
+	/** Antes dos demais filtros, para que a requisição recusada não custe nada além da resposta */
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE + 10;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !startsWithAny(path(request), paths);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		long now = System.nanoTime();
+		long wait = buckets.get(client(request), key -> new TokenBucket(requestsPerSecond, burst, now)).tryAcquire(now);
+		if (wait > 0) {
+			rateLimited.increment();
+			reject(response, HttpStatus.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(wait) + 1, TOO_MANY_REQUESTS);
+			return;
+		}
+		if (!limiter.tryAcquire()) {
+			shed.increment();
+			reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, OVERLOADED);
+			return;
+		}
+		boolean streaming = startsWithAny(path(request), streamingPaths);
+		boolean completed = false;
+		try {
+			filterChain.doFilter(request, response);
+			completed = true;
+		} finally {
+			if (!completed) {
+				release(now, streaming, true);
+			} else if (response.getStatus() < 500 && request.isAsyncStarted()) {
+				// resposta async: a vaga só é devolvida quando a requisição termina de fato
+				request.getAsyncContext().addListener(new Release(now, streaming, request, response));
+			} else {
+				release(now, streaming, request, response);
+			}
+		}
+	}
+
+	/** Libera a vaga pelo status da resposta; o 503 da UnavailableException libera sem alterar o limite */
+	private void release(long start, boolean streaming, HttpServletRequest request, HttpServletResponse response) {
+		if (request.getAttribute(UnavailableException.REQUEST_ATTRIBUTE) != null) {
+			limiter.releaseUnmeasured(false);
+		} else {
+			release(start, streaming, response.getStatus() >= 500);
+		}
+	}
+
+	private void release(long start, boolean streaming, boolean failed) {
+		if (streaming) {
+			limiter.releaseUnmeasured(failed);
+		} else {
+			limiter.release(System.nanoTime() - start, failed);
+		}
+	}
+
+	/** Devolve a vaga de concorrência de uma requisição async uma única vez, ao completar, expirar ou falhar */
+	private final class Release implements AsyncListener {
+
+		private final long start;
+		private final boolean streaming;
+		private final HttpServletRequest request;
+		private final HttpServletResponse response;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Release(long start, boolean streaming, HttpServletRequest request, HttpServletResponse response) {
+			this.start = start;
+			this.streaming = streaming;
+			this.request = request;
+			this.response = response;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			if (released.compareAndSet(false, true)) {
+				RateLimitFilter.this.release(start, streaming, request, response);
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			fail();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			fail();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			event.getAsyncContext().addListener(this);
+		}
+
+		private void fail() {
+			if (released.compareAndSet(false, true)) {
+				RateLimitFilter.this.release(start, streaming, true);
+			}
+		}
+
+	}
+
+	private static String path(HttpServletRequest request) {
+		return request.getRequestURI().substring(request.getContextPath().length());
+	}
+
+	/** Compara segmentos inteiros: /api/books casa com /api/books/1, mas não com /api/booksellers */
+	private static boolean startsWithAny(String path, List<String> prefixes) {
+		for (String prefix : prefixes) {
+			if (path.equals(prefix) || path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String client(HttpServletRequest request) {
+		String client = clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+		return client == null || client.isEmpty() ? request.getRemoteAddr() : client;
+	}
+
+	private void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String error)
+			throws IOException {
+		response.setStatus(status.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		objectMapper.writeValue(response.getOutputStream(), ApiErrors.of(error));
+	}
+
+}
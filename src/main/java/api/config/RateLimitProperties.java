@@ -0,0 +1,69 @@
+package api.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import lombok.Data;
+
+/**
+ * Limite de requisições por cliente e de concorrência (library.ratelimit.*).
+ * Desligado por padrão: sem client-header, atrás de um proxy todos os clientes dividiriam um único balde.
+ * Validado na inicialização: requests-per-second zero ou negativo estouraria o intervalo de reposição do TokenBucket.
+ */
+@Data
+@Validated
+@ConfigurationProperties("library.ratelimit")
+public class RateLimitProperties {
+
+	private boolean enabled = false;
+
+	/** Prefixos de caminho protegidos, comparados por segmento inteiro */
+	private List<String> paths = new ArrayList<>(Arrays.asList("/api/books", "/api/loans"));
+
+	/**
+	 * Prefixos de caminho que transferem o corpo em fluxo (export, lote): contam na concorrência, mas a sua
+	 * duração não reduz o limite adaptativo
+	 */
+	private List<String> streamingPaths = new ArrayList<>(Arrays.asList("/api/books/export", "/api/books/batch"));
+
+	/**
+	 * Header que identifica o cliente, preenchido por um proxy confiável (ex.: X-Client-Id).
+	 * Vazio (padrão) ou ausente na requisição: vale o endereço remoto (getRemoteAddr), e atrás de um proxy ou
+	 * balanceador todos os clientes dividem um único balde de requests-per-second.
+	 */
+	private String clientHeader = "";
+
+	/** Requisições por segundo por cliente, com rajadas de até burst requisições */
+	@Positive
+	private double requestsPerSecond = 50;
+	@Min(1)
+	private int burst = 100;
+
+	/** Clientes acompanhados ao mesmo tempo; os inativos por client-idle saem primeiro */
+	@Min(1)
+	private long maxClients = 100_000;
+	@NotNull
+	private Duration clientIdle = Duration.ofMinutes(10);
+
+	/** Limite de requisições simultâneas (AIMD): começa em initial e varia entre min e max */
+	@Min(1)
+	private int initialConcurrency = 20;
+	@Min(1)
+	private int minConcurrency = 4;
+	@Min(1)
+	private int maxConcurrency = 200;
+
+	/** Requisições mais lentas que isso (ou 5xx) reduzem o limite de concorrência */
+	@NotNull
+	private Duration latencyThreshold = Duration.ofMillis(500);
+
+}
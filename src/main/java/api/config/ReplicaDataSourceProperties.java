@@ -0,0 +1,30 @@
+package api.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Réplica de leitura (library.datasource.replica.*). O pool da réplica é configurado em
+ * library.datasource.replica.hikari.*, com as mesmas chaves de spring.datasource.hikari.*.
+ */
+@Data
+@ConfigurationProperties("library.datasource.replica")
+public class ReplicaDataSourceProperties {
+
+	private boolean enabled;
+	private String url;
+	private String username;
+	private String password;
+
+	/** Consulta executada na réplica que devolve o atraso de replicação em segundos; vazia apenas testa a conexão */
+	private String lagQuery;
+
+	/** Atraso máximo tolerado; acima disso (ou se a checagem falhar) as leituras voltam para o primário */
+	private Duration maxLag = Duration.ofSeconds(5);
+
+	private Duration checkInterval = Duration.ofSeconds(5);
+
+}
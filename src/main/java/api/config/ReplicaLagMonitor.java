@@ -0,0 +1,92 @@
+package api.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Verifica periodicamente se a réplica está acessível e dentro do atraso máximo.
+ * Enquanto não estiver, o {@link ReplicaRoutingDataSource} manda as leituras para o primário.
+ */
+public class ReplicaLagMonitor implements InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+	private final DataSource replica;
+	private final String lagQuery;
+	private final Duration maxLag;
+	private final Duration checkInterval;
+	private ScheduledExecutorService scheduler;
+	private volatile boolean available;
+
+	public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration maxLag, Duration checkInterval) {
+		this.replica = replica;
+		this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+		this.maxLag = maxLag;
+		this.checkInterval = checkInterval;
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * Executa uma checagem imediata e atualiza a disponibilidade da réplica.
+	 */
+	public void check() {
+		boolean current;
+		try (Connection connection = replica.getConnection()) {
+			current = lagQuery == null ? connection.isValid(1) : lagSeconds(connection) <= maxLag.toMillis() / 1000.0;
+		} catch (SQLException | RuntimeException e) {
+			log.debug("Replica check failed", e);
+			current = false;
+		}
+		if (current != available) {
+			log.warn(current ? "Read replica available, routing read-only transactions to it"
+					: "Read replica unavailable or lagging more than {}, routing reads to the primary", maxLag);
+		}
+		available = current;
+	}
+
+	private double lagSeconds(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(lagQuery)) {
+			if (!result.next()) {
+				return Double.POSITIVE_INFINITY;
+			}
+			double lag = result.getDouble(1);
+			return result.wasNull() ? Double.POSITIVE_INFINITY : lag;
+		}
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		check();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replica-lag-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = checkInterval.toMillis();
+		scheduler.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package api.config;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Transações somente leitura vão para a réplica (quando o {@link ReplicaLagMonitor} a considera em dia);
+ * todo o resto vai para o primário. Deve ficar atrás de um LazyConnectionDataSourceProxy, para que a
+ * conexão só seja obtida depois que a transação já marcou se é somente leitura.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	enum Target { PRIMARY, REPLICA }
+
+	private final ReplicaLagMonitor monitor;
+
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor monitor) {
+		this.monitor = monitor;
+		setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+		setDefaultTargetDataSource(primary);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && monitor.isAvailable()
+				? Target.REPLICA
+				: Target.PRIMARY;
+	}
+
+}
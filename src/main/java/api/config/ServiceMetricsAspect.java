@@ -0,0 +1,86 @@
+package api.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mede a latência de cada método público dos serviços (api.service.impl) no timer library.service,
+ * com as tags class, method e exception. Os percentis/histogramas são configurados em application.properties.
+ * Os timers são registrados uma vez por método (e por exceção) e reaproveitados nas chamadas seguintes.
+ */
+@Aspect
+@Component
+public class ServiceMetricsAspect {
+
+	static final String METRIC_NAME = "library.service";
+
+	private final MeterRegistry registry;
+	private final ConcurrentMap<Method, MethodTimers> timers = new ConcurrentHashMap<>();
+
+	public ServiceMetricsAspect(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Around("execution(public * api.service.impl..*(..))")
+	public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+		MethodTimers method = timers.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(),
+				MethodTimers::new);
+		Timer.Sample sample = Timer.start(registry);
+		Throwable failure = null;
+		try {
+			return joinPoint.proceed();
+		} catch (Throwable e) {
+			failure = e;
+			throw e;
+		} finally {
+			sample.stop(failure == null ? method.success() : method.failure(failure.getClass()));
+		}
+	}
+
+	private final class MethodTimers {
+
+		private final String className;
+		private final String methodName;
+		private final ConcurrentMap<Class<?>, Timer> failures = new ConcurrentHashMap<>();
+		/** registrado só na primeira chamada sem exceção; a corrida é inofensiva, o registry devolve o mesmo timer */
+		private volatile Timer success;
+
+		MethodTimers(Method method) {
+			this.className = method.getDeclaringClass().getSimpleName();
+			this.methodName = method.getName();
+		}
+
+		Timer success() {
+			Timer timer = success;
+			if (timer == null) {
+				timer = timer("none");
+				success = timer;
+			}
+			return timer;
+		}
+
+		Timer failure(Class<?> exception) {
+			return failures.computeIfAbsent(exception, type -> timer(type.getSimpleName()));
+		}
+
+		private Timer timer(String exception) {
+			return Timer.builder(METRIC_NAME)
+					.tag("class", className)
+					.tag("method", methodName)
+					.tag("exception", exception)
+					.register(registry);
+		}
+
+	}
+
+}
@@ -0,0 +1,43 @@
+package api.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Balde de fichas sem lock (GCRA): guarda só o instante teórico da próxima chegada e o avança com CAS.
+ * Aceita até {@code burst} requisições de uma vez e repõe {@code ratePerSecond} fichas por segundo.
+ */
+public final class TokenBucket {
+
+	private final long interval;
+	private final long tolerance;
+	private final AtomicLong theoreticalArrival;
+
+	public TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+		if (!(ratePerSecond > 0)) {
+			throw new IllegalArgumentException("ratePerSecond must be positive: " + ratePerSecond);
+		}
+		this.interval = (long) (1_000_000_000L / ratePerSecond);
+		this.tolerance = this.interval * Math.max(burst - 1, 0);
+		this.theoreticalArrival = new AtomicLong(nowNanos);
+	}
+
+	/**
+	 * Consome uma ficha.
+	 * @param long nowNanos
+	 * @return long 0 quando aceita; senão, em nanossegundos, quanto falta para a próxima ficha
+	 */
+	public long tryAcquire(long nowNanos) {
+		while (true) {
+			long arrival = theoreticalArrival.get();
+			long next = Math.max(arrival, nowNanos) + interval;
+			long wait = next - interval - tolerance - nowNanos;
+			if (wait > 0) {
+				return wait;
+			}
+			if (theoreticalArrival.compareAndSet(arrival, next)) {
+				return 0;
+			}
+		}
+	}
+
+}
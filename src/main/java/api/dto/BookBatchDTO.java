@@ -0,0 +1,28 @@
+package api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class BookBatchDTO {
+
+	@Builder.Default
+	private List<BookDTO> accepted = new ArrayList<>();
+
+	@Builder.Default
+	private List<RejectedBookDTO> rejected = new ArrayList<>();
+
+	/**
+	 * Índice do registro ilegível que interrompeu a leitura do lote; null quando o lote foi lido até o fim.
+	 */
+	private Integer stoppedAt;
+
+}
@@ -0,0 +1,21 @@
+package api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class BookCursorPageDTO {
+
+	private List<BookDTO> content;
+
+	/** Cursor opaco da próxima página; nulo quando não há mais livros */
+	private String next;
+
+}
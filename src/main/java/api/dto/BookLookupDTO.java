@@ -0,0 +1,30 @@
+package api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resposta da busca de vários livros: content segue a ordem das chaves informadas (sem repetições)
+ * e missingIds/missingIsbns listam as chaves não encontradas.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class BookLookupDTO {
+
+	@Builder.Default
+	private List<BookDTO> content = new ArrayList<>();
+
+	@Builder.Default
+	private List<Long> missingIds = new ArrayList<>();
+
+	@Builder.Default
+	private List<String> missingIsbns = new ArrayList<>();
+
+}
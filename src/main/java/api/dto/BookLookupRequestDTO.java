@@ -0,0 +1,23 @@
+package api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class BookLookupRequestDTO {
+
+	@Builder.Default
+	private List<Long> ids = new ArrayList<>();
+
+	@Builder.Default
+	private List<String> isbns = new ArrayList<>();
+
+}
@@ -1,5 +1,7 @@
 package api.dto;
 
+import javax.validation.constraints.NotEmpty;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,7 +13,10 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class LoanDTO {
 
+	@NotEmpty
 	private String isbn;
+
+	@NotEmpty
 	private String customer;
 	
 }
@@ -0,0 +1,22 @@
+package api.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanDetailsDTO {
+
+	private Long id;
+	private String isbn;
+	private String customer;
+	private LocalDate loanDate;
+	private Boolean returned;
+
+}
@@ -0,0 +1,30 @@
+package api.dto;
+
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Envelope enxuto de página: só o conteúdo, a posição e o total (sem os metadados de Pageable/Sort do PageImpl).
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class PageDTO<T> {
+
+	private List<T> content;
+	private int page;
+	private int size;
+	private long totalElements;
+
+	public static <T> PageDTO<T> of(List<T> content, Page<?> page) {
+		return new PageDTO<T>(content, page.getNumber(), page.getSize(), page.getTotalElements());
+	}
+
+}
@@ -0,0 +1,20 @@
+package api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class RejectedBookDTO {
+
+	private int index;
+	private String isbn;
+	private List<String> errors;
+
+}
@@ -3,16 +3,22 @@ package api.exception;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.validation.BindingResult;
 import org.springframework.web.server.ResponseStatusException;
 
 public class ApiErrors {
 
+	/** Limite de mensagens distintas em cache; acima dele, cada erro volta a criar o seu ApiErrors */
+	private static final int CACHE_MAX_SIZE = 1024;
+	private static final Map<String, ApiErrors> CACHE = new ConcurrentHashMap<>();
+
 	private List<String> errors;
 	
 	public ApiErrors(BindingResult bindingResult) {
-		this.errors = new ArrayList<>();
+		this.errors = new ArrayList<>(bindingResult.getErrorCount());
 		bindingResult.getAllErrors().forEach(error -> this.errors.add(error.getDefaultMessage()));
 	}
 	
@@ -20,9 +26,38 @@ public class ApiErrors {
 		this.errors = Arrays.asList(ex.getMessage());
 	}
 
+	public ApiErrors(String error) {
+		this.errors = Arrays.asList(error);
+	}
+
+	public ApiErrors(List<String> errors) {
+		this.errors = errors;
+	}
+
 	public ApiErrors(ResponseStatusException ex) {
 		this.errors = Arrays.asList(ex.getReason());
 	}
+
+	/**
+	 * ApiErrors de uma única mensagem, reaproveitado entre requisições (as mensagens de erro da API são fixas).
+	 * A instância é imutável.
+	 * @param String error
+	 * @return ApiErrors
+	 */
+	public static ApiErrors of(String error) {
+		if (error == null) {
+			return new ApiErrors(Arrays.asList((String) null));
+		}
+		ApiErrors cached = CACHE.get(error);
+		if (cached != null) {
+			return cached;
+		}
+		cached = new ApiErrors(List.of(error));
+		if (CACHE.size() < CACHE_MAX_SIZE) {
+			CACHE.putIfAbsent(error, cached);
+		}
+		return cached;
+	}
 	
 	public List<String> getErrors() {
 		return errors;
@@ -1,9 +1,13 @@
 package api.exception;
 
+/**
+ * Violação de regra de negócio (400). Não captura stack trace: é um erro esperado e frequente
+ * (ex.: isbn duplicado em importações) e a mensagem já identifica a causa.
+ */
 public class BusinessException extends RuntimeException {
 	private static final long serialVersionUID = -999999L;
 
 	public BusinessException(String s) {
-		super(s);
+		super(s, null, false, false);
 	}
 }
@@ -0,0 +1,12 @@
+package api.exception;
+
+/**
+ * Recurso inexistente (404), sem stack trace.
+ */
+public class NotFoundException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public NotFoundException(String s) {
+		super(s, null, false, false);
+	}
+}
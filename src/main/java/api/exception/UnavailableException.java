@@ -0,0 +1,19 @@
+package api.exception;
+
+/**
+ * Recurso temporariamente indisponível (503, com Retry-After), sem stack trace.
+ * Ex.: busca enquanto o índice em memória ainda está sendo carregado.
+ */
+public class UnavailableException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Atributo da requisição marcado pelo ApplicationControllerAdvice ao responder 503: o RateLimitFilter não conta
+	 * essa resposta como sobrecarga
+	 */
+	public static final String REQUEST_ATTRIBUTE = UnavailableException.class.getName();
+
+	public UnavailableException(String s) {
+		super(s, null, false, false);
+	}
+}
@@ -0,0 +1,21 @@
+package api.exception;
+
+import java.util.List;
+
+/**
+ * Payload inválido (400) com as mensagens de cada violação, sem stack trace.
+ */
+public class ValidationErrorsException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final List<String> errors;
+
+	public ValidationErrorsException(List<String> errors) {
+		super(String.join(", ", errors), null, false, false);
+		this.errors = errors;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+}
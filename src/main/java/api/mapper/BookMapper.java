@@ -0,0 +1,27 @@
+package api.mapper;
+
+import org.springframework.stereotype.Component;
+
+import api.dto.BookDTO;
+import api.model.entity.Book;
+
+/**
+ * Conversão entre Book e BookDTO sem reflexão (substitui o ModelMapper nos controllers).
+ */
+@Component
+public class BookMapper {
+
+	public BookDTO toDTO(Book book) {
+		return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+	}
+
+	public Book toEntity(BookDTO dto) {
+		Book book = new Book();
+		book.setId(dto.getId());
+		book.setTitle(dto.getTitle());
+		book.setAuthor(dto.getAuthor());
+		book.setIsbn(dto.getIsbn());
+		return book;
+	}
+
+}
@@ -0,0 +1,37 @@
+package api.mapper;
+
+import java.time.LocalDate;
+
+import org.springframework.stereotype.Component;
+
+import api.dto.LoanDTO;
+import api.dto.LoanDetailsDTO;
+import api.model.entity.Book;
+import api.model.entity.Loan;
+import api.model.projection.LoanView;
+
+/**
+ * Conversão entre LoanDTO/LoanDetailsDTO e Loan sem reflexão.
+ */
+@Component
+public class LoanMapper {
+
+	public Loan toEntity(LoanDTO dto, Book book, LocalDate loanDate) {
+		Loan loan = new Loan();
+		loan.setBook(book);
+		loan.setCustomer(dto.getCustomer());
+		loan.setLoanDate(loanDate);
+		return loan;
+	}
+
+	public LoanDetailsDTO toDTO(Loan loan) {
+		return new LoanDetailsDTO(loan.getId(), loan.getBook().getIsbn(), loan.getCustomer(), loan.getLoanDate(),
+				loan.getReturned());
+	}
+
+	public LoanDetailsDTO toDTO(LoanView view) {
+		return new LoanDetailsDTO(view.getId(), view.getIsbn(), view.getCustomer(), view.getLoanDate(),
+				view.getReturned());
+	}
+
+}
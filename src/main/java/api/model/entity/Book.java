@@ -1,10 +1,21 @@
 package api.model.entity;
 
+import java.time.Instant;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -16,14 +27,29 @@ import lombok.NoArgsConstructor;
 @Builder
 @NoArgsConstructor
 @Entity
-@Table
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book")
+@Table(indexes = {
+		@Index(name = "uk_book_isbn", columnList = "isbn", unique = true),
+		@Index(name = "idx_book_updated_at", columnList = "updatedAt") })
 public class Book {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	private Long id;
 	private String title;
 	private String author;
 	private String isbn;
-	
+
+	@Version
+	private Long version;
+	private Instant updatedAt;
+
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		updatedAt = Instant.now();
+	}
+
 }
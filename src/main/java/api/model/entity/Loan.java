@@ -2,6 +2,21 @@ package api.model.entity;
 
 import java.time.LocalDate;
 
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,12 +26,40 @@ import lombok.NoArgsConstructor;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@Entity
+@Table(indexes = {
+		@Index(name = "idx_loan_book_id", columnList = "book_id, id"),
+		@Index(name = "idx_loan_customer_id", columnList = "customer, id"),
+		@Index(name = "idx_loan_returned_id", columnList = "returned, id"),
+		@Index(name = "uk_loan_active_book", columnList = "active_book_id", unique = true) })
 public class Loan {
 
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+	@SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
 	private Long id;
 	private String customer;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "book_id")
 	private Book book;
 	private LocalDate loanDate;
 	private Boolean returned;
-	
+
+	@Version
+	private Long version;
+
+	/**
+	 * Id do livro enquanto o empréstimo não foi devolvido (null depois da devolução).
+	 * O índice único nesta coluna garante no máximo um empréstimo ativo por livro.
+	 */
+	@Column(name = "active_book_id")
+	private Long activeBookId;
+
+	@PrePersist
+	@PreUpdate
+	void updateActiveBook() {
+		this.activeBookId = Boolean.TRUE.equals(returned) || book == null ? null : book.getId();
+	}
+
 }
@@ -0,0 +1,16 @@
+package api.model.projection;
+
+/**
+ * Projeção somente leitura das colunas de Book, sem entidade gerenciada pelo contexto de persistência.
+ */
+public interface BookView {
+
+	Long getId();
+
+	String getTitle();
+
+	String getAuthor();
+
+	String getIsbn();
+
+}
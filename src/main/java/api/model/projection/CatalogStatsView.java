@@ -0,0 +1,16 @@
+package api.model.projection;
+
+import java.time.Instant;
+
+/**
+ * Resumo da tabela book gravado no snapshot do catálogo, ponto de partida do delta aplicado na subida.
+ */
+public interface CatalogStatsView {
+
+	Long getBooks();
+
+	Long getMaxId();
+
+	Instant getLastUpdate();
+
+}
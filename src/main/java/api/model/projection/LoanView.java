@@ -0,0 +1,22 @@
+package api.model.projection;
+
+import java.time.LocalDate;
+
+/**
+ * Projeção somente leitura de um empréstimo, com o isbn do livro, para as listagens e o histórico.
+ */
+public interface LoanView {
+
+	Long getId();
+
+	String getCustomer();
+
+	LocalDate getLoanDate();
+
+	Boolean getReturned();
+
+	Long getBookId();
+
+	String getIsbn();
+
+}
@@ -0,0 +1,20 @@
+package api.model.projection;
+
+import java.time.LocalDate;
+
+/**
+ * Empréstimo em atraso, com os dados necessários para a notificação.
+ */
+public interface OverdueLoanView {
+
+	Long getId();
+
+	String getCustomer();
+
+	LocalDate getLoanDate();
+
+	Long getBookId();
+
+	String getIsbn();
+
+}
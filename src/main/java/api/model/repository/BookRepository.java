@@ -1,11 +1,118 @@
 package api.model.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import api.model.entity.Book;
+import api.model.projection.BookView;
+import api.model.projection.CatalogStatsView;
 
-public interface BookRepository extends JpaRepository<Book, Long>{
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
 	boolean existsByIsbn(String isbn);
 
+	/** Busca por exemplo do BookServiceImpl.find, com resultado (e count) no cache de consultas */
+	@Override
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	<S extends Book> Page<S> findAll(Example<S> example, Pageable pageable);
+
+	/** Página do índice de busca: lista de ids no cache de consultas, livros no cache de entidades */
+	@Override
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	List<Book> findAllById(Iterable<Long> ids);
+
+	Optional<Book> findByIsbn(String isbn);
+
+	/** Lê o livro no banco, sem passar pelo cache de segundo nível (que pode ter a versão lida na réplica) */
+	@Query("select b from Book b where b.id = :id")
+	Optional<Book> findCurrentById(@Param("id") Long id);
+
+	List<Book> findByIsbnIn(Collection<String> isbns);
+
+	@Query("select b.isbn from Book b where b.isbn in :isbns")
+	Set<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+	List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+	/**
+	 * Página por chave (keyset): busca os livros com id maior que {@code afterId}, sem consulta de count.
+	 * Os filtros nulos são ignorados; os não nulos devem vir em minúsculas no formato do like (%termo%).
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	@Query("select b from Book b where b.id > :afterId"
+			+ " and (:title is null or lower(b.title) like :title escape '\\')"
+			+ " and (:author is null or lower(b.author) like :author escape '\\')"
+			+ " and (:isbn is null or lower(b.isbn) like :isbn escape '\\')"
+			+ " order by b.id")
+	List<Book> findPageAfter(@Param("afterId") Long afterId, @Param("title") String title,
+			@Param("author") String author, @Param("isbn") String isbn, Pageable pageable);
+
+	/**
+	 * Livros sem empréstimo ativo (anti-join pelo índice único de empréstimo ativo), com os mesmos filtros
+	 * opcionais do findPageAfter.
+	 */
+	@Query("select b from Book b"
+			+ " where (:title is null or lower(b.title) like :title escape '\\')"
+			+ " and (:author is null or lower(b.author) like :author escape '\\')"
+			+ " and (:isbn is null or lower(b.isbn) like :isbn escape '\\')"
+			+ " and not exists (select l.id from Loan l where l.activeBookId = b.id)")
+	Page<Book> findAvailable(@Param("title") String title, @Param("author") String author, @Param("isbn") String isbn,
+			Pageable pageable);
+
+	/**
+	 * Cursor somente leitura sobre todos os livros (com os mesmos filtros opcionais do findPageAfter),
+	 * para exportação. Deve ser consumido dentro de uma transação.
+	 */
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true") })
+	@Query("select b.id as id, b.title as title, b.author as author, b.isbn as isbn from Book b"
+			+ " where (:title is null or lower(b.title) like :title escape '\\')"
+			+ " and (:author is null or lower(b.author) like :author escape '\\')"
+			+ " and (:isbn is null or lower(b.isbn) like :isbn escape '\\')"
+			+ " order by b.id")
+	Stream<BookView> streamAll(@Param("title") String title, @Param("author") String author, @Param("isbn") String isbn);
+
+	/** Colunas dos livros informados, em ordem de id: exportação do resultado do índice de busca em blocos */
+	@Query("select b.id as id, b.title as title, b.author as author, b.isbn as isbn from Book b"
+			+ " where b.id in :ids order by b.id")
+	List<BookView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+	/** Livros alterados desde {@code since} ou incluídos depois de {@code maxId}: delta do snapshot do catálogo */
+	@Query("select b.id as id, b.title as title, b.author as author, b.isbn as isbn from Book b"
+			+ " where b.updatedAt >= :since or b.id > :maxId order by b.id")
+	List<BookView> findViewsChangedSince(@Param("since") Instant since, @Param("maxId") Long maxId);
+
+	/** Livros incluídos depois de {@code maxId}, pela chave primária: delta de um snapshot sem livros alterados */
+	@Query("select b.id as id, b.title as title, b.author as author, b.isbn as isbn from Book b"
+			+ " where b.id > :maxId order by b.id")
+	List<BookView> findViewsAfter(@Param("maxId") Long maxId);
+
+	long countByIdLessThanEqual(Long maxId);
+
+	/** Ids até {@code maxId}, em ordem, só pela chave primária. Deve ser consumido dentro de uma transação. */
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "5000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true") })
+	@Query("select b.id from Book b where b.id <= :maxId order by b.id")
+	Stream<Long> streamIdsUpTo(@Param("maxId") Long maxId);
+
+	/** Quantidade de livros, maior id e última alteração (pelos índices da chave primária e de updated_at) */
+	@Query("select count(b) as books, max(b.id) as maxId, max(b.updatedAt) as lastUpdate from Book b")
+	CatalogStatsView catalogStats();
+
 }
@@ -0,0 +1,19 @@
+package api.model.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import api.model.entity.Book;
+
+/**
+ * Consultas do BookRepository que precisam do EntityManager diretamente.
+ */
+public interface BookRepositoryCustom {
+
+	/**
+	 * Busca vários livros por id: os que estão no cache de segundo nível são lidos de lá
+	 * e os demais em uma única consulta com IN. A ordem do resultado não é garantida.
+	 */
+	List<Book> findAllByIdCachedFirst(Collection<Long> ids);
+
+}
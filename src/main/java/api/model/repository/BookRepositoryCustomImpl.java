@@ -0,0 +1,45 @@
+package api.model.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import api.model.entity.Book;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Book> findAllByIdCachedFirst(Collection<Long> ids) {
+		Cache cache = entityManager.getEntityManagerFactory().getCache();
+		List<Book> found = new ArrayList<>(ids.size());
+		List<Long> misses = new ArrayList<>();
+		for (Long id : ids) {
+			if (!cache.contains(Book.class, id)) {
+				misses.add(id);
+				continue;
+			}
+			// entrada bloqueada por uma escrita em andamento cai no banco pelo próprio find
+			Book book = entityManager.find(Book.class, id);
+			if (book != null) {
+				found.add(book);
+			}
+		}
+		if (!misses.isEmpty()) {
+			found.addAll(entityManager.createQuery("select b from Book b where b.id in :ids", Book.class)
+					.setParameter("ids", misses)
+					.getResultList());
+		}
+		return found;
+	}
+
+}
@@ -0,0 +1,76 @@
+package api.model.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import api.model.entity.Loan;
+import api.model.projection.LoanView;
+import api.model.projection.OverdueLoanView;
+
+public interface LoanRepository extends JpaRepository<Loan, Long>{
+
+	/** Com o livro: o empréstimo é mapeado para o DTO fora da sessão (open-in-view desligado) */
+	@Override
+	@EntityGraph(attributePaths = "book")
+	Optional<Loan> findById(Long id);
+
+	/**
+	 * Lê o empréstimo (com o livro) no banco, sem passar pelo cache de segundo nível: base da alteração do PATCH
+	 */
+	@Query("select l from Loan l join fetch l.book where l.id = :id")
+	Optional<Loan> findCurrentById(@Param("id") Long id);
+
+	boolean existsByActiveBookId(Long bookId);
+
+	/** Livros com empréstimo ativo, por chave (keyset) sobre o índice único uk_loan_active_book */
+	@Query("select l.activeBookId from Loan l where l.activeBookId > :afterId order by l.activeBookId")
+	List<Long> findActiveBookIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+	/** Dentre os livros informados, os que têm empréstimo ativo, pelo índice único uk_loan_active_book */
+	@Query("select l.activeBookId from Loan l where l.activeBookId in :bookIds")
+	List<Long> findActiveBookIdsIn(@Param("bookIds") Collection<Long> bookIds);
+
+	/**
+	 * Página por chave (keyset) dos empréstimos não devolvidos feitos antes de {@code loanedBefore},
+	 * a partir do id {@code afterId}, em ordem de id. Cada página é uma faixa do índice idx_loan_returned_id
+	 * (returned, id): só os empréstimos em aberto são percorridos, nunca o histórico de devolvidos.
+	 */
+	@Query("select l.id as id, l.customer as customer, l.loanDate as loanDate, b.id as bookId, b.isbn as isbn"
+			+ " from Loan l join l.book b"
+			+ " where l.returned = false and l.id > :afterId and l.loanDate < :loanedBefore"
+			+ " order by l.id")
+	List<OverdueLoanView> findOverdueAfter(@Param("afterId") Long afterId, @Param("loanedBefore") LocalDate loanedBefore,
+			Pageable pageable);
+
+	/** Empréstimos de um livro, do mais recente para o mais antigo, pelo índice idx_loan_book_id */
+	@Query(value = "select l.id as id, l.customer as customer, l.loanDate as loanDate, l.returned as returned,"
+			+ " b.id as bookId, b.isbn as isbn"
+			+ " from Loan l join l.book b where b.id = :bookId order by l.id desc",
+			countQuery = "select count(l.id) from Loan l where l.book.id = :bookId")
+	Page<LoanView> findByBook(@Param("bookId") Long bookId, Pageable pageable);
+
+	/** Empréstimos de um cliente, do mais recente para o mais antigo, pelo índice idx_loan_customer_id */
+	@Query(value = "select l.id as id, l.customer as customer, l.loanDate as loanDate, l.returned as returned,"
+			+ " b.id as bookId, b.isbn as isbn"
+			+ " from Loan l join l.book b where l.customer = :customer order by l.id desc",
+			countQuery = "select count(l.id) from Loan l where l.customer = :customer")
+	Page<LoanView> findByCustomer(@Param("customer") String customer, Pageable pageable);
+
+	/** Empréstimos de um livro para um cliente, do mais recente para o mais antigo */
+	@Query(value = "select l.id as id, l.customer as customer, l.loanDate as loanDate, l.returned as returned,"
+			+ " b.id as bookId, b.isbn as isbn"
+			+ " from Loan l join l.book b where b.id = :bookId and l.customer = :customer order by l.id desc",
+			countQuery = "select count(l.id) from Loan l where l.book.id = :bookId and l.customer = :customer")
+	Page<LoanView> findByBookAndCustomer(@Param("bookId") Long bookId, @Param("customer") String customer,
+			Pageable pageable);
+
+}
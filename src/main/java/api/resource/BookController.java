@@ -1,15 +1,38 @@
 package api.resource;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import javax.validation.Valid;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -17,75 +40,453 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import api.dto.BookBatchDTO;
+import api.dto.BookCursorPageDTO;
 import api.dto.BookDTO;
+import api.dto.BookLookupDTO;
+import api.dto.BookLookupRequestDTO;
+import api.dto.LoanDetailsDTO;
+import api.dto.PageDTO;
+import api.dto.RejectedBookDTO;
+import api.exception.BusinessException;
+import api.exception.NotFoundException;
+import api.exception.ValidationErrorsException;
+import api.mapper.BookMapper;
+import api.mapper.LoanMapper;
 import api.model.entity.Book;
+import api.model.projection.LoanView;
 import api.service.BookService;
+import api.service.LoanService;
 
 @RestController
 @RequestMapping("/api/books")
 public class BookController {
 
 
+	private static final int BATCH_CHUNK_SIZE = 1000;
+	private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+	private static final int MAX_LOOKUP_SIZE = 1000;
+	private static final String TEXT_CSV_VALUE = "text/csv";
+	private static final String BOOK_NOT_FOUND = "Book not found";
+	private static final String INVALID_BOOK = "JSON inválido.";
+
 	private BookService service;
-	private ModelMapper modelMapper;
+	private BookMapper mapper;
+	private ObjectMapper objectMapper;
+	private Validator validator;
+	private LoanService loanService;
+	private LoanMapper loanMapper;
 	
-	public BookController(BookService service, ModelMapper modelMapper) {
+	public BookController(BookService service, BookMapper mapper, ObjectMapper objectMapper, Validator validator,
+			LoanService loanService, LoanMapper loanMapper) {
 		this.service = service;
-		this.modelMapper = modelMapper;
+		this.mapper = mapper;
+		this.objectMapper = objectMapper;
+		this.validator = validator;
+		this.loanService = loanService;
+		this.loanMapper = loanMapper;
 	}
 	
 	
+	/**
+	 * A validação é feita aqui, e não com @Valid, para que um payload inválido responda 400 sem montar
+	 * BindingResult nem capturar o stack trace de MethodArgumentNotValidException.
+	 */
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
-	public BookDTO create(@RequestBody @Valid BookDTO dto) {
-		Book entity = modelMapper.map(dto, Book.class);
+	public BookDTO create(@RequestBody BookDTO dto) {
+		Set<ConstraintViolation<BookDTO>> violations = validator.validate(dto);
+		if (!violations.isEmpty()) {
+			throw new ValidationErrorsException(messages(violations));
+		}
+		Book entity = mapper.toEntity(dto);
 		entity = service.save(entity);
 		
-		return modelMapper.map(entity, BookDTO.class);
+		return mapper.toDTO(entity);
+	}
+
+	/**
+	 * Os livros são gravados em blocos de BATCH_CHUNK_SIZE. Se o corpo ficar ilegível no meio, os blocos anteriores
+	 * já estão gravados: o pendente é gravado, o registro ilegível entra em rejected e stoppedAt indica onde a leitura parou.
+	 * Um corpo ilegível já no primeiro registro não grava nada e responde 400.
+	 * @throws BusinessException("JSON inválido.")
+	 */
+	@PostMapping(value = "batch", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public BookBatchDTO createBatch(HttpServletRequest request) throws IOException {
+		BookBatchDTO result = new BookBatchDTO();
+		List<BookDTO> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+		List<Integer> indexes = new ArrayList<>(BATCH_CHUNK_SIZE);
+		int index = 0;
+
+		try (MappingIterator<BookDTO> rows = objectMapper.readerFor(BookDTO.class).readValues(request.getInputStream())) {
+			while (rows.hasNext()) {
+				BookDTO dto = rows.next();
+				Set<ConstraintViolation<BookDTO>> violations = validator.validate(dto);
+				if (!violations.isEmpty()) {
+					result.getRejected().add(new RejectedBookDTO(index, dto.getIsbn(), messages(violations)));
+				} else {
+					chunk.add(dto);
+					indexes.add(index);
+					if (chunk.size() == BATCH_CHUNK_SIZE) {
+						saveChunk(chunk, indexes, result);
+					}
+				}
+				index++;
+			}
+		} catch (JsonProcessingException | RuntimeJsonMappingException e) {
+			if (index == 0) {
+				throw new BusinessException(INVALID_BOOK);
+			}
+			result.getRejected().add(new RejectedBookDTO(index, null, List.of(INVALID_BOOK)));
+			result.setStoppedAt(index);
+		}
+		saveChunk(chunk, indexes, result);
+		result.getRejected().sort(Comparator.comparingInt(RejectedBookDTO::getIndex));
+		return result;
+	}
+
+	private static List<String> messages(Set<ConstraintViolation<BookDTO>> violations) {
+		List<String> errors = new ArrayList<>(violations.size());
+		for (ConstraintViolation<BookDTO> violation : violations) {
+			errors.add(violation.getMessage());
+		}
+		return errors;
+	}
+
+	/**
+	 * Grava o bloco de uma vez. Se um cadastro concorrente gravar o mesmo isbn entre a checagem e o commit, o índice
+	 * único desfaz o bloco inteiro; ele é então gravado livro a livro para rejeitar só os duplicados.
+	 */
+	private void saveChunk(List<BookDTO> chunk, List<Integer> indexes, BookBatchDTO result) {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		List<Book> saved;
+		try {
+			saved = service.saveAll(chunk.stream()
+					.map(mapper::toEntity)
+					.collect(Collectors.toList()));
+		} catch (DataIntegrityViolationException e) {
+			saved = saveEach(chunk);
+		}
+
+		// saveAll preserva a ordem de entrada, então os aceitos aparecem na mesma sequência do chunk
+		Iterator<Book> accepted = saved.iterator();
+		Book next = accepted.hasNext() ? accepted.next() : null;
+		for (int i = 0; i < chunk.size(); i++) {
+			BookDTO dto = chunk.get(i);
+			if (next != null && Objects.equals(next.getIsbn(), dto.getIsbn())) {
+				result.getAccepted().add(mapper.toDTO(next));
+				next = accepted.hasNext() ? accepted.next() : null;
+			} else {
+				result.getRejected().add(new RejectedBookDTO(indexes.get(i), dto.getIsbn(), List.of(BookService.DUPLICATED_ISBN)));
+			}
+		}
+		chunk.clear();
+		indexes.clear();
+	}
+
+	private List<Book> saveEach(List<BookDTO> chunk) {
+		List<Book> saved = new ArrayList<>(chunk.size());
+		for (BookDTO dto : chunk) {
+			try {
+				saved.add(service.save(mapper.toEntity(dto)));
+			} catch (BusinessException e) {
+				// isbn já cadastrado: fica de fora da lista e é rejeitado pelo saveChunk
+			}
+		}
+		return saved;
 	}
 	
+	/**
+	 * Responde 304 (sem mapear nem serializar o livro) quando o If-None-Match/If-Modified-Since ainda for válido.
+	 */
 	@GetMapping("{id}")
-	public BookDTO get(@PathVariable Long id) {
-		return service.getById(id)
-				.map(book ->  modelMapper.map(book, BookDTO.class))
-				.orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	public BookDTO get(@PathVariable Long id, WebRequest request, HttpServletResponse response) {
+		Book book = service.getById(id).orElseThrow( () -> new NotFoundException(BOOK_NOT_FOUND));
+		response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		if (request.checkNotModified(eTag(book), lastModified(book))) {
+			return null;
+		}
+		return mapper.toDTO(book);
 	}
 	
 	@DeleteMapping("{id}")
 	@ResponseStatus(HttpStatus.NO_CONTENT)
 	public void delete(@PathVariable Long id) {
-		Book book = service.getById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		Book book = service.getForUpdate(id).orElseThrow( () -> new NotFoundException(BOOK_NOT_FOUND));
 		service.delete(book);
 	}
 	
 	
+	/**
+	 * Histórico de empréstimos do livro, do mais recente para o mais antigo.
+	 */
+	@GetMapping("{id}/loans")
+	public PageDTO<LoanDetailsDTO> loansByBook(@PathVariable Long id, Pageable pageRequest) {
+		Book book = service.getById(id).orElseThrow( () -> new NotFoundException(BOOK_NOT_FOUND));
+		Page<LoanView> result = loanService.find(book.getId(), null, pageRequest);
+		List<LoanDetailsDTO> list = result.getContent()
+				.stream()
+				.map(loanMapper::toDTO)
+				.collect(Collectors.toList());
+		return PageDTO.of(list, result);
+	}
+
+	/**
+	 * Com If-Match, só atualiza se o ETag informado ainda for o da versão atual do livro; caso contrário responde 412.
+	 */
 	@PutMapping("{id}")
-	@ResponseStatus(HttpStatus.OK)
-	public BookDTO put(@PathVariable Long id, BookDTO dto) {
-	    return service.getById(id).map(book ->{
+	public ResponseEntity<BookDTO> put(@PathVariable Long id, BookDTO dto,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+	    return service.getForUpdate(id).map(book ->{
+			if (ifMatch != null && !matches(ifMatch, book)) {
+				throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+			}
 			book.setAuthor(dto.getAuthor());
 			book.setTitle(dto.getTitle());
-			book = service.update(book);
-			return modelMapper.map(book, BookDTO.class);			
-	    }).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+			try {
+				book = service.update(book);
+			} catch (OptimisticLockingFailureException e) {
+				// alterado por outra requisição entre a leitura e a escrita
+				throw new ResponseStatusException(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT);
+			}
+			return ResponseEntity.ok().eTag(eTag(book)).varyBy(HttpHeaders.ACCEPT).body(mapper.toDTO(book));
+	    }).orElseThrow( () -> new NotFoundException(BOOK_NOT_FOUND));
 		
 	}
 	
+	/**
+	 * O ETag da página é derivado de id e versão de cada livro e do total, então qualquer inclusão,
+	 * alteração ou exclusão que afete a página gera um novo valor.
+	 * Com ?available=true, lista apenas os livros sem empréstimo ativo.
+	 * Além de JSON, responde em CBOR (application/cbor) ou Smile (application/x-jackson-smile) conforme o Accept.
+	 */
 	@GetMapping
-	public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
-		Book filter = modelMapper.map(dto, Book.class);
-		Page<Book> result  = service.find(filter, pageRequest);
+	public PageDTO<BookDTO> find(BookDTO dto, Pageable pageRequest, WebRequest request, HttpServletResponse response,
+			@RequestParam(value = "available", defaultValue = "false") boolean available) {
+		Book filter = mapper.toEntity(dto);
+		Page<Book> result  = available ? service.findAvailable(filter, pageRequest) : service.find(filter, pageRequest);
+		response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		if (request.checkNotModified(eTag(result))) {
+			return null;
+		}
 		List<BookDTO> list = result.getContent()
 				.stream()
-				.map(entity -> modelMapper.map(entity, BookDTO.class))
+				.map(mapper::toDTO)
 				.collect(Collectors.toList());
-		return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+		return PageDTO.of(list, result);
+	}
+
+	/**
+	 * Vários livros por id em uma requisição: ?ids=1,2,3.
+	 */
+	@GetMapping(params = "ids")
+	public BookLookupDTO findByIds(@RequestParam("ids") List<Long> ids) {
+		return lookup(new BookLookupRequestDTO(ids, new ArrayList<>()));
+	}
+
+	/**
+	 * Vários livros por id e/ou isbn em uma requisição. O resultado segue a ordem informada (primeiro ids, depois isbns),
+	 * sem repetições, e as chaves não encontradas são devolvidas em missingIds/missingIsbns.
+	 */
+	@PostMapping("lookup")
+	public BookLookupDTO lookup(@RequestBody BookLookupRequestDTO request) {
+		List<Long> ids = request.getIds() == null ? new ArrayList<>() : request.getIds();
+		List<String> isbns = request.getIsbns() == null ? new ArrayList<>() : request.getIsbns();
+		if (ids.size() + isbns.size() > MAX_LOOKUP_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_LOOKUP_SIZE + " keys per lookup");
+		}
+		BookLookupDTO result = new BookLookupDTO();
+		Set<Long> seen = new HashSet<>();
+
+		Set<Long> foundIds = new HashSet<>();
+		for (Book book : service.getByIds(ids)) {
+			foundIds.add(book.getId());
+			if (seen.add(book.getId())) {
+				result.getContent().add(mapper.toDTO(book));
+			}
+		}
+		ids.stream().distinct().filter(id -> !foundIds.contains(id)).forEach(result.getMissingIds()::add);
+
+		Set<String> foundIsbns = new HashSet<>();
+		for (Book book : isbns.isEmpty() ? new ArrayList<Book>() : service.getByIsbns(isbns)) {
+			foundIsbns.add(book.getIsbn());
+			if (seen.add(book.getId())) {
+				result.getContent().add(mapper.toDTO(book));
+			}
+		}
+		isbns.stream().distinct().filter(isbn -> !foundIsbns.contains(isbn)).forEach(result.getMissingIsbns()::add);
+		return result;
+	}
+
+	/**
+	 * Paginação por cursor: ?after=&size= para a primeira página e ?after=<next>&size= para as seguintes.
+	 * Não calcula o total de elementos.
+	 */
+	@GetMapping(params = { "after", "!ids" })
+	public BookCursorPageDTO findAfter(BookDTO dto, @RequestParam("after") String after,
+			@RequestParam(value = "size", defaultValue = "20") int size) {
+		if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+		}
+		// busca um item a mais só para saber se existe próxima página
+		List<Book> result = service.findAfter(mapper.toEntity(dto), decodeCursor(after), size + 1);
+		boolean hasNext = result.size() > size;
+		List<BookDTO> content = result.stream()
+				.limit(size)
+				.map(mapper::toDTO)
+				.collect(Collectors.toList());
+		String next = hasNext ? encodeCursor(content.get(content.size() - 1).getId()) : null;
+		return new BookCursorPageDTO(content, next);
+	}
+
+	/**
+	 * ETags fracos: o mesmo livro (id e versão) é servido em JSON, CBOR ou Smile (Vary: Accept) e com ou sem gzip,
+	 * então o ETag não identifica os bytes da resposta e não pode ser forte (RFC 7232, 2.1). Por isso o Tomcat
+	 * mantém o padrão de não comprimir respostas com ETag forte.
+	 */
+	private static String eTag(Book book) {
+		return "W/" + versionTag(book);
+	}
+
+	private static String versionTag(Book book) {
+		return "\"" + book.getId() + "-" + version(book) + "\"";
+	}
+
+	private static String eTag(Page<Book> page) {
+		ByteBuffer state = ByteBuffer.allocate(Long.BYTES * (2 * page.getNumberOfElements() + 1));
+		state.putLong(page.getTotalElements());
+		for (Book book : page) {
+			state.putLong(book.getId() == null ? 0 : book.getId());
+			state.putLong(version(book));
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(state.array());
+			return "W/\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long version(Book book) {
+		return book.getVersion() == null ? 0 : book.getVersion();
+	}
+
+	private static long lastModified(Book book) {
+		return book.getUpdatedAt() == null ? -1 : book.getUpdatedAt().toEpochMilli();
+	}
+
+	/**
+	 * O If-Match do PUT confere a versão do livro, não os bytes de uma representação: o ETag fraco
+	 * W/"id-versão" do GET (ou a mesma tag sem W/) confere enquanto o livro estiver nessa versão.
+	 */
+	private static boolean matches(String ifMatch, Book book) {
+		String current = versionTag(book);
+		for (String candidate : ifMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(current)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String encodeCursor(Long id) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static Long decodeCursor(String cursor) {
+		if (cursor.isEmpty()) {
+			return null;
+		}
+		try {
+			return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII));
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+		}
+	}
+
+	/**
+	 * Exporta o catálogo inteiro (com os mesmos filtros do find) em NDJSON (padrão) ou CSV (?format=csv).
+	 * As linhas são escritas direto na resposta conforme são lidas do banco.
+	 */
+	@GetMapping("export")
+	public void export(BookDTO dto, @RequestParam(value = "format", defaultValue = "ndjson") String format,
+			HttpServletResponse response) throws IOException {
+		boolean csv = "csv".equalsIgnoreCase(format);
+		if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Export format must be ndjson or csv");
+		}
+		response.setContentType((csv ? TEXT_CSV_VALUE : MediaType.APPLICATION_NDJSON_VALUE) + ";charset=UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=books." + (csv ? "csv" : "ndjson"));
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		try {
+			if (csv) {
+				writer.write("id,title,author,isbn\n");
+				service.export(mapper.toEntity(dto), book -> writeCsvRow(writer, book));
+			} else {
+				ObjectWriter rows = objectMapper.writerFor(BookDTO.class);
+				service.export(mapper.toEntity(dto), book -> writeJsonRow(writer, rows, book));
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		writer.flush();
+	}
+
+	private void writeJsonRow(Writer writer, ObjectWriter rows, Book book) {
+		try {
+			writer.write(rows.writeValueAsString(mapper.toDTO(book)));
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeCsvRow(Writer writer, Book book) {
+		try {
+			writer.write(String.valueOf(book.getId()));
+			writer.write(',');
+			writeCsvValue(writer, book.getTitle());
+			writer.write(',');
+			writeCsvValue(writer, book.getAuthor());
+			writer.write(',');
+			writeCsvValue(writer, book.getIsbn());
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeCsvValue(Writer writer, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
 	}
-	
 
-	
 }
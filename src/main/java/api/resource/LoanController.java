@@ -1,47 +1,131 @@
 package api.resource;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import api.config.ExecutionConfig;
 import api.dto.LoanDTO;
+import api.dto.LoanDetailsDTO;
+import api.dto.PageDTO;
+import api.dto.ReturnedLoanDTO;
+import api.exception.BusinessException;
+import api.exception.NotFoundException;
+import api.exception.ValidationErrorsException;
+import api.mapper.LoanMapper;
 import api.model.entity.Book;
 import api.model.entity.Loan;
+import api.model.projection.LoanView;
 import api.service.BookService;
 import api.service.LoanService;
-import lombok.RequiredArgsConstructor;
 
 @RestController
 @RequestMapping("api/loans")
-@RequiredArgsConstructor
 public class LoanController {
 
 	private final LoanService service;
 	private final BookService bookService;
+	private final LoanMapper mapper;
+	private final Validator validator;
+	private final boolean async;
+
+	public LoanController(LoanService service, BookService bookService, LoanMapper mapper, Validator validator,
+			@Value("${library.execution.mode:platform}") String executionMode) {
+		this.service = service;
+		this.bookService = bookService;
+		this.mapper = mapper;
+		this.validator = validator;
+		this.async = ExecutionConfig.ASYNC.equals(executionMode);
+	}
 	
-	
+	/**
+	 * Isbn e cliente são obrigatórios; sem eles responde 400 com os erros de validação.
+	 * Devolve o id do empréstimo. No modo async (library.execution.mode=async) o futuro é completado pela thread do
+	 * journal e a thread do Tomcat fica livre enquanto o empréstimo aguarda o fsync; nos demais modos o empréstimo
+	 * é gravado na hora e o futuro já vem completo.
+	 * @return CompletableFuture<Long> id do empréstimo
+	 */
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
-	public Long create (@RequestBody LoanDTO dto) {
+	public CompletableFuture<Long> create (@RequestBody LoanDTO dto) {
+		Set<ConstraintViolation<LoanDTO>> violations = validator.validate(dto);
+		if (!violations.isEmpty()) {
+			throw new ValidationErrorsException(violations.stream()
+					.map(ConstraintViolation::getMessage)
+					.collect(Collectors.toList()));
+		}
 		
 		Book book = bookService
 					.getBookByIsbn(dto.getIsbn())
-					.orElseThrow( () ->
-							new ResponseStatusException( HttpStatus.BAD_REQUEST, "Book not found for passed isbn"));
+					.orElseThrow( () -> new BusinessException("Book not found for passed isbn"));
 		
-		Loan entity = Loan.builder()
-				.book(book)
-				.customer(dto.getCustomer())
-				.loanDate(LocalDate.now())
-				.build();
-		entity = service.save(entity);
-		return entity.getId();
+		Loan entity = mapper.toEntity(dto, book, LocalDate.now());
+		if (async) {
+			return service.saveAsync(entity).thenApply(Loan::getId);
+		}
+		return CompletableFuture.completedFuture(service.save(entity).getId());
+	}
+
+	/**
+	 * Registra a devolução (ou reabre) um empréstimo. O empréstimo é lido no primário; se outra requisição o
+	 * alterar entre a leitura e a escrita, responde 409 (ApplicationControllerAdvice).
+	 */
+	@PatchMapping("{id}")
+	public LoanDetailsDTO returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
+		if (dto.getReturned() == null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Returned must be informed");
+		}
+		Loan loan = service.getForUpdate(id).orElseThrow( () -> new NotFoundException("Loan not found"));
+		loan.setReturned(dto.getReturned());
+		return mapper.toDTO(service.update(loan));
+	}
+
+	/**
+	 * Empréstimos por isbn e/ou cliente, do mais recente para o mais antigo. Ao menos um dos filtros é obrigatório:
+	 * sem filtro, a contagem do total percorreria a tabela inteira.
+	 */
+	@GetMapping
+	public PageDTO<LoanDetailsDTO> find(@RequestParam(value = "isbn", required = false) String isbn,
+			@RequestParam(value = "customer", required = false) String customer, Pageable pageRequest) {
+		if (!StringUtils.hasText(isbn) && !StringUtils.hasText(customer)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Isbn or customer must be informed");
+		}
+		Long bookId = null;
+		if (StringUtils.hasText(isbn)) {
+			Optional<Book> book = bookService.getBookByIsbn(isbn);
+			if (book.isEmpty()) {
+				return new PageDTO<LoanDetailsDTO>(List.of(), pageRequest.getPageNumber(), pageRequest.getPageSize(), 0);
+			}
+			bookId = book.get().getId();
+		}
+		Page<LoanView> result = service.find(bookId, StringUtils.hasText(customer) ? customer : null, pageRequest);
+		List<LoanDetailsDTO> list = result.getContent()
+				.stream()
+				.map(mapper::toDTO)
+				.collect(Collectors.toList());
+		return PageDTO.of(list, result);
 	}
 	
 }
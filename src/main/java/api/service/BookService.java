@@ -1,6 +1,8 @@
 package api.service;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -9,11 +11,20 @@ import api.model.entity.Book;
 
 public interface BookService {
 
+	String DUPLICATED_ISBN = "Isbn já cadastrado.";
+
 	Book save(Book book);
 	Optional<Book> getById(Long id);
+	Optional<Book> getForUpdate(Long id);
 	void delete(Book book);
 	Book update(Book book);
 	Page<Book> find(Book book, Pageable page);
+	Page<Book> findAvailable(Book book, Pageable page);
 	Optional<Book> getBookByIsbn(String string);
+	List<Book> getByIds(List<Long> ids);
+	List<Book> getByIsbns(List<String> isbns);
+	List<Book> saveAll(List<Book> books);
+	List<Book> findAfter(Book filter, Long afterId, int size);
+	void export(Book filter, Consumer<Book> consumer);
 	
 }
@@ -1,8 +1,20 @@
 package api.service;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
 import api.model.entity.Loan;
+import api.model.projection.LoanView;
 
 public interface LoanService {
 
 	Loan save(Loan loan);
+	CompletableFuture<Loan> saveAsync(Loan loan);
+	Loan update(Loan loan);
+	Optional<Loan> getById(Long id);
+	Optional<Loan> getForUpdate(Long id);
+	Page<LoanView> find(Long bookId, String customer, Pageable page);
 }
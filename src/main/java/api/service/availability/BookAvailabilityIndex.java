@@ -0,0 +1,151 @@
+package api.service.availability;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import api.model.repository.LoanRepository;
+
+/**
+ * Conjunto em memória dos livros emprestados, usado na checagem de disponibilidade sem ir ao banco.
+ *
+ * Os ids ficam em bitsets divididos em faixas (stripes) pelos bits baixos do id, cada uma com seu próprio
+ * lock: empréstimos de livros em faixas diferentes não disputam o mesmo lock. Como os ids vêm de sequence,
+ * o consumo de memória é de cerca de 1 bit por livro.
+ *
+ * É carregado a partir dos empréstimos ativos quando a aplicação sobe, pelo índice único uk_loan_active_book
+ * (só as linhas ativas, não o histórico), e mantido pelo LoanServiceImpl.
+ * Enquanto não estiver pronto, {@link #isReady()} retorna falso e a checagem deve seguir pelo banco.
+ * Considera que só esta instância grava empréstimos; com várias instâncias, desligue-o
+ * (library.loan.availability.enabled=false).
+ */
+@Component
+public class BookAvailabilityIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(BookAvailabilityIndex.class);
+
+	private static final int STRIPE_BITS = 6;
+	private static final int STRIPES = 1 << STRIPE_BITS;
+	private static final int WARM_PAGE_SIZE = 10_000;
+
+	private final LoanRepository repository;
+	private final boolean enabled;
+	private final BitSet[] loaned = new BitSet[STRIPES];
+	private final Set<Long> returnedWhileWarming = ConcurrentHashMap.newKeySet();
+	private volatile boolean warming;
+	private volatile boolean ready;
+
+	public BookAvailabilityIndex(LoanRepository repository,
+			@Value("${library.loan.availability.enabled:true}") boolean enabled) {
+		this.repository = repository;
+		this.enabled = enabled;
+		for (int i = 0; i < STRIPES; i++) {
+			loaned[i] = new BitSet();
+		}
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Carrega os livros com empréstimo ativo, em páginas pelo índice único de empréstimo ativo.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warm() {
+		if (!enabled) {
+			return;
+		}
+		warming = true;
+		long start = System.currentTimeMillis();
+		long lastId = 0;
+		long count = 0;
+		List<Long> page;
+		do {
+			page = repository.findActiveBookIdsAfter(lastId, PageRequest.of(0, WARM_PAGE_SIZE));
+			for (Long bookId : page) {
+				// devoluções concorrentes com a carga prevalecem sobre o que foi lido do banco
+				if (!returnedWhileWarming.contains(bookId)) {
+					markLoaned(bookId);
+					count++;
+				}
+			}
+			if (!page.isEmpty()) {
+				lastId = page.get(page.size() - 1);
+			}
+		} while (page.size() == WARM_PAGE_SIZE);
+		ready = true;
+		warming = false;
+		returnedWhileWarming.clear();
+		log.info("Book availability index loaded with {} active loans in {} ms", count, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Dentre os livros informados, os que têm empréstimo ativo, consultados no banco.
+	 * Usado enquanto o índice não está pronto.
+	 * @param Collection<Long> bookIds
+	 * @return Set<Long>
+	 */
+	public Set<Long> findLoaned(Collection<Long> bookIds) {
+		return bookIds.isEmpty() ? new HashSet<>() : new HashSet<>(repository.findActiveBookIdsIn(bookIds));
+	}
+
+	public boolean isAvailable(long bookId) {
+		BitSet stripe = stripe(bookId);
+		synchronized (stripe) {
+			return !stripe.get(bit(bookId));
+		}
+	}
+
+	/**
+	 * Marca o livro como emprestado se estiver disponível.
+	 * @return boolean falso se o livro já estava emprestado
+	 */
+	public boolean tryLoan(long bookId) {
+		BitSet stripe = stripe(bookId);
+		synchronized (stripe) {
+			if (stripe.get(bit(bookId))) {
+				return false;
+			}
+			stripe.set(bit(bookId));
+			return true;
+		}
+	}
+
+	public void markLoaned(long bookId) {
+		BitSet stripe = stripe(bookId);
+		synchronized (stripe) {
+			stripe.set(bit(bookId));
+		}
+	}
+
+	public void release(long bookId) {
+		BitSet stripe = stripe(bookId);
+		synchronized (stripe) {
+			stripe.clear(bit(bookId));
+		}
+		if (warming) {
+			returnedWhileWarming.add(bookId);
+		}
+	}
+
+	private BitSet stripe(long bookId) {
+		return loaned[(int) (bookId & (STRIPES - 1))];
+	}
+
+	private static int bit(long bookId) {
+		return (int) (bookId >>> STRIPE_BITS);
+	}
+
+}
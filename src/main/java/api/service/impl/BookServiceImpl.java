@@ -1,25 +1,70 @@
 package api.service.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import api.exception.BusinessException;
+import api.exception.UnavailableException;
 import api.model.entity.Book;
+import api.model.projection.BookView;
 import api.model.repository.BookRepository;
 import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.search.BookSearchIndex;
+import api.service.search.SearchSemantics;
 
 @Service
+@ConditionalOnProperty(name = "library.catalog.storage", havingValue = "jpa", matchIfMissing = true)
 public class BookServiceImpl implements BookService {
 
+	private static final int ISBN_CACHE_MAX_SIZE = 1_000_000;
+	private static final int AVAILABILITY_BATCH_SIZE = 1000;
+	private static final int EXPORT_BATCH_SIZE = 1000;
+	private static final String SEARCH_INDEX_LOADING = "Índice de busca em carga, tente novamente.";
+
 	private BookRepository repository;
+	private BookSearchIndex searchIndex;
+	private BookAvailabilityIndex availability;
+
+	/**
+	 * Cache read-through isbn -> id, usado pelo getBookByIsbn e pela checagem de duplicidade do save.
+	 * Guarda só o id: o livro continua vindo do findById (cache de segundo nível ou banco), sempre atual.
+	 */
+	private final Cache<String, Long> isbnCache = Caffeine.newBuilder().maximumSize(ISBN_CACHE_MAX_SIZE).build();
 	
-	public BookServiceImpl(BookRepository repository) {
+	public BookServiceImpl(BookRepository repository, BookSearchIndex searchIndex, BookAvailabilityIndex availability) {
 		this.repository=repository;
+		this.searchIndex=searchIndex;
+		this.availability=availability;
 	}
 	
 	/**
@@ -28,10 +73,19 @@ public class BookServiceImpl implements BookService {
 	 * @return Book
 	 */
 	public Book save(Book book) {	
-		if(this.repository.existsByIsbn(book.getIsbn())) {
-			throw new BusinessException("Isbn já cadastrado.");
+		if(isCachedIsbn(book.getIsbn()) || this.repository.existsByIsbn(book.getIsbn())) {
+			throw new BusinessException(DUPLICATED_ISBN);
+		}
+		Book saved;
+		try {
+			saved = this.repository.save(book);
+		} catch (DataIntegrityViolationException e) {
+			// outro cadastro com o mesmo isbn venceu a corrida; o índice único é a garantia final
+			throw new BusinessException(DUPLICATED_ISBN);
 		}
-		return this.repository.save(book);
+		cacheIsbn(saved);
+		this.searchIndex.index(saved);
+		return saved;
 	}
 
 	/**
@@ -39,10 +93,23 @@ public class BookServiceImpl implements BookService {
 	 * @param  Long id
 	 * @return Optional<Book>
 	 */
+	@Transactional(readOnly = true)
 	public Optional<Book> getById(Long id) {
 		return this.repository.findById(id);
 	}
 
+	/**
+	 * Busca livro por id para alterá-lo ou excluí-lo (PUT e DELETE). A transação não é readOnly, então a leitura vai
+	 * ao primário mesmo com a réplica habilitada, e não usa o cache de segundo nível: logo após uma escrita a
+	 * réplica ainda pode ter a versão anterior (412/409 indevido) ou nem ter o livro (404 indevido).
+	 * @param  Long id
+	 * @return Optional<Book>
+	 */
+	@Transactional
+	public Optional<Book> getForUpdate(Long id) {
+		return this.repository.findCurrentById(id);
+	}
+
 
 	/**
 	 * Deleta livro
@@ -54,6 +121,10 @@ public class BookServiceImpl implements BookService {
 			throw new IllegalArgumentException("Book id cant be null");
 		}
 		this.repository.delete(book);
+		if (book.getIsbn() != null) {
+			this.isbnCache.asMap().remove(book.getIsbn(), book.getId());
+		}
+		this.searchIndex.remove(book.getId());
 	}
 
 	/**
@@ -67,18 +138,33 @@ public class BookServiceImpl implements BookService {
 		if(book == null || book.getId() == null) {
 			throw new IllegalArgumentException("Book id cant be null");
 		}
-		return this.repository.save(book);
+		Book updated = this.repository.save(book);
+		cacheIsbn(updated);
+		this.searchIndex.index(updated);
+		return updated;
 	}
 
 
 	/**
 	 * Busca paginada de livro com filtro. 
 	 * (Ex livros que tenham a palavra Arthur)
+	 * Com o índice de busca habilitado (library.search.index.enabled) a busca é sempre resolvida nele, com a mesma
+	 * semântica em qualquer caso: cada termo casa com as palavras que começam com ele e todos os termos precisam
+	 * casar. Sem ordenação o resultado vem por relevância (por id, sem termos); a ordenação por id, title, author
+	 * ou isbn é feita em memória. Enquanto o índice carrega, a busca é recusada em vez de cair no like do banco.
+	 * Com o índice desabilitado, a busca é por exemplo (like, qualquer trecho) no banco.
 	 * @param Book book
 	 * @param Pageable pageRequest
+	 * @throws UnavailableException("Índice de busca em carga, tente novamente.")
+	 * @throws BusinessException("Ordenação não suportada.")
 	 * @return Page<Book>
 	 */
+	@Transactional(readOnly = true)
 	public Page<Book> find(Book book, Pageable pageRequest) {
+		if (this.searchIndex.isEnabled()) {
+			checkIndexed(pageRequest);
+			return load(this.searchIndex.find(book, id -> true, pageRequest));
+		}
 		Example<Book> example  = Example.of(book,
 				ExampleMatcher
 					.matching()
@@ -89,9 +175,320 @@ public class BookServiceImpl implements BookService {
 		return repository.findAll(example, pageRequest);
 	}
 
+	/**
+	 * Busca paginada de livros sem empréstimo ativo, com o mesmo filtro (e a mesma semântica) do find.
+	 * Com o índice de disponibilidade carregado tudo é resolvido em memória e só a página pedida é lida (do cache
+	 * de segundo nível ou do banco); enquanto ele carrega, os livros encontrados no índice de busca são conferidos
+	 * no banco em blocos de AVAILABILITY_BATCH_SIZE ids.
+	 * Com o índice de busca desabilitado, a busca vai ao banco (like), com a anti-junção em loan e o count.
+	 * @param Book book
+	 * @param Pageable pageRequest
+	 * @throws UnavailableException("Índice de busca em carga, tente novamente.")
+	 * @throws BusinessException("Ordenação não suportada.")
+	 * @return Page<Book>
+	 */
+	@Transactional(readOnly = true)
+	public Page<Book> findAvailable(Book book, Pageable pageRequest) {
+		if (!this.searchIndex.isEnabled()) {
+			return this.repository.findAvailable(likePattern(book.getTitle()), likePattern(book.getAuthor()),
+					likePattern(book.getIsbn()), pageRequest);
+		}
+		checkIndexed(pageRequest);
+		if (this.availability.isReady()) {
+			return load(this.searchIndex.find(book, this.availability::isAvailable, pageRequest));
+		}
+		List<Long> matches = this.searchIndex.find(book, id -> true,
+				PageRequest.of(0, Integer.MAX_VALUE, pageRequest.getSort())).getContent();
+		List<Long> available = new ArrayList<>(matches.size());
+		for (int from = 0; from < matches.size(); from += AVAILABILITY_BATCH_SIZE) {
+			List<Long> block = matches.subList(from, Math.min(from + AVAILABILITY_BATCH_SIZE, matches.size()));
+			Set<Long> loaned = this.availability.findLoaned(block);
+			for (Long id : block) {
+				if (!loaned.contains(id)) {
+					available.add(id);
+				}
+			}
+		}
+		return page(available, pageRequest);
+	}
+
+	private void checkIndexed(Pageable pageRequest) {
+		checkReady();
+		if (!this.searchIndex.isSortable(pageRequest.getSort())) {
+			// mensagem fixa: o ApiErrors de cada mensagem fica em cache
+			throw new BusinessException(SearchSemantics.UNSUPPORTED_SORT);
+		}
+	}
+
+	private void checkReady() {
+		if (!this.searchIndex.isReady()) {
+			throw new UnavailableException(SEARCH_INDEX_LOADING);
+		}
+	}
+
+	/**
+	 * Busca por chave (keyset): livros com id maior que afterId, em ordem de id, com o mesmo filtro (e a mesma
+	 * semântica) do find. Com o índice de busca habilitado e termos no filtro, os ids vêm do índice e só os livros
+	 * da página são lidos; sem termos (ou com o índice desabilitado) a página vem do banco.
+	 * Não executa count e o custo por página não depende da profundidade.
+	 * @param Book filter
+	 * @param Long afterId id do último livro da página anterior (null para a primeira página)
+	 * @param int size
+	 * @throws UnavailableException("Índice de busca em carga, tente novamente.")
+	 * @return List<Book>
+	 */
+	@Transactional(readOnly = true)
+	public List<Book> findAfter(Book filter, Long afterId, int size) {
+		long after = afterId == null ? 0L : afterId;
+		if (this.searchIndex.isEnabled()) {
+			if (this.searchIndex.hasTerms(filter)) {
+				checkReady();
+				return loadAll(this.searchIndex.findAfter(filter, after, size));
+			}
+			return this.repository.findPageAfter(after, null, null, null, PageRequest.of(0, size));
+		}
+		return this.repository.findPageAfter(after,
+				likePattern(filter.getTitle()), likePattern(filter.getAuthor()), likePattern(filter.getIsbn()),
+				PageRequest.of(0, size));
+	}
+
+	/**
+	 * Percorre todos os livros (com o mesmo filtro e a mesma semântica do find) em ordem de id. Com termos no
+	 * filtro e o índice de busca habilitado, os ids vêm do índice e as colunas são lidas em blocos de
+	 * EXPORT_BATCH_SIZE; nos demais casos, com um cursor somente leitura.
+	 * Os livros entregues ao consumer não são gerenciados pelo JPA, então a memória não cresce com o catálogo.
+	 * @param Book filter
+	 * @param Consumer<Book> consumer
+	 * @throws UnavailableException("Índice de busca em carga, tente novamente.")
+	 */
+	@Transactional(readOnly = true)
+	public void export(Book filter, Consumer<Book> consumer) {
+		if (this.searchIndex.isEnabled() && this.searchIndex.hasTerms(filter)) {
+			checkReady();
+			List<Long> ids = this.searchIndex.findAfter(filter, 0L, Integer.MAX_VALUE);
+			for (int from = 0; from < ids.size(); from += EXPORT_BATCH_SIZE) {
+				List<Long> block = ids.subList(from, Math.min(from + EXPORT_BATCH_SIZE, ids.size()));
+				this.repository.findViewsByIdIn(block).forEach(view -> consumer.accept(toBook(view)));
+			}
+			return;
+		}
+		boolean indexed = this.searchIndex.isEnabled();
+		try (Stream<BookView> books = indexed ? this.repository.streamAll(null, null, null) : this.repository.streamAll(
+				likePattern(filter.getTitle()), likePattern(filter.getAuthor()), likePattern(filter.getIsbn()))) {
+			books.forEach(view -> consumer.accept(toBook(view)));
+		}
+	}
+
+	private static Book toBook(BookView view) {
+		Book book = new Book();
+		book.setId(view.getId());
+		book.setTitle(view.getTitle());
+		book.setAuthor(view.getAuthor());
+		book.setIsbn(view.getIsbn());
+		return book;
+	}
+
+	private static String likePattern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String escaped = value.toLowerCase(Locale.ROOT)
+				.replace("\\", "\\\\")
+				.replace("%", "\\%")
+				.replace("_", "\\_");
+		return "%" + escaped + "%";
+	}
+
+	/**
+	 * Lê os livros de uma página de ids do índice, mantendo a ordem dos ids.
+	 */
+	private Page<Book> load(Page<Long> ids) {
+		return new PageImpl<>(loadAll(ids.getContent()), ids.getPageable(), ids.getTotalElements());
+	}
+
+	private List<Book> loadAll(List<Long> ids) {
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<Long, Book> books = this.repository.findAllById(ids).stream()
+				.collect(Collectors.toMap(Book::getId, Function.identity()));
+		List<Book> content = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			Book found = books.get(id);
+			if (found != null) {
+				content.add(found);
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Lê apenas os livros da página pedida, mantendo a ordem dos ids.
+	 */
+	private Page<Book> page(List<Long> ids, Pageable pageRequest) {
+		int from = pageRequest.isPaged() ? (int) Math.min(pageRequest.getOffset(), ids.size()) : 0;
+		int to = pageRequest.isPaged() ? Math.min(from + pageRequest.getPageSize(), ids.size()) : ids.size();
+		return load(new PageImpl<>(ids.subList(from, to), pageRequest, ids.size()));
+	}
+
+
+	/**
+	 * Busca livro por isbn.
+	 * Consulta primeiro o cache isbn -> id e só vai ao índice de isbn em caso de miss. O acerto economiza apenas a
+	 * busca no índice de isbn: o livro ainda é lido por chave primária (findById, servido pelo cache de segundo
+	 * nível quando está lá), que também confirma que o isbn não mudou. O Book não é guardado no cache porque é
+	 * uma entidade mutável (o PUT altera a instância lida) e ficaria desatualizado após um update em outra instância.
+	 * @param String isbn
+	 * @return Optional<Book> vazio também para isbn nulo ou em branco
+	 */
+	@Transactional(readOnly = true)
+	public Optional<Book> getBookByIsbn(String isbn) {
+		if (!StringUtils.hasText(isbn)) {
+			return Optional.empty();
+		}
+		Long id = this.isbnCache.getIfPresent(isbn);
+		if (id != null) {
+			Optional<Book> cached = this.repository.findById(id).filter(book -> isbn.equals(book.getIsbn()));
+			if (cached.isPresent()) {
+				return cached;
+			}
+			this.isbnCache.asMap().remove(isbn, id);
+		}
+		Optional<Book> book = this.repository.findByIsbn(isbn);
+		book.ifPresent(this::cacheIsbn);
+		return book;
+	}
+
 
-	public Optional<Book> getBookByIsbn(String string) {
-		return null;
+	/**
+	 * Busca vários livros por id em uma ida ao banco (os que estão no cache de segundo nível não vão ao banco).
+	 * Ids repetidos são ignorados e os inexistentes ficam de fora do resultado.
+	 * @param List<Long> ids
+	 * @return List<Book> livros encontrados, na ordem dos ids informados
+	 */
+	@Transactional(readOnly = true)
+	public List<Book> getByIds(List<Long> ids) {
+		Set<Long> keys = new LinkedHashSet<>(ids);
+		keys.remove(null);
+		if (keys.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<Long, Book> found = this.repository.findAllByIdCachedFirst(keys).stream()
+				.collect(Collectors.toMap(Book::getId, Function.identity()));
+		return keys.stream()
+				.map(found::get)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Busca vários livros por isbn.
+	 * Os isbns presentes no cache isbn -> id são resolvidos por chave primária e os demais em uma única consulta com IN.
+	 * Isbns repetidos são ignorados e os inexistentes ficam de fora do resultado.
+	 * @param List<String> isbns
+	 * @return List<Book> livros encontrados, na ordem dos isbns informados
+	 */
+	@Transactional(readOnly = true)
+	public List<Book> getByIsbns(List<String> isbns) {
+		Set<String> keys = new LinkedHashSet<>(isbns);
+		keys.remove(null);
+		Map<String, Book> found = new HashMap<>();
+		Map<Long, String> cachedIds = new HashMap<>();
+		for (String isbn : keys) {
+			Long id = this.isbnCache.getIfPresent(isbn);
+			if (id != null) {
+				cachedIds.put(id, isbn);
+			}
+		}
+		if (!cachedIds.isEmpty()) {
+			for (Book book : this.repository.findAllByIdCachedFirst(cachedIds.keySet())) {
+				if (book.getIsbn() != null && book.getIsbn().equals(cachedIds.get(book.getId()))) {
+					found.put(book.getIsbn(), book);
+				}
+			}
+			// entradas que não conferem mais com o banco são descartadas e buscadas pelo isbn
+			cachedIds.forEach((id, isbn) -> {
+				if (!found.containsKey(isbn)) {
+					this.isbnCache.asMap().remove(isbn, id);
+				}
+			});
+		}
+		List<String> misses = keys.stream().filter(isbn -> !found.containsKey(isbn)).collect(Collectors.toList());
+		if (!misses.isEmpty()) {
+			for (Book book : this.repository.findByIsbnIn(misses)) {
+				found.put(book.getIsbn(), book);
+				cacheIsbn(book);
+			}
+		}
+		return keys.stream()
+				.map(found::get)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+
+
+	/**
+	 * Insere um lote de livros.
+	 * Os isbns duplicados são verificados em uma única consulta para o lote todo
+	 * e os livros aceitos são gravados via batch do JDBC.
+	 * Livros com isbn já cadastrado (ou repetido dentro do próprio lote) são ignorados.
+	 * Um isbn gravado por outro cadastro depois da checagem só aparece no commit: o lote inteiro é desfeito.
+	 * @param List<Book> books
+	 * @throws DataIntegrityViolationException se um isbn do lote foi cadastrado por outra requisição
+	 * @return List<Book> livros gravados, na ordem de entrada
+	 */
+	@Transactional
+	public List<Book> saveAll(List<Book> books) {
+		Set<String> isbns = books.stream().map(Book::getIsbn).collect(Collectors.toSet());
+		Set<String> existing = isbns.isEmpty() ? new HashSet<>() : new HashSet<>(this.repository.findExistingIsbns(isbns));
+
+		List<Book> accepted = new ArrayList<>(books.size());
+		for (Book book : books) {
+			if (existing.add(book.getIsbn())) {
+				accepted.add(book);
+			}
+		}
+		List<Book> saved = this.repository.saveAll(accepted);
+		afterCommit(() -> saved.forEach(book -> {
+			cacheIsbn(book);
+			this.searchIndex.index(book);
+		}));
+		return saved;
+	}
+
+	/**
+	 * Confirma pela chave primária que o isbn em cache ainda pertence ao livro
+	 * (o isbn pode ter sido alterado por um update); descarta a entrada se não pertencer.
+	 */
+	private boolean isCachedIsbn(String isbn) {
+		Long id = isbn == null ? null : this.isbnCache.getIfPresent(isbn);
+		if (id == null) {
+			return false;
+		}
+		if (this.repository.findById(id).map(book -> isbn.equals(book.getIsbn())).orElse(false)) {
+			return true;
+		}
+		this.isbnCache.asMap().remove(isbn, id);
+		return false;
+	}
+
+	private void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+	private void cacheIsbn(Book book) {
+		if (book != null && book.getIsbn() != null && book.getId() != null) {
+			this.isbnCache.put(book.getIsbn(), book.getId());
+		}
 	}
 
 }
@@ -0,0 +1,346 @@
+package api.service.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import api.exception.BusinessException;
+import api.model.entity.Book;
+import api.model.repository.LoanRepository;
+import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.memory.CompactBookStore;
+import api.service.search.SearchSemantics;
+
+/**
+ * BookService somente leitura servido pelo CompactBookStore, carregado de um snapshot na subida
+ * (library.catalog.storage=memory). As buscas percorrem as colunas sem ir ao banco, com as mesmas regras de
+ * busca e ordenação do BookServiceImpl ({@link SearchSemantics}); as escritas do catálogo ficam com a instância
+ * que usa o banco.
+ * Empréstimos continuam no banco e a disponibilidade vem do BookAvailabilityIndex.
+ */
+public class InMemoryBookService implements BookService {
+
+	private static final String READ_ONLY = "Catalog is read-only";
+	private static final int AVAILABILITY_BATCH_SIZE = 1000;
+
+	private final CompactBookStore store;
+	private final BookAvailabilityIndex availability;
+	private final LoanRepository loanRepository;
+
+	public InMemoryBookService(CompactBookStore store, BookAvailabilityIndex availability,
+			LoanRepository loanRepository) {
+		this.store = store;
+		this.availability = availability;
+		this.loanRepository = loanRepository;
+	}
+
+	/**
+	 * Busca livro por id
+	 * @param  Long id
+	 * @return Optional<Book>
+	 */
+	@Override
+	public Optional<Book> getById(Long id) {
+		int row = id == null ? -1 : this.store.rowOf(id);
+		return row < 0 ? Optional.empty() : Optional.of(this.store.book(row));
+	}
+
+	/**
+	 * Busca livro por id para alterá-lo ou excluí-lo: não há réplica, então é o mesmo que getById
+	 * (e a alteração em si é recusada, o catálogo é somente leitura).
+	 * @param  Long id
+	 * @return Optional<Book>
+	 */
+	@Override
+	public Optional<Book> getForUpdate(Long id) {
+		return getById(id);
+	}
+
+	/**
+	 * Busca livro por isbn
+	 * @param String isbn
+	 * @return Optional<Book>
+	 */
+	@Override
+	public Optional<Book> getBookByIsbn(String isbn) {
+		int row = isbn == null ? -1 : this.store.rowOfIsbn(isbn);
+		return row < 0 ? Optional.empty() : Optional.of(this.store.book(row));
+	}
+
+	/**
+	 * Busca vários livros por id; repetidos são ignorados e os inexistentes ficam de fora.
+	 * @param List<Long> ids
+	 * @return List<Book> livros encontrados, na ordem dos ids informados
+	 */
+	@Override
+	public List<Book> getByIds(List<Long> ids) {
+		Set<Long> keys = new LinkedHashSet<>(ids);
+		List<Book> found = new ArrayList<>(keys.size());
+		for (Long id : keys) {
+			getById(id).ifPresent(found::add);
+		}
+		return found;
+	}
+
+	/**
+	 * Busca vários livros por isbn; repetidos são ignorados e os inexistentes ficam de fora.
+	 * @param List<String> isbns
+	 * @return List<Book> livros encontrados, na ordem dos isbns informados
+	 */
+	@Override
+	public List<Book> getByIsbns(List<String> isbns) {
+		Set<String> keys = new LinkedHashSet<>(isbns);
+		List<Book> found = new ArrayList<>(keys.size());
+		for (String isbn : keys) {
+			getBookByIsbn(isbn).ifPresent(found::add);
+		}
+		return found;
+	}
+
+	/**
+	 * Busca paginada com as mesmas regras do BookServiceImpl ({@link SearchSemantics}): cada termo casa com as
+	 * palavras que começam com ele e todos os termos precisam casar. Sem ordenação o resultado vem por relevância
+	 * (por id, sem termos); a ordenação por id, title, author ou isbn compara os valores do catálogo.
+	 * Uma passada conta os resultados e só os livros da página são materializados.
+	 * @param Book book
+	 * @param Pageable pageRequest
+	 * @throws BusinessException("Ordenação não suportada.")
+	 * @return Page<Book>
+	 */
+	@Override
+	public Page<Book> find(Book book, Pageable pageRequest) {
+		return page(book, pageRequest, false);
+	}
+
+	/**
+	 * Como o find, só com livros sem empréstimo ativo. Enquanto o índice de disponibilidade não está pronto
+	 * (ou com library.loan.availability.enabled=false), os livros que passam no filtro são conferidos no banco
+	 * em blocos de AVAILABILITY_BATCH_SIZE ids, uma consulta por bloco.
+	 * @param Book book
+	 * @param Pageable pageRequest
+	 * @throws BusinessException("Ordenação não suportada.")
+	 * @return Page<Book>
+	 */
+	@Override
+	public Page<Book> findAvailable(Book book, Pageable pageRequest) {
+		return page(book, pageRequest, true);
+	}
+
+	/**
+	 * Busca por chave: livros com id maior que afterId, em ordem de id, com o mesmo filtro do find.
+	 * @param Book filter
+	 * @param Long afterId id do último livro da página anterior (null para a primeira página)
+	 * @param int size
+	 * @return List<Book>
+	 */
+	@Override
+	public List<Book> findAfter(Book filter, Long afterId, int size) {
+		CompactBookStore.Filter terms = CompactBookStore.filter(filter);
+		List<Book> books = new ArrayList<>(size);
+		for (int row = this.store.firstRowAfter(afterId == null ? 0L : afterId);
+				row < this.store.size() && books.size() < size; row++) {
+			if (this.store.score(row, terms) >= 0) {
+				books.add(this.store.book(row));
+			}
+		}
+		return books;
+	}
+
+	/**
+	 * Percorre todos os livros (com o mesmo filtro do find) em ordem de id.
+	 * @param Book filter
+	 * @param Consumer<Book> consumer
+	 */
+	@Override
+	public void export(Book filter, Consumer<Book> consumer) {
+		CompactBookStore.Filter terms = CompactBookStore.filter(filter);
+		for (int row = 0; row < this.store.size(); row++) {
+			if (this.store.score(row, terms) >= 0) {
+				consumer.accept(this.store.book(row));
+			}
+		}
+	}
+
+	@Override
+	public Book save(Book book) {
+		throw new BusinessException(READ_ONLY);
+	}
+
+	@Override
+	public Book update(Book book) {
+		throw new BusinessException(READ_ONLY);
+	}
+
+	@Override
+	public void delete(Book book) {
+		throw new BusinessException(READ_ONLY);
+	}
+
+	@Override
+	public List<Book> saveAll(List<Book> books) {
+		throw new BusinessException(READ_ONLY);
+	}
+
+	private Page<Book> page(Book filter, Pageable pageRequest, boolean availableOnly) {
+		if (!SearchSemantics.isSortable(pageRequest.getSort())) {
+			throw new BusinessException(SearchSemantics.UNSUPPORTED_SORT);
+		}
+		CompactBookStore.Filter terms = CompactBookStore.filter(filter);
+		Collector page = pageRequest.getSort().isUnsorted() && terms.isEmpty()
+				? new PageCollector(pageRequest) : new TopCollector(pageRequest, terms.isEmpty());
+		if (availableOnly && !this.availability.isReady()) {
+			int[] batch = new int[AVAILABILITY_BATCH_SIZE];
+			int[] scores = new int[AVAILABILITY_BATCH_SIZE];
+			int pending = 0;
+			for (int row = 0; row < this.store.size(); row++) {
+				int score = this.store.score(row, terms);
+				if (score >= 0) {
+					batch[pending] = row;
+					scores[pending++] = score;
+					if (pending == batch.length) {
+						addAvailable(batch, scores, pending, page);
+						pending = 0;
+					}
+				}
+			}
+			addAvailable(batch, scores, pending, page);
+		} else {
+			for (int row = 0; row < this.store.size(); row++) {
+				int score = this.store.score(row, terms);
+				if (score >= 0 && (!availableOnly || this.availability.isAvailable(this.store.id(row)))) {
+					page.add(row, score);
+				}
+			}
+		}
+		return page.page();
+	}
+
+	/**
+	 * Confere no banco, em uma consulta, quais livros do bloco têm empréstimo ativo e conta os demais.
+	 */
+	private void addAvailable(int[] rows, int[] scores, int length, Collector page) {
+		if (length == 0) {
+			return;
+		}
+		List<Long> ids = new ArrayList<>(length);
+		for (int i = 0; i < length; i++) {
+			ids.add(this.store.id(rows[i]));
+		}
+		Set<Long> loaned = new HashSet<>(this.loanRepository.findActiveBookIdsIn(ids));
+		for (int i = 0; i < length; i++) {
+			if (!loaned.contains(ids.get(i))) {
+				page.add(rows[i], scores[i]);
+			}
+		}
+	}
+
+	/** Recebe as linhas aceitas, em ordem de id, e monta a página */
+	private interface Collector {
+
+		void add(int row, int score);
+
+		Page<Book> page();
+
+	}
+
+	/**
+	 * Em ordem de id: conta os livros que passam no filtro e materializa só os que caem na página.
+	 */
+	private final class PageCollector implements Collector {
+
+		private final Pageable pageRequest;
+		private final long from;
+		private final long to;
+		private final List<Book> content;
+		private long total;
+
+		PageCollector(Pageable pageRequest) {
+			this.pageRequest = pageRequest;
+			this.from = pageRequest.isPaged() ? pageRequest.getOffset() : 0L;
+			this.to = pageRequest.isPaged() ? from + pageRequest.getPageSize() : Long.MAX_VALUE;
+			this.content = new ArrayList<>(pageRequest.isPaged() ? pageRequest.getPageSize() : 16);
+		}
+
+		@Override
+		public void add(int row, int score) {
+			if (total >= from && total < to) {
+				content.add(store.book(row));
+			}
+			total++;
+		}
+
+		@Override
+		public Page<Book> page() {
+			return new PageImpl<>(content, pageRequest, total);
+		}
+
+	}
+
+	/**
+	 * Por relevância (sem ordenação pedida) ou pela ordenação pedida: mantém só os offset + size primeiros em um
+	 * heap, com o id como desempate, como o BookSearchIndex. Cada entrada guarda a relevância nos 32 bits altos
+	 * e a linha nos baixos.
+	 */
+	private final class TopCollector implements Collector {
+
+		private final Pageable pageRequest;
+		private final long offset;
+		private final long limit;
+		private final Comparator<Long> order;
+		private final PriorityQueue<Long> top;
+		private long total;
+
+		TopCollector(Pageable pageRequest, boolean unscored) {
+			this.pageRequest = pageRequest;
+			this.offset = pageRequest.isPaged() ? pageRequest.getOffset() : 0L;
+			this.limit = pageRequest.isPaged() ? Math.min(offset + pageRequest.getPageSize(), Integer.MAX_VALUE) : Integer.MAX_VALUE;
+			Comparator<Long> byRow = Comparator.comparingInt(InMemoryBookService::row);
+			if (pageRequest.getSort().isSorted()) {
+				// as linhas estão em ordem de id
+				this.order = Comparator.comparing(InMemoryBookService::row, SearchSemantics.<Integer>comparator(
+						pageRequest.getSort(), store::id, store::value));
+			} else {
+				this.order = unscored ? byRow
+						: Comparator.<Long>comparingInt(entry -> (int) (entry >>> 32)).reversed().thenComparing(byRow);
+			}
+			this.top = new PriorityQueue<>(this.order.reversed());
+		}
+
+		@Override
+		public void add(int row, int score) {
+			total++;
+			top.add(((long) score << 32) | row);
+			if (top.size() > limit) {
+				top.poll();
+			}
+		}
+
+		@Override
+		public Page<Book> page() {
+			List<Long> sorted = new ArrayList<>(top);
+			sorted.sort(order);
+			List<Book> content = new ArrayList<>();
+			for (int i = (int) Math.min(offset, sorted.size()); i < sorted.size(); i++) {
+				content.add(store.book(row(sorted.get(i))));
+			}
+			return new PageImpl<>(content, pageRequest, total);
+		}
+
+	}
+
+	private static int row(long entry) {
+		return (int) entry;
+	}
+
+}
@@ -0,0 +1,288 @@
+package api.service.impl;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import api.exception.BusinessException;
+import api.model.entity.Loan;
+import api.model.projection.LoanView;
+import api.model.repository.LoanRepository;
+import api.service.LoanService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.journal.LoanWriteBehind;
+
+@Service
+public class LoanServiceImpl implements LoanService {
+
+	private static final String BOOK_ALREADY_LOANED = "Book already loaned";
+	private static final String LOAN_NOT_PROJECTED = "Loan is still being recorded, try again";
+	/** Quanto o GET por id espera a projeção de um empréstimo recém confirmado pelo journal */
+	private static final long PROJECTION_WAIT_MILLIS = 2000;
+
+	private LoanRepository repository;
+	private BookAvailabilityIndex availability;
+	private LoanWriteBehind writeBehind;
+
+	@Autowired
+	public LoanServiceImpl(LoanRepository repository, BookAvailabilityIndex availability,
+			@Nullable LoanWriteBehind writeBehind) {
+		this.repository = repository;
+		this.availability = availability;
+		this.writeBehind = writeBehind;
+	}
+
+	/**
+	 * Registra empréstimo.
+	 * A disponibilidade é checada no índice em memória (BookAvailabilityIndex), ou no banco enquanto ele não
+	 * estiver carregado; o índice único de empréstimo ativo por livro continua sendo a garantia final.
+	 * Com o journal habilitado (library.loan.journal.enabled), o empréstimo é confirmado após o fsync do journal
+	 * e gravado na tabela em segundo plano.
+	 * @param Loan loan
+	 * @throws BusinessException("Book already loaned")
+	 * @return Loan
+	 */
+	@Override
+	public Loan save(Loan loan) {
+		Long bookId = reserve(loan);
+		try {
+			Loan saved = this.writeBehind != null ? this.writeBehind.append(loan) : this.repository.save(loan);
+			onRollback(() -> release(bookId));
+			return saved;
+		} catch (DataIntegrityViolationException e) {
+			// outro empréstimo do mesmo livro foi gravado entre a verificação e o insert; o livro segue emprestado
+			throw new BusinessException(BOOK_ALREADY_LOANED);
+		} catch (RuntimeException e) {
+			release(bookId);
+			throw e;
+		}
+	}
+
+	/**
+	 * Registra empréstimo sem bloquear a thread até o fsync do journal: o futuro é completado pela thread de escrita
+	 * do journal. A disponibilidade é checada antes de devolver o futuro, como no save. Sem o journal, o insert
+	 * é feito na hora e o futuro já vem completo.
+	 * @param Loan loan
+	 * @throws BusinessException("Book already loaned")
+	 * @return CompletableFuture<Loan>
+	 */
+	@Override
+	public CompletableFuture<Loan> saveAsync(Loan loan) {
+		if (this.writeBehind == null) {
+			return CompletableFuture.completedFuture(save(loan));
+		}
+		Long bookId = reserve(loan);
+		CompletableFuture<Loan> saved;
+		try {
+			saved = this.writeBehind.appendAsync(loan);
+		} catch (RuntimeException e) {
+			release(bookId);
+			throw e;
+		}
+		return saved.whenComplete((ignored, e) -> {
+			if (e != null) {
+				release(bookId);
+			}
+		});
+	}
+
+	/**
+	 * Atualiza empréstimo. Na devolução, o livro volta a ficar disponível após o commit; reabrir um empréstimo
+	 * devolvido passa pela mesma reserva do save, para não competir com um empréstimo ainda no journal.
+	 * @param Loan loan
+	 * @throws IllegalArgumentException("Loan id cant be null")
+	 * @throws BusinessException("Book already loaned")
+	 * @throws BusinessException("Loan is still being recorded, try again")
+	 * @return Loan
+	 */
+	@Override
+	public Loan update(Loan loan) {
+		if (loan == null || loan.getId() == null) {
+			throw new IllegalArgumentException("Loan id cant be null");
+		}
+		if (this.writeBehind != null && loan.getVersion() == null) {
+			// cópia de um empréstimo do journal ainda não projetado: salvar agora faria um insert duplicado
+			throw new BusinessException(LOAN_NOT_PROJECTED);
+		}
+		Long bookId = loan.getBook().getId();
+		// activeBookId ainda reflete o banco: null num empréstimo devolvido
+		boolean reopen = !Boolean.TRUE.equals(loan.getReturned()) && loan.getActiveBookId() == null;
+		if (reopen && !reserve(bookId)) {
+			throw new BusinessException(BOOK_ALREADY_LOANED);
+		}
+		Loan updated;
+		try {
+			updated = this.repository.save(loan);
+			if (!Hibernate.isInitialized(updated.getBook())) {
+				// o merge devolve o livro como proxy, que não pode ser carregado fora da sessão (open-in-view desligado)
+				updated.setBook(loan.getBook());
+			}
+		} catch (DataIntegrityViolationException e) {
+			// reabrir um empréstimo devolvido falha se o livro já foi emprestado de novo
+			throw new BusinessException(BOOK_ALREADY_LOANED);
+		} catch (RuntimeException e) {
+			// reabertura não gravada: o livro volta a ficar disponível no índice
+			if (reopen) {
+				release(bookId);
+			}
+			throw e;
+		} finally {
+			if (reopen && this.writeBehind != null) {
+				// gravado (ou recusado) na tabela: daqui em diante o índice único protege o livro
+				this.writeBehind.release(bookId);
+			}
+		}
+		if (Boolean.TRUE.equals(updated.getReturned())) {
+			afterCommit(() -> this.availability.release(bookId));
+		} else {
+			afterCommit(() -> this.availability.markLoaned(bookId));
+			if (reopen) {
+				onRollback(() -> this.availability.release(bookId));
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * Busca empréstimo por id.
+	 * Com o journal habilitado, um empréstimo confirmado e ainda não projetado espera a projeção por até
+	 * {@value #PROJECTION_WAIT_MILLIS} ms; se ela não terminar, é devolvido o empréstimo do journal
+	 * (sem version, então ainda não pode ser atualizado).
+	 * @param Long id
+	 * @return Optional<Loan>
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<Loan> getById(Long id) {
+		return find(id, this.repository::findById);
+	}
+
+	/**
+	 * Busca empréstimo por id para alterá-lo (PATCH). A transação não é readOnly, então a leitura vai ao primário
+	 * mesmo com a réplica habilitada: logo após uma escrita a réplica ainda pode não ter o empréstimo (404 indevido)
+	 * ou ter a versão anterior, que falharia no merge. Espera a projeção do journal como o getById.
+	 * @param Long id
+	 * @return Optional<Loan>
+	 */
+	@Override
+	@Transactional
+	public Optional<Loan> getForUpdate(Long id) {
+		return find(id, this.repository::findCurrentById);
+	}
+
+	private Optional<Loan> find(Long id, Function<Long, Optional<Loan>> lookup) {
+		Optional<Loan> loan = lookup.apply(id);
+		if (loan.isPresent() || this.writeBehind == null) {
+			return loan;
+		}
+		Optional<Loan> unprojected = this.writeBehind.awaitProjection(id, PROJECTION_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		return unprojected.isPresent() ? unprojected : lookup.apply(id);
+	}
+
+	/**
+	 * Lista empréstimos por livro e/ou cliente, do mais recente para o mais antigo.
+	 * Cada filtro tem sua consulta sobre um índice composto (coluna filtrada, id), então o custo não cresce com a
+	 * tabela; a ordenação do Pageable é ignorada. Com o journal habilitado, empréstimos ainda não projetados
+	 * não aparecem na listagem (só no GET por id).
+	 * @param Long bookId
+	 * @param String customer
+	 * @param Pageable page
+	 * @throws IllegalArgumentException("Book or customer must be informed")
+	 * @return Page<LoanView>
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanView> find(Long bookId, String customer, Pageable page) {
+		Pageable unsorted = page.isPaged() ? PageRequest.of(page.getPageNumber(), page.getPageSize()) : page;
+		if (bookId != null && customer != null) {
+			return this.repository.findByBookAndCustomer(bookId, customer, unsorted);
+		}
+		if (bookId != null) {
+			return this.repository.findByBook(bookId, unsorted);
+		}
+		if (customer != null) {
+			return this.repository.findByCustomer(customer, unsorted);
+		}
+		throw new IllegalArgumentException("Book or customer must be informed");
+	}
+
+	private Long reserve(Loan loan) {
+		if (loan.getReturned() == null) {
+			loan.setReturned(false);
+		}
+		Long bookId = loan.getBook().getId();
+		if (!reserve(bookId)) {
+			throw new BusinessException(BOOK_ALREADY_LOANED);
+		}
+		return bookId;
+	}
+
+	/**
+	 * Reserva o livro para o empréstimo: pelo índice em memória quando pronto; senão pelo banco
+	 * (e pelo conjunto de empréstimos ainda não projetados do journal).
+	 */
+	private boolean reserve(Long bookId) {
+		if (this.availability.isReady()) {
+			return this.availability.tryLoan(bookId);
+		}
+		if (this.writeBehind != null && !this.writeBehind.reserve(bookId)) {
+			return false;
+		}
+		if (this.repository.existsByActiveBookId(bookId)) {
+			if (this.writeBehind != null) {
+				this.writeBehind.release(bookId);
+			}
+			return false;
+		}
+		// empréstimos feitos durante a carga do índice não podem se perder
+		this.availability.markLoaned(bookId);
+		return true;
+	}
+
+	private void release(Long bookId) {
+		this.availability.release(bookId);
+		if (this.writeBehind != null) {
+			this.writeBehind.release(bookId);
+		}
+	}
+
+	private static void onRollback(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						action.run();
+					}
+				}
+			});
+		}
+	}
+
+	private static void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+}
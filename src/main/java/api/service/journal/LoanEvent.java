@@ -0,0 +1,65 @@
+package api.service.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import api.model.entity.Loan;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Evento do journal de empréstimos. Formato binário do payload:
+ * tipo (1 byte), id do empréstimo, id do livro, data do empréstimo em epoch day (8 bytes cada)
+ * e cliente em UTF-8 precedido do tamanho (4 bytes, -1 para nulo).
+ */
+@Data
+@AllArgsConstructor
+public class LoanEvent {
+
+	public static final byte CREATED = 1;
+
+	private byte type;
+	private long loanId;
+	private long bookId;
+	private LocalDate loanDate;
+	private String customer;
+
+	public static LoanEvent created(Loan loan) {
+		return new LoanEvent(CREATED, loan.getId(), loan.getBook().getId(), loan.getLoanDate(), loan.getCustomer());
+	}
+
+	int size() {
+		return 1 + Long.BYTES * 3 + Integer.BYTES + (customer == null ? 0 : customer.getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	void writeTo(ByteBuffer buffer) {
+		buffer.put(type);
+		buffer.putLong(loanId);
+		buffer.putLong(bookId);
+		buffer.putLong(loanDate.toEpochDay());
+		if (customer == null) {
+			buffer.putInt(-1);
+		} else {
+			byte[] bytes = customer.getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	static LoanEvent readFrom(ByteBuffer buffer) {
+		byte type = buffer.get();
+		long loanId = buffer.getLong();
+		long bookId = buffer.getLong();
+		LocalDate loanDate = LocalDate.ofEpochDay(buffer.getLong());
+		int length = buffer.getInt();
+		String customer = null;
+		if (length >= 0) {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			customer = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return new LoanEvent(type, loanId, bookId, loanDate, customer);
+	}
+
+}
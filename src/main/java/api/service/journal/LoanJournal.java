@@ -0,0 +1,379 @@
+package api.service.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Journal append-only de eventos de empréstimo, em segmentos de arquivo (segment-NNNNNNNNNNNNNNNNNNNN.log).
+ * Cada registro é [tamanho do payload (4 bytes)][CRC32C do payload (4 bytes)][payload]; o checkpoint do
+ * projetor fica no arquivo "checkpoint" ([segmento (8 bytes)][offset (8 bytes)][CRC32C (4 bytes)]). Não é thread safe: só a thread de escrita do {@link LoanWriteBehind} grava.
+ */
+public class LoanJournal implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(LoanJournal.class);
+
+	private static final int HEADER_SIZE = Integer.BYTES * 2;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String CHECKPOINT = "checkpoint";
+	private static final String DEAD_LETTER = "dead-letter.log";
+	private static final int CHECKPOINT_SIZE = Long.BYTES * 2 + Integer.BYTES;
+
+	/** Fim de um registro no journal: segmento e offset logo após o registro */
+	@Data
+	@AllArgsConstructor
+	public static class Position implements Comparable<Position> {
+
+		public static final Position START = new Position(0, 0);
+
+		private long segment;
+		private long offset;
+
+		@Override
+		public int compareTo(Position other) {
+			int bySegment = Long.compare(segment, other.segment);
+			return bySegment != 0 ? bySegment : Long.compare(offset, other.offset);
+		}
+
+	}
+
+	@Data
+	@AllArgsConstructor
+	public static class Entry {
+
+		private LoanEvent event;
+		private Position position;
+
+	}
+
+	private final Path directory;
+	private final long segmentSize;
+	private FileChannel channel;
+	private long segment;
+	/** Falha de escrita que não pôde ser desfeita; a partir dela o journal recusa novas escritas */
+	private IOException failure;
+
+	public LoanJournal(Path directory, long segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Lê os segmentos existentes e devolve os eventos gravados depois do checkpoint, para serem reaplicados.
+	 * Um registro incompleto ou corrompido no fim do último segmento (escrita interrompida por queda)
+	 * é descartado e o arquivo truncado. Em seguida o journal fica pronto para novas escritas.
+	 * @return List<Entry>
+	 */
+	public List<Entry> recover() throws IOException {
+		Files.createDirectories(directory);
+		Position checkpoint = readCheckpoint();
+		List<Long> segments = segments();
+		List<Entry> pending = new ArrayList<>();
+		for (int i = 0; i < segments.size(); i++) {
+			long current = segments.get(i);
+			boolean last = i == segments.size() - 1;
+			readSegment(current, last, checkpoint, pending);
+		}
+		segment = segments.isEmpty() ? Math.max(1, checkpoint.getSegment()) : segments.get(segments.size() - 1);
+		openSegment(segment);
+		return pending;
+	}
+
+	private void readSegment(long current, boolean last, Position checkpoint, List<Entry> pending) throws IOException {
+		Path path = segmentPath(current);
+		ByteBuffer buffer;
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = ByteBuffer.allocate((int) file.size());
+			while (buffer.hasRemaining() && file.read(buffer) >= 0) {
+				// lê o segmento inteiro
+			}
+		}
+		buffer.flip();
+		CRC32C crc = new CRC32C();
+		while (buffer.remaining() > 0) {
+			int start = buffer.position();
+			ByteBuffer payload = nextRecord(buffer, crc);
+			if (payload == null) {
+				truncate(path, start, last);
+				return;
+			}
+			Position position = new Position(current, buffer.position());
+			if (position.compareTo(checkpoint) > 0) {
+				pending.add(new Entry(LoanEvent.readFrom(payload), position));
+			}
+		}
+	}
+
+	/**
+	 * Lê o próximo registro e avança o buffer até o fim dele.
+	 * @return ByteBuffer payload, ou null se o registro estiver incompleto ou com CRC inválido
+	 */
+	private static ByteBuffer nextRecord(ByteBuffer buffer, CRC32C crc) {
+		if (buffer.remaining() < HEADER_SIZE) {
+			return null;
+		}
+		int length = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (length <= 0 || length > buffer.remaining()) {
+			return null;
+		}
+		ByteBuffer payload = buffer.slice();
+		payload.limit(length);
+		crc.reset();
+		crc.update(payload.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+		buffer.position(buffer.position() + length);
+		return payload;
+	}
+
+	/**
+	 * Serializa os eventos no formato dos registros do journal.
+	 * @param List<LoanEvent> events
+	 * @param List<Integer> ends recebe o fim de cada registro dentro do buffer
+	 * @return ByteBuffer pronto para escrita
+	 */
+	private static ByteBuffer encode(List<LoanEvent> events, List<Integer> ends) {
+		int size = 0;
+		for (LoanEvent event : events) {
+			size += HEADER_SIZE + event.size();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		CRC32C crc = new CRC32C();
+		for (LoanEvent event : events) {
+			int start = buffer.position();
+			buffer.position(start + HEADER_SIZE);
+			event.writeTo(buffer);
+			int length = buffer.position() - start - HEADER_SIZE;
+			ByteBuffer payload = buffer.duplicate();
+			payload.position(start + HEADER_SIZE).limit(buffer.position());
+			crc.reset();
+			crc.update(payload);
+			buffer.putInt(start, length);
+			buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+			ends.add(buffer.position());
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void truncate(Path path, long size, boolean last) throws IOException {
+		if (!last) {
+			throw new IllegalStateException("Corrupted loan journal segment " + path + " at offset " + size);
+		}
+		log.warn("Discarding incomplete record at the end of {} (offset {})", path, size);
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			file.truncate(size);
+			file.force(true);
+		}
+	}
+
+	/**
+	 * Grava os eventos em um único write e só retorna depois do fsync (group commit).
+	 * Se o write ou o fsync falhar, o segmento volta ao tamanho anterior, para que um registro pela metade
+	 * não faça a recuperação descartar os registros gravados depois dele; se nem isso for possível,
+	 * o journal passa a recusar todas as escritas.
+	 * @param List<LoanEvent> events
+	 * @return List<Position> posição de cada evento, na mesma ordem
+	 */
+	public List<Position> write(List<LoanEvent> events) throws IOException {
+		if (failure != null) {
+			throw new IOException("Loan journal is unusable after a failed write", failure);
+		}
+		List<Integer> ends = new ArrayList<>(events.size());
+		ByteBuffer buffer = encode(events, ends);
+		long offset = channel.position();
+		List<Position> positions = new ArrayList<>(events.size());
+		for (Integer end : ends) {
+			positions.add(new Position(segment, offset + end));
+		}
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		} catch (IOException e) {
+			rollback(offset, e);
+			throw e;
+		}
+		if (channel.position() >= segmentSize) {
+			channel.close();
+			openSegment(++segment);
+		}
+		return positions;
+	}
+
+	/**
+	 * Guarda no arquivo "dead-letter.log" os eventos que o projetor não conseguiu aplicar, no mesmo formato
+	 * dos segmentos. Ele nunca é apagado pelo checkpoint, então o empréstimo já confirmado ao cliente
+	 * continua disponível para análise e reprocessamento manual.
+	 * @param List<LoanEvent> events
+	 */
+	public void deadLetter(List<LoanEvent> events) throws IOException {
+		Path path = directory.resolve(DEAD_LETTER);
+		boolean created = !Files.exists(path);
+		ByteBuffer buffer = encode(events, new ArrayList<>(events.size()));
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			while (buffer.hasRemaining()) {
+				file.write(buffer);
+			}
+			file.force(false);
+		}
+		if (created) {
+			syncDirectory();
+		}
+	}
+
+	/**
+	 * Eventos guardados por {@link #deadLetter(List)}; um registro incompleto no fim do arquivo é ignorado.
+	 * @return List<LoanEvent>
+	 */
+	public List<LoanEvent> deadLetters() throws IOException {
+		Path path = directory.resolve(DEAD_LETTER);
+		if (!Files.exists(path)) {
+			return new ArrayList<>();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		CRC32C crc = new CRC32C();
+		List<LoanEvent> events = new ArrayList<>();
+		ByteBuffer payload;
+		while (buffer.remaining() > 0 && (payload = nextRecord(buffer, crc)) != null) {
+			events.add(LoanEvent.readFrom(payload));
+		}
+		return events;
+	}
+
+	private void rollback(long offset, IOException cause) {
+		try {
+			channel.truncate(offset);
+			channel.position(offset);
+			channel.force(false);
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+			failure = cause;
+			log.error("Could not roll back segment {} to offset {}, loan journal disabled", segment, offset, e);
+		}
+	}
+
+	/**
+	 * Registra até onde o projetor já aplicou os eventos e apaga os segmentos anteriores a essa posição.
+	 * O arquivo [segmento][offset][CRC32C] passa por fsync antes do rename e o diretório depois dele,
+	 * então os segmentos só são apagados quando o novo checkpoint já é durável.
+	 * @param Position position
+	 */
+	public void checkpoint(Position position) {
+		try {
+			Path temp = directory.resolve(CHECKPOINT + ".tmp");
+			ByteBuffer buffer = ByteBuffer.allocate(CHECKPOINT_SIZE);
+			buffer.putLong(position.getSegment()).putLong(position.getOffset());
+			buffer.putInt(checkpointChecksum(buffer)).flip();
+			try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining()) {
+					file.write(buffer);
+				}
+				file.force(true);
+			}
+			// o checkpoint pode ficar atrasado depois de uma queda sem problema: a projeção é idempotente
+			Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory();
+			for (Long old : segments()) {
+				if (old < position.getSegment()) {
+					Files.deleteIfExists(segmentPath(old));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Um checkpoint vazio, truncado ou com CRC inválido (queda durante a gravação) vale como START:
+	 * todo o journal restante é reaplicado, o que é seguro porque a projeção é idempotente.
+	 */
+	private Position readCheckpoint() throws IOException {
+		Path path = directory.resolve(CHECKPOINT);
+		if (!Files.exists(path)) {
+			return Position.START;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		if (buffer.remaining() != CHECKPOINT_SIZE || buffer.getInt(Long.BYTES * 2) != checkpointChecksum(buffer)) {
+			log.warn("Ignoring invalid loan journal checkpoint {}, replaying the whole journal", path);
+			return Position.START;
+		}
+		return new Position(buffer.getLong(), buffer.getLong());
+	}
+
+	private static int checkpointChecksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.array(), 0, Long.BYTES * 2);
+		return (int) crc.getValue();
+	}
+
+	private List<Long> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(path -> path.getFileName().toString())
+					.filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+					.map(name -> Long.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private void openSegment(long number) throws IOException {
+		Path path = segmentPath(number);
+		boolean created = !Files.exists(path);
+		channel = openChannel(path);
+		channel.position(channel.size());
+		if (created) {
+			syncDirectory();
+		}
+	}
+
+	/** Abre o segmento para escrita; sobrescrito nos testes para simular falhas de disco */
+	protected FileChannel openChannel(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	/** Garante que a entrada do novo segmento no diretório sobrevive a uma queda (não suportado em todo SO) */
+	private void syncDirectory() {
+		try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			log.debug("Could not fsync journal directory {}", directory, e);
+		}
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package api.service.journal;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Aplica os eventos do journal na tabela loan via JDBC em lote.
+ * É idempotente: empréstimos cujo id já existe na tabela são ignorados, então reaplicar o journal é seguro.
+ */
+public class LoanProjector {
+
+	private static final Logger log = LoggerFactory.getLogger(LoanProjector.class);
+
+	private static final String INSERT = "insert into loan (id, customer, book_id, loan_date, returned, version, active_book_id)"
+			+ " values (?, ?, ?, ?, false, 0, ?)";
+
+	private final JdbcTemplate jdbc;
+	private final NamedParameterJdbcTemplate namedJdbc;
+	private final TransactionTemplate transaction;
+
+	public LoanProjector(JdbcTemplate jdbc, TransactionTemplate transaction) {
+		this.jdbc = jdbc;
+		this.namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+		this.transaction = transaction;
+	}
+
+	/**
+	 * Grava os empréstimos ainda não projetados em um único batch. Se o batch for rejeitado por restrição
+	 * (ex: livro com empréstimo ativo gravado por fora do journal), aplica um a um e devolve os rejeitados.
+	 * @param List<LoanEvent> events
+	 * @return List<LoanEvent> eventos rejeitados pelo banco, para irem ao dead letter
+	 */
+	public List<LoanEvent> apply(List<LoanEvent> events) {
+		Set<Long> existing = new HashSet<>(namedJdbc.queryForList("select id from loan where id in (:ids)",
+				Map.of("ids", events.stream().map(LoanEvent::getLoanId).collect(Collectors.toList())), Long.class));
+		List<LoanEvent> missing = events.stream()
+				.filter(event -> event.getType() == LoanEvent.CREATED && !existing.contains(event.getLoanId()))
+				.collect(Collectors.toList());
+		if (missing.isEmpty()) {
+			return new ArrayList<>();
+		}
+		try {
+			transaction.executeWithoutResult(status -> jdbc.batchUpdate(INSERT, missing, missing.size(),
+					(statement, event) -> {
+						statement.setLong(1, event.getLoanId());
+						statement.setString(2, event.getCustomer());
+						statement.setLong(3, event.getBookId());
+						statement.setDate(4, Date.valueOf(event.getLoanDate()));
+						statement.setLong(5, event.getBookId());
+					}));
+			return new ArrayList<>();
+		} catch (DataIntegrityViolationException e) {
+			return missing.stream().filter(event -> !applyOne(event)).collect(Collectors.toList());
+		}
+	}
+
+	private boolean applyOne(LoanEvent event) {
+		try {
+			jdbc.update(INSERT, event.getLoanId(), event.getCustomer(), event.getBookId(),
+					Date.valueOf(event.getLoanDate()), event.getBookId());
+			return true;
+		} catch (DataIntegrityViolationException e) {
+			log.error("Rejected journaled loan {} for book {}: {}", event.getLoanId(), event.getBookId(),
+					e.getMostSpecificCause().getMessage());
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,354 @@
+package api.service.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import api.model.entity.Loan;
+
+/**
+ * Gravação write-behind de empréstimos: o save grava o evento no {@link LoanJournal} e responde depois do fsync
+ * do lote (várias requisições compartilham o mesmo fsync); uma thread de projeção aplica os eventos na tabela loan
+ * com o {@link LoanProjector}. Na inicialização os eventos posteriores ao último checkpoint são reaplicados.
+ * Os livros com empréstimo ainda não projetado ficam reservados em memória para a checagem de disponibilidade,
+ * e o próprio empréstimo fica disponível por id ({@link #awaitProjection}); as listagens por livro ou cliente
+ * só o incluem depois da projeção. Eventos rejeitados pelo banco vão para o dead letter do journal.
+ * Roda em uma fase anterior à do servidor web ({@link #PHASE}): o replay termina antes de o Tomcat aceitar
+ * requisições, e na parada o journal só fecha depois do graceful shutdown das requisições em andamento.
+ */
+public class LoanWriteBehind implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(LoanWriteBehind.class);
+	private static final long RETRY_DELAY_MILLIS = 1000;
+	private static final long START_TIMEOUT_SECONDS = 30;
+
+	/** Antes de WebServerStartStopLifecycle (Integer.MAX_VALUE - 1) e do graceful shutdown (Integer.MAX_VALUE) */
+	public static final int PHASE = Integer.MAX_VALUE - 2048;
+
+	private static class Append {
+
+		private final Loan loan;
+		private final LoanEvent event;
+		private final CompletableFuture<Loan> done = new CompletableFuture<>();
+
+		Append(Loan loan) {
+			this.loan = loan;
+			this.event = LoanEvent.created(loan);
+		}
+
+		void fail(Throwable cause) {
+			done.completeExceptionally(new IllegalStateException("Could not write loan to the journal", cause));
+		}
+
+	}
+
+	/** Empréstimo já confirmado ao cliente e ainda não aplicado na tabela */
+	private static class Unprojected {
+
+		private final Loan loan;
+		private final CompletableFuture<Void> projected = new CompletableFuture<>();
+
+		Unprojected(Loan loan) {
+			this.loan = loan;
+		}
+
+	}
+
+	private final LoanJournal journal;
+	private final LoanProjector projector;
+	private final SessionFactoryImplementor sessionFactory;
+	private final int maxBatch;
+	private final Duration replayTimeout;
+
+	private final Set<Long> pendingBooks = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<Long, Unprojected> unprojected = new ConcurrentHashMap<>();
+	private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+	private final BlockingQueue<LoanJournal.Entry> projections = new LinkedBlockingQueue<>();
+	private final CountDownLatch started = new CountDownLatch(1);
+	private volatile boolean running;
+	private volatile boolean stopped;
+	private Thread writer;
+	private Thread projection;
+
+	/**
+	 * @param Duration replayTimeout prazo do replay da inicialização; esgotado com o banco indisponível, a subida falha
+	 */
+	public LoanWriteBehind(LoanJournal journal, LoanProjector projector, SessionFactoryImplementor sessionFactory, int maxBatch,
+			Duration replayTimeout) {
+		this.journal = journal;
+		this.projector = projector;
+		this.sessionFactory = sessionFactory;
+		this.maxBatch = maxBatch;
+		this.replayTimeout = replayTimeout;
+	}
+
+	/**
+	 * Reserva o livro para um novo empréstimo; falso se já houver um empréstimo dele aguardando projeção.
+	 */
+	public boolean reserve(Long bookId) {
+		return pendingBooks.add(bookId);
+	}
+
+	public void release(Long bookId) {
+		pendingBooks.remove(bookId);
+	}
+
+	/**
+	 * Atribui o id (da mesma sequence usada pelo JPA), grava o evento no journal e aguarda o fsync.
+	 * Chamado durante o replay da inicialização, espera o journal ficar pronto em vez de falhar.
+	 * @param Loan loan
+	 * @throws IllegalStateException("Could not write loan to the journal")
+	 * @return Loan com id
+	 */
+	public Loan append(Loan loan) {
+		try {
+			return appendAsync(loan).join();
+		} catch (CompletionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	/**
+	 * Como o {@link #append}, sem bloquear até o fsync: o futuro é completado pela thread de escrita do journal
+	 * depois do fsync do lote, ou com IllegalStateException("Could not write loan to the journal").
+	 * @param Loan loan
+	 * @return CompletableFuture<Loan> com id
+	 */
+	public CompletableFuture<Loan> appendAsync(Loan loan) {
+		if (!running) {
+			awaitStart();
+		}
+		loan.setId(nextId());
+		Append append = new Append(loan);
+		appends.add(append);
+		return append.done;
+	}
+
+	/**
+	 * Leitura do próprio write: se o empréstimo ainda não foi projetado, espera a projeção até o timeout.
+	 * @param Long loanId
+	 * @return Optional<Loan> cópia do empréstimo se ele continuar sem projeção após o timeout;
+	 * vazio se não há evento pendente com esse id (já projetado, rejeitado ou inexistente)
+	 */
+	public Optional<Loan> awaitProjection(Long loanId, long timeout, TimeUnit unit) {
+		Unprojected pending = unprojected.get(loanId);
+		if (pending == null) {
+			return Optional.empty();
+		}
+		try {
+			pending.projected.get(timeout, unit);
+			return Optional.empty();
+		} catch (TimeoutException e) {
+			return Optional.of(copy(pending.loan));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Optional.of(copy(pending.loan));
+		} catch (ExecutionException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static Loan copy(Loan loan) {
+		return Loan.builder().id(loan.getId()).customer(loan.getCustomer()).book(loan.getBook())
+				.loanDate(loan.getLoanDate()).returned(false).activeBookId(loan.getBook().getId()).build();
+	}
+
+	private void awaitStart() {
+		try {
+			if (stopped || !started.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS) || !running) {
+				throw new IllegalStateException("Loan journal is not running");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the loan journal", e);
+		}
+	}
+
+	private Long nextId() {
+		IdentifierGenerator generator = sessionFactory.getMetamodel().entityPersister(Loan.class).getIdentifierGenerator();
+		try (StatelessSession session = sessionFactory.openStatelessSession()) {
+			return (Long) generator.generate((SharedSessionContractImplementor) session, null);
+		}
+	}
+
+	private void writeLoop() {
+		List<Append> batch = new ArrayList<>(maxBatch);
+		while (running || !appends.isEmpty()) {
+			try {
+				Append first = appends.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				appends.drainTo(batch, maxBatch - 1);
+				write(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void write(List<Append> batch) {
+		List<LoanJournal.Position> positions;
+		try {
+			positions = journal.write(batch.stream().map(append -> append.event).collect(Collectors.toList()));
+		} catch (IOException | RuntimeException e) {
+			log.error("Could not write {} loans to the journal", batch.size(), e);
+			batch.forEach(append -> append.fail(e));
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			unprojected.put(batch.get(i).event.getLoanId(), new Unprojected(copy(batch.get(i).loan)));
+			projections.add(new LoanJournal.Entry(batch.get(i).event, positions.get(i)));
+			batch.get(i).done.complete(batch.get(i).loan);
+		}
+	}
+
+	private void projectLoop() {
+		List<LoanJournal.Entry> batch = new ArrayList<>(maxBatch);
+		while (running || writer.isAlive() || !projections.isEmpty()) {
+			try {
+				LoanJournal.Entry first = projections.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				projections.drainTo(batch, maxBatch - 1);
+				project(batch, Long.MAX_VALUE);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Aplica o lote, tentando de novo enquanto o banco estiver indisponível (a ordem dos eventos é mantida).
+	 * Os eventos rejeitados vão para o dead letter antes do checkpoint, então nenhum empréstimo confirmado se perde.
+	 * @param long deadline System.nanoTime() a partir do qual desiste; Long.MAX_VALUE tenta indefinidamente
+	 * @throws IllegalStateException("Could not replay the loan journal") se o prazo acabar antes de o lote ser aplicado
+	 */
+	private void project(List<LoanJournal.Entry> batch, long deadline) throws InterruptedException {
+		List<LoanEvent> events = batch.stream().map(LoanJournal.Entry::getEvent).collect(Collectors.toList());
+		while (true) {
+			try {
+				List<LoanEvent> rejected = projector.apply(events);
+				if (!rejected.isEmpty()) {
+					journal.deadLetter(rejected);
+					log.error("Moved {} rejected journaled loans to the dead letter: {}", rejected.size(),
+							rejected.stream().map(LoanEvent::getLoanId).collect(Collectors.toList()));
+				}
+				break;
+			} catch (IOException | RuntimeException e) {
+				if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+					throw new IllegalStateException("Could not replay the loan journal within " + replayTimeout
+							+ " (library.loan.journal.replay-timeout)", e);
+				}
+				log.error("Could not project {} journaled loans, retrying", events.size(), e);
+				TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS);
+			}
+		}
+		journal.checkpoint(batch.get(batch.size() - 1).getPosition());
+		for (LoanEvent event : events) {
+			release(event.getBookId());
+			Unprojected projected = unprojected.remove(event.getLoanId());
+			if (projected != null) {
+				projected.projected.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Reaplica o que ficou sem projeção antes da última parada e inicia as threads de escrita e projeção.
+	 * O replay tenta de novo enquanto o banco estiver indisponível, mas só até o replayTimeout: depois disso a
+	 * inicialização falha, em vez de segurar a fase do lifecycle (e a subida do Tomcat) indefinidamente.
+	 * @throws IllegalStateException("Could not replay the loan journal")
+	 */
+	@Override
+	public void start() {
+		try {
+			List<LoanJournal.Entry> recovered = journal.recover();
+			if (!recovered.isEmpty()) {
+				log.info("Replaying {} journaled loans", recovered.size());
+				long deadline = System.nanoTime() + replayTimeout.toNanos();
+				for (int from = 0; from < recovered.size(); from += maxBatch) {
+					project(recovered.subList(from, Math.min(from + maxBatch, recovered.size())), deadline);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while replaying the loan journal", e);
+		}
+		running = true;
+		writer = new Thread(this::writeLoop, "loan-journal-writer");
+		projection = new Thread(this::projectLoop, "loan-journal-projector");
+		writer.start();
+		projection.start();
+		started.countDown();
+	}
+
+	/**
+	 * Para de aceitar empréstimos, grava e projeta o que estiver na fila e fecha o journal.
+	 */
+	@Override
+	public void stop() {
+		stopped = true;
+		running = false;
+		started.countDown();
+		try {
+			writer.join();
+			// empréstimos que chegaram depois da última escrita não foram gravados
+			Append late;
+			while ((late = appends.poll()) != null) {
+				late.fail(new IllegalStateException("Loan journal stopped"));
+			}
+			projection.join();
+			journal.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			log.warn("Could not close the loan journal", e);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public int getPhase() {
+		return PHASE;
+	}
+
+}
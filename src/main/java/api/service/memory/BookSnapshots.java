@@ -0,0 +1,42 @@
+package api.service.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.dto.BookDTO;
+
+/**
+ * Leitura do catálogo para o CompactBookStore.
+ */
+public final class BookSnapshots {
+
+	private BookSnapshots() {
+	}
+
+	/**
+	 * Lê um arquivo no formato do GET /api/books/export (NDJSON, um BookDTO por linha).
+	 * @param Path file
+	 * @param ObjectMapper objectMapper
+	 * @return CompactBookStore
+	 */
+	public static CompactBookStore readNdjson(Path file, ObjectMapper objectMapper) throws IOException {
+		CompactBookStore.Builder builder = CompactBookStore.builder();
+		try (InputStream in = Files.newInputStream(file);
+				MappingIterator<BookDTO> rows = objectMapper.readerFor(BookDTO.class).readValues(in)) {
+			while (rows.hasNext()) {
+				BookDTO book = rows.next();
+				if (book.getId() == null) {
+					throw new IOException("Book without id in " + file);
+				}
+				builder.add(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+			}
+		}
+		return builder.build();
+	}
+
+}
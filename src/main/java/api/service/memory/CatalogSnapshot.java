@@ -0,0 +1,196 @@
+package api.service.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.CRC32C;
+
+import lombok.Getter;
+
+/**
+ * Snapshot binário do catálogo (colunas do CompactBookStore), lido por um MappedByteBuffer: na subida, as colunas
+ * são copiadas em bloco para os arrays sem parse. Os empréstimos ativos não fazem parte dele: mudam a todo
+ * momento e são lidos do índice único uk_loan_active_book.
+ *
+ * Formato (big-endian), versão 4 (a 3 guardava também os livros emprestados e o resumo da tabela loan):
+ * <pre>
+ * cabeçalho (72 bytes)
+ *   0  magic "LIBS"            4  versão
+ *   8  CRC32C de [16, fim)     12 reservado
+ *   16 gerado em (epoch ms)    24 livros no banco        32 maior id de livro
+ *   40 última alteração (s)    48 (nanos)                52 linhas do catálogo
+ *   56 strings no pool         60 bytes do pool          64 bytes do pool de tokens   68 reservado
+ * corpo
+ *   long[linhas] ids, int[linhas] título, autor e isbn, int[strings + 1] offsets do pool e do pool de tokens,
+ *   byte[] pool, byte[] pool de tokens
+ * </pre>
+ * O arquivo é gravado em um temporário exclusivo do mesmo diretório e renomeado, então quem lê nunca vê um
+ * snapshot pela metade e duas gravações simultâneas não se misturam; o limite é o de um único mapeamento (2 GB).
+ */
+@Getter
+public final class CatalogSnapshot {
+
+	public static final int VERSION = 4;
+
+	private static final int MAGIC = 0x4C494253;
+	private static final int HEADER_SIZE = 72;
+	private static final int CHECKSUM_FROM = 16;
+	private static final long NO_UPDATE = Long.MIN_VALUE;
+
+	private final Instant createdAt;
+	private final CatalogWatermark watermark;
+	private final CompactBookStore store;
+
+	public CatalogSnapshot(Instant createdAt, CatalogWatermark watermark, CompactBookStore store) {
+		this.createdAt = createdAt;
+		this.watermark = watermark;
+		this.store = store;
+	}
+
+	/**
+	 * Grava o snapshot em {@code file}, substituindo o anterior de forma atômica.
+	 * @param Path file
+	 * @return long tamanho do arquivo em bytes
+	 */
+	public long write(Path file) throws IOException {
+		int strings = store.poolOffsets().length - 1;
+		long size = HEADER_SIZE
+				+ (long) store.size() * Long.BYTES
+				+ 3L * store.size() * Integer.BYTES + 2L * (strings + 1) * Integer.BYTES
+				+ store.pool().length + store.searchPool().length;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Catalog snapshot larger than 2 GB: " + size + " bytes");
+		}
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		// temporário exclusivo: o endpoint de administração e o cron podem gravar ao mesmo tempo
+		Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0)
+						.putLong(createdAt.toEpochMilli())
+						.putLong(watermark.getBooks())
+						.putLong(watermark.getMaxBookId())
+						.putLong(watermark.getLastUpdate() == null ? NO_UPDATE : watermark.getLastUpdate().getEpochSecond())
+						.putInt(watermark.getLastUpdate() == null ? 0 : watermark.getLastUpdate().getNano())
+						.putInt(store.size())
+						.putInt(strings)
+						.putInt(store.pool().length)
+						.putInt(store.searchPool().length);
+				buffer.position(HEADER_SIZE);
+				putLongs(buffer, store.ids());
+				putInts(buffer, store.titles());
+				putInts(buffer, store.authors());
+				putInts(buffer, store.isbns());
+				putInts(buffer, store.poolOffsets());
+				putInts(buffer, store.searchOffsets());
+				buffer.put(store.pool());
+				buffer.put(store.searchPool());
+				buffer.putInt(8, checksum(buffer));
+				buffer.force();
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		return size;
+	}
+
+	/**
+	 * Lê e valida um snapshot (magic, versão, CRC32C e tamanhos).
+	 * @param Path file
+	 * @return CatalogSnapshot
+	 * @throws IOException se o arquivo não existe, é de outra versão ou está corrompido
+	 */
+	public static CatalogSnapshot read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("Invalid catalog snapshot size: " + size + " bytes");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a catalog snapshot: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported catalog snapshot version " + buffer.getInt(4));
+			}
+			if (buffer.getInt(8) != checksum(buffer)) {
+				throw new IOException("Catalog snapshot checksum mismatch: " + file);
+			}
+			buffer.position(16);
+			Instant createdAt = Instant.ofEpochMilli(buffer.getLong());
+			long books = buffer.getLong();
+			long maxBookId = buffer.getLong();
+			long updateSeconds = buffer.getLong();
+			int updateNanos = buffer.getInt();
+			int rows = buffer.getInt();
+			int strings = buffer.getInt();
+			int poolBytes = buffer.getInt();
+			int searchPoolBytes = buffer.getInt();
+
+			long expected = HEADER_SIZE + (long) rows * Long.BYTES
+					+ (3L * rows + 2L * (strings + 1)) * Integer.BYTES + poolBytes + searchPoolBytes;
+			if (rows < 0 || strings < 0 || poolBytes < 0 || searchPoolBytes < 0 || expected != size) {
+				throw new IOException("Catalog snapshot sizes do not match the file: " + file);
+			}
+			buffer.position(HEADER_SIZE);
+			long[] ids = getLongs(buffer, rows);
+			int[] titles = getInts(buffer, rows);
+			int[] authors = getInts(buffer, rows);
+			int[] isbns = getInts(buffer, rows);
+			int[] poolOffsets = getInts(buffer, strings + 1);
+			int[] searchOffsets = getInts(buffer, strings + 1);
+			byte[] pool = new byte[poolBytes];
+			buffer.get(pool);
+			byte[] searchPool = new byte[searchPoolBytes];
+			buffer.get(searchPool);
+
+			CatalogWatermark watermark = new CatalogWatermark(books, maxBookId,
+					updateSeconds == NO_UPDATE ? null : Instant.ofEpochSecond(updateSeconds, updateNanos));
+			CompactBookStore store = CompactBookStore.of(ids, titles, authors, isbns, pool, poolOffsets, searchPool,
+					searchOffsets);
+			return new CatalogSnapshot(createdAt, watermark, store);
+		}
+	}
+
+	private static int checksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate().position(CHECKSUM_FROM).limit(buffer.capacity()));
+		return (int) crc.getValue();
+	}
+
+	private static void putLongs(ByteBuffer buffer, long[] values) {
+		buffer.asLongBuffer().put(values);
+		buffer.position(buffer.position() + values.length * Long.BYTES);
+	}
+
+	private static void putInts(ByteBuffer buffer, int[] values) {
+		buffer.asIntBuffer().put(values);
+		buffer.position(buffer.position() + values.length * Integer.BYTES);
+	}
+
+	private static long[] getLongs(ByteBuffer buffer, int length) {
+		long[] values = new long[length];
+		buffer.asLongBuffer().get(values);
+		buffer.position(buffer.position() + length * Long.BYTES);
+		return values;
+	}
+
+	private static int[] getInts(ByteBuffer buffer, int length) {
+		int[] values = new int[length];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + length * Integer.BYTES);
+		return values;
+	}
+
+}
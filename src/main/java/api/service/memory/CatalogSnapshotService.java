@@ -0,0 +1,266 @@
+package api.service.memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import api.model.entity.Book;
+import api.model.projection.BookView;
+import api.model.repository.BookRepository;
+import api.service.search.BookSearchIndex;
+
+/**
+ * Gera e lê o snapshot binário do catálogo (CatalogSnapshot).
+ *
+ * A geração (endpoint de administração ou library.catalog.binary-snapshot.cron) lê o banco em uma transação
+ * somente leitura. Na subida, um snapshot válido e mais novo que max-age é completado com o que mudou no banco
+ * depois dele (livros alterados, incluídos e excluídos, ver CatalogWatermark) e carrega o índice de busca (e o
+ * catálogo em memória, com library.catalog.storage=memory) antes do warm pelo banco, que então não é feito.
+ * O updated_at vem do relógio da aplicação no flush, não no commit: uma transação que gravou antes da leitura do
+ * snapshot e confirmou depois dela pode ter updated_at anterior ao watermark (o mesmo com relógios diferentes
+ * entre instâncias). Por isso o delta começa delta-margin antes do watermark, que deve cobrir a maior duração de
+ * uma transação de escrita mais a diferença entre relógios.
+ * Os empréstimos ativos não vêm do snapshot: o BookAvailabilityIndex os lê do índice uk_loan_active_book.
+ * Arquivo ausente, corrompido, de outra versão ou mais velho que max-age segue pelo banco como antes.
+ */
+public class CatalogSnapshotService {
+
+	private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+	private static final int DELTA_BATCH_SIZE = 1000;
+
+	private final Path file;
+	private final Duration maxAge;
+	private final Duration deltaMargin;
+	private final BookRepository bookRepository;
+	/** TransactionTemplate somente leitura */
+	private final TransactionTemplate readOnly;
+	/** null com library.catalog.storage=memory: o catálogo em memória não usa o índice de busca */
+	private final BookSearchIndex searchIndex;
+	private final Clock clock;
+
+	/** Snapshot lido na subida (null enquanto não foi lido); liberado depois de carregar os índices */
+	private Optional<CatalogSnapshot> startup;
+
+	public CatalogSnapshotService(Path file, Duration maxAge, Duration deltaMargin, BookRepository bookRepository,
+			TransactionTemplate readOnly, BookSearchIndex searchIndex, Clock clock) {
+		this.file = file;
+		this.maxAge = maxAge;
+		this.deltaMargin = deltaMargin;
+		this.bookRepository = bookRepository;
+		this.readOnly = readOnly;
+		this.searchIndex = searchIndex;
+		this.clock = clock;
+	}
+
+	/**
+	 * Gera o snapshot a partir do banco, substituindo o arquivo anterior.
+	 * @return CatalogSnapshot o snapshot gravado
+	 */
+	public CatalogSnapshot write() {
+		long start = System.currentTimeMillis();
+		CatalogSnapshot snapshot = readDatabase();
+		try {
+			long bytes = snapshot.write(file);
+			log.info("Catalog snapshot {} written: {} books, {} bytes in {} ms", file, snapshot.getStore().size(),
+					bytes, System.currentTimeMillis() - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return snapshot;
+	}
+
+	@Scheduled(cron = "${library.catalog.binary-snapshot.cron:-}")
+	public void scheduledWrite() {
+		try {
+			write();
+		} catch (RuntimeException e) {
+			log.warn("Could not write catalog snapshot {}", file, e);
+		}
+	}
+
+	/**
+	 * Lê do banco todos os livros. O CatalogWatermark é lido antes dos dados: o que mudar durante a leitura
+	 * entra de novo no delta da próxima subida.
+	 * @return CatalogSnapshot
+	 */
+	public CatalogSnapshot readDatabase() {
+		return readOnly.execute(status -> {
+			CatalogWatermark watermark = watermark();
+			CompactBookStore.Builder builder = CompactBookStore.builder();
+			try (Stream<BookView> books = bookRepository.streamAll(null, null, null)) {
+				books.forEach(book -> builder.add(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()));
+			}
+			return new CatalogSnapshot(Instant.now(clock), watermark, builder.build());
+		});
+	}
+
+	/**
+	 * Lê o snapshot, se for válido e mais novo que max-age, e aplica nele o que mudou no banco desde a geração.
+	 * @return Optional<CatalogSnapshot> vazio se não existir, estiver corrompido ou vencido
+	 */
+	public Optional<CatalogSnapshot> readCurrent() {
+		if (!Files.isRegularFile(file)) {
+			return Optional.empty();
+		}
+		CatalogSnapshot snapshot;
+		try {
+			snapshot = CatalogSnapshot.read(file);
+		} catch (IOException e) {
+			log.warn("Ignoring catalog snapshot {}: {}", file, e.getMessage());
+			return Optional.empty();
+		}
+		if (isExpired(snapshot)) {
+			log.info("Ignoring catalog snapshot {}: older than {}", file, maxAge);
+			return Optional.empty();
+		}
+		return Optional.of(applyChanges(snapshot));
+	}
+
+	/**
+	 * Snapshot usado na subida, lido uma única vez (pelo catálogo em memória ou pelo carregamento dos índices).
+	 * @return Optional<CatalogSnapshot>
+	 */
+	public synchronized Optional<CatalogSnapshot> startupSnapshot() {
+		if (startup == null) {
+			startup = readCurrent();
+		}
+		return startup;
+	}
+
+	/**
+	 * Carrega o índice de busca do snapshot antes do warm pelo banco (que também escuta o ApplicationReadyEvent).
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	public void loadIndexes() {
+		if (searchIndex != null) {
+			startupSnapshot().ifPresent(loaded -> searchIndex.load(loaded.getStore().books()));
+		}
+		synchronized (this) {
+			startup = Optional.empty();
+		}
+	}
+
+	/**
+	 * Situação do arquivo, para o endpoint de administração.
+	 * @return Map<String, Object>
+	 */
+	public Map<String, Object> status() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("file", file.toString());
+		status.put("present", Files.isRegularFile(file));
+		if (!Files.isRegularFile(file)) {
+			return status;
+		}
+		try {
+			status.put("bytes", Files.size(file));
+			CatalogSnapshot snapshot = CatalogSnapshot.read(file);
+			status.put("version", CatalogSnapshot.VERSION);
+			status.put("createdAt", snapshot.getCreatedAt());
+			status.put("books", snapshot.getStore().size());
+			status.put("expired", isExpired(snapshot));
+		} catch (IOException e) {
+			status.put("error", e.getMessage());
+		}
+		return status;
+	}
+
+	private boolean isExpired(CatalogSnapshot snapshot) {
+		return snapshot.getCreatedAt().plus(maxAge).isBefore(Instant.now(clock));
+	}
+
+	/**
+	 * Delta desde o watermark do snapshot: livros com updated_at a partir da última alteração menos delta-margin ou
+	 * id acima do maior id (pelos índices de updated_at e da chave primária). Os ids até o maior id só são conferidos um a um,
+	 * pela chave primária, quando a quantidade deles no banco difere da do snapshot.
+	 */
+	private CatalogSnapshot applyChanges(CatalogSnapshot snapshot) {
+		long start = System.currentTimeMillis();
+		CatalogWatermark since = snapshot.getWatermark();
+		CompactBookStore store = snapshot.getStore();
+		return readOnly.execute(status -> {
+			CatalogWatermark current = watermark();
+			Map<Long, Book> changed = new LinkedHashMap<>();
+			List<BookView> views = since.getLastUpdate() == null
+					? bookRepository.findViewsAfter(since.getMaxBookId())
+					: bookRepository.findViewsChangedSince(since.getLastUpdate().minus(deltaMargin), since.getMaxBookId());
+			views.forEach(view -> changed.put(view.getId(), toBook(view)));
+
+			Set<Long> removed = new HashSet<>();
+			int rows = store.firstRowAfter(since.getMaxBookId());
+			if (bookRepository.countByIdLessThanEqual(since.getMaxBookId()) != rows) {
+				List<Long> missing = new ArrayList<>();
+				compareIds(store, rows, since.getMaxBookId(), removed, missing);
+				for (int from = 0; from < missing.size(); from += DELTA_BATCH_SIZE) {
+					bookRepository.findViewsByIdIn(missing.subList(from, Math.min(from + DELTA_BATCH_SIZE, missing.size())))
+							.forEach(view -> changed.put(view.getId(), toBook(view)));
+				}
+			}
+			if (changed.isEmpty() && removed.isEmpty()) {
+				return snapshot;
+			}
+			CatalogSnapshot updated = new CatalogSnapshot(snapshot.getCreatedAt(), current,
+					store.withChanges(changed.values(), removed));
+			log.info("Catalog snapshot {} updated with {} changed and {} removed books in {} ms", file, changed.size(),
+					removed.size(), System.currentTimeMillis() - start);
+			return updated;
+		});
+	}
+
+	/**
+	 * Compara os ids do banco até {@code maxId} com as {@code rows} primeiras linhas do snapshot.
+	 */
+	private void compareIds(CompactBookStore store, int rows, long maxId, Set<Long> removed, List<Long> missing) {
+		try (Stream<Long> ids = bookRepository.streamIdsUpTo(maxId)) {
+			int row = 0;
+			Iterator<Long> iterator = ids.iterator();
+			while (iterator.hasNext()) {
+				long id = iterator.next();
+				while (row < rows && store.id(row) < id) {
+					removed.add(store.id(row++));
+				}
+				if (row < rows && store.id(row) == id) {
+					row++;
+				} else {
+					missing.add(id);
+				}
+			}
+			while (row < rows) {
+				removed.add(store.id(row++));
+			}
+		}
+	}
+
+	private CatalogWatermark watermark() {
+		return CatalogWatermark.of(bookRepository.catalogStats());
+	}
+
+	private static Book toBook(BookView view) {
+		return Book.builder().id(view.getId()).title(view.getTitle()).author(view.getAuthor()).isbn(view.getIsbn())
+				.build();
+	}
+
+}
@@ -0,0 +1,30 @@
+package api.service.memory;
+
+import java.time.Instant;
+
+import api.model.projection.CatalogStatsView;
+import lombok.Value;
+
+/**
+ * Estado da tabela book lido antes dos dados do snapshot. Na subida, o snapshot é completado com o que mudou
+ * depois dele: livros com updated_at a partir de lastUpdate ou com id acima de maxBookId; se a quantidade de ids
+ * até maxBookId não bater com a do snapshot, houve exclusões (ou inclusões confirmadas fora de ordem) e os ids
+ * são conferidos pela chave primária.
+ */
+@Value
+public class CatalogWatermark {
+
+	long books;
+	long maxBookId;
+	/** null quando não há livros */
+	Instant lastUpdate;
+
+	public static CatalogWatermark of(CatalogStatsView catalog) {
+		return new CatalogWatermark(valueOf(catalog.getBooks()), valueOf(catalog.getMaxId()), catalog.getLastUpdate());
+	}
+
+	private static long valueOf(Long value) {
+		return value == null ? 0L : value;
+	}
+
+}
@@ -0,0 +1,518 @@
+package api.service.memory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import api.model.entity.Book;
+import api.service.search.SearchSemantics;
+import api.service.search.SearchSemantics.Field;
+
+/**
+ * Catálogo somente leitura em colunas, para servir livros sem banco.
+ * <ul>
+ * <li>linhas em ordem de id: {@code ids[row]} e, para título, autor e isbn, o índice da string no pool;</li>
+ * <li>pool de strings internadas (cada texto distinto aparece uma vez) em um único byte[] UTF-8, com uma cópia
+ * dos tokens de busca ({@link SearchSemantics#tokenize}, separados por espaço) para buscar com as mesmas regras do
+ * BookSearchIndex sem decodificar nem alocar por linha;</li>
+ * <li>id -> linha em um mapa de long primitivo e isbn -> linha em uma tabela hash de int.</li>
+ * </ul>
+ * Os objetos Book só são criados para os livros devolvidos.
+ */
+public final class CompactBookStore {
+
+	private static final int NONE = -1;
+	private static final byte SPACE = ' ';
+	private static final Field[] FIELDS = Field.values();
+
+	private final long[] ids;
+	private final int[] titles;
+	private final int[] authors;
+	private final int[] isbns;
+
+	private final byte[] pool;
+	private final int[] poolOffsets;
+	private final byte[] searchPool;
+	private final int[] searchOffsets;
+
+	private final LongIntHashMap rowsById;
+	/** linha + 1 por posição (0 = vazia), endereçamento aberto pelo hash dos bytes do isbn */
+	private final int[] rowsByIsbn;
+
+	private CompactBookStore(long[] ids, int[] titles, int[] authors, int[] isbns, byte[] pool, int[] poolOffsets,
+			byte[] searchPool, int[] searchOffsets) {
+		this.ids = ids;
+		this.titles = titles;
+		this.authors = authors;
+		this.isbns = isbns;
+		this.pool = pool;
+		this.poolOffsets = poolOffsets;
+		this.searchPool = searchPool;
+		this.searchOffsets = searchOffsets;
+
+		this.rowsById = new LongIntHashMap(ids.length);
+		for (int row = 0; row < ids.length; row++) {
+			rowsById.putIfAbsent(ids[row], row);
+		}
+		this.rowsByIsbn = new int[Integer.highestOneBit(Math.max(2, ids.length * 2 - 1)) << 1];
+		for (int row = 0; row < ids.length; row++) {
+			int entry = isbns[row];
+			if (entry != NONE && isbnRow(pool, poolOffsets[entry], poolOffsets[entry + 1]) < 0) {
+				int slot = hash(pool, poolOffsets[entry], poolOffsets[entry + 1]) & (rowsByIsbn.length - 1);
+				while (rowsByIsbn[slot] != 0) {
+					slot = (slot + 1) & (rowsByIsbn.length - 1);
+				}
+				rowsByIsbn[slot] = row + 1;
+			}
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Recria o catálogo a partir das colunas gravadas no snapshot binário (os índices são refeitos).
+	 */
+	static CompactBookStore of(long[] ids, int[] titles, int[] authors, int[] isbns, byte[] pool, int[] poolOffsets,
+			byte[] searchPool, int[] searchOffsets) {
+		return new CompactBookStore(ids, titles, authors, isbns, pool, poolOffsets, searchPool, searchOffsets);
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @return int linha do livro, ou -1 quando o id não existe
+	 */
+	public int rowOf(long id) {
+		return rowsById.get(id);
+	}
+
+	/**
+	 * @return int linha do livro, ou -1 quando o isbn não existe
+	 */
+	public int rowOfIsbn(String isbn) {
+		byte[] key = isbn.getBytes(StandardCharsets.UTF_8);
+		return isbnRow(key, 0, key.length);
+	}
+
+	/**
+	 * @return int primeira linha com id maior que {@code afterId} (ou size() se não houver)
+	 */
+	public int firstRowAfter(long afterId) {
+		int index = Arrays.binarySearch(ids, afterId);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	public long id(int row) {
+		return ids[row];
+	}
+
+	public Book book(int row) {
+		Book book = new Book();
+		book.setId(ids[row]);
+		book.setTitle(string(titles[row]));
+		book.setAuthor(string(authors[row]));
+		book.setIsbn(string(isbns[row]));
+		return book;
+	}
+
+	/**
+	 * Valor original do campo na linha (null quando ausente).
+	 */
+	public String value(int row, Field field) {
+		return string(entry(row, field));
+	}
+
+	/**
+	 * Relevância do livro para o filtro, com as regras do {@link SearchSemantics}: -1 quando algum termo não casa,
+	 * 0 para um filtro sem termos.
+	 */
+	public int score(int row, Filter filter) {
+		int score = 0;
+		for (Field field : FIELDS) {
+			byte[][] terms = filter.terms[field.ordinal()];
+			if (terms.length == 0) {
+				continue;
+			}
+			int entry = entry(row, field);
+			if (entry == NONE) {
+				return -1;
+			}
+			for (byte[] term : terms) {
+				int matched = field.isKeyword() ? keywordMatch(entry, term) : tokenMatch(entry, term);
+				if (matched == 0) {
+					return -1;
+				}
+				score += field.weight() * matched;
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Prepara o filtro para {@link #score}: os termos de cada campo, em UTF-8.
+	 */
+	public static Filter filter(Book book) {
+		byte[][][] terms = new byte[FIELDS.length][][];
+		boolean empty = true;
+		for (Field field : FIELDS) {
+			String[] tokens = field.tokens(book);
+			terms[field.ordinal()] = new byte[tokens.length][];
+			for (int i = 0; i < tokens.length; i++) {
+				terms[field.ordinal()][i] = tokens[i].getBytes(StandardCharsets.UTF_8);
+				empty = false;
+			}
+		}
+		return new Filter(terms, empty);
+	}
+
+	/** Termos de busca por campo, prontos para comparar com o pool de tokens */
+	public static final class Filter {
+
+		private final byte[][][] terms;
+		private final boolean empty;
+
+		private Filter(byte[][][] terms, boolean empty) {
+			this.terms = terms;
+			this.empty = empty;
+		}
+
+		/** sem termos: todos os livros casam, com relevância 0 */
+		public boolean isEmpty() {
+			return empty;
+		}
+
+	}
+
+	/**
+	 * Percorre os livros em ordem de id, criando um Book por vez.
+	 */
+	public Iterable<Book> books() {
+		return () -> IntStream.range(0, ids.length).mapToObj(this::book).iterator();
+	}
+
+	/**
+	 * Novo catálogo com os livros alterados ou incluídos (pelo id) e sem os removidos. As colunas e os pools deste
+	 * são copiados em bloco; só as strings dos livros alterados são acrescentadas aos pools (as que eles usavam
+	 * antes ficam sem referência até o próximo snapshot).
+	 * @param Collection<Book> changed
+	 * @param Set<Long> removed
+	 * @return CompactBookStore
+	 */
+	public CompactBookStore withChanges(Collection<Book> changed, Set<Long> removed) {
+		if (changed.isEmpty() && removed.isEmpty()) {
+			return this;
+		}
+		TreeMap<Long, Book> byId = new TreeMap<>();
+		for (Book book : changed) {
+			byId.put(book.getId(), book);
+		}
+		int strings = poolOffsets.length - 1;
+		Map<String, Integer> interned = new HashMap<>();
+		StringPool addedPool = new StringPool();
+		StringPool addedSearchPool = new StringPool();
+		Function<String, Integer> intern = value -> value == null ? NONE : interned.computeIfAbsent(value, added -> {
+			addedPool.add(added.getBytes(StandardCharsets.UTF_8));
+			addedSearchPool.add(String.join(" ", SearchSemantics.tokenize(added)).getBytes(StandardCharsets.UTF_8));
+			return strings + interned.size();
+		});
+
+		int capacity = ids.length + byId.size();
+		long[] newIds = new long[capacity];
+		int[] newTitles = new int[capacity];
+		int[] newAuthors = new int[capacity];
+		int[] newIsbns = new int[capacity];
+		int rows = 0;
+		Iterator<Book> pending = byId.values().iterator();
+		Book next = pending.hasNext() ? pending.next() : null;
+		for (int row = 0; row <= ids.length; row++) {
+			long id = row < ids.length ? ids[row] : Long.MAX_VALUE;
+			while (next != null && next.getId() <= id) {
+				if (!removed.contains(next.getId())) {
+					newIds[rows] = next.getId();
+					newTitles[rows] = intern.apply(next.getTitle());
+					newAuthors[rows] = intern.apply(next.getAuthor());
+					newIsbns[rows] = intern.apply(next.getIsbn());
+					rows++;
+				}
+				next = pending.hasNext() ? pending.next() : null;
+			}
+			if (row < ids.length && !byId.containsKey(id) && !removed.contains(id)) {
+				newIds[rows] = id;
+				newTitles[rows] = titles[row];
+				newAuthors[rows] = authors[row];
+				newIsbns[rows] = isbns[row];
+				rows++;
+			}
+		}
+		return new CompactBookStore(Arrays.copyOf(newIds, rows), Arrays.copyOf(newTitles, rows),
+				Arrays.copyOf(newAuthors, rows), Arrays.copyOf(newIsbns, rows),
+				concat(pool, addedPool.bytes()), concatOffsets(poolOffsets, addedPool.offsets(), pool.length),
+				concat(searchPool, addedSearchPool.bytes()),
+				concatOffsets(searchOffsets, addedSearchPool.offsets(), searchPool.length));
+	}
+
+	/**
+	 * Memória ocupada pelos arrays do catálogo (sem os cabeçalhos de objeto).
+	 */
+	public long sizeInBytes() {
+		return (long) ids.length * Long.BYTES
+				+ 3L * ids.length * Integer.BYTES
+				+ pool.length + searchPool.length
+				+ (long) (poolOffsets.length + searchOffsets.length) * Integer.BYTES
+				+ rowsById.sizeInBytes()
+				+ (long) rowsByIsbn.length * Integer.BYTES;
+	}
+
+	// colunas expostas ao CatalogSnapshot, sem cópia
+
+	long[] ids() {
+		return ids;
+	}
+
+	int[] titles() {
+		return titles;
+	}
+
+	int[] authors() {
+		return authors;
+	}
+
+	int[] isbns() {
+		return isbns;
+	}
+
+	byte[] pool() {
+		return pool;
+	}
+
+	int[] poolOffsets() {
+		return poolOffsets;
+	}
+
+	byte[] searchPool() {
+		return searchPool;
+	}
+
+	int[] searchOffsets() {
+		return searchOffsets;
+	}
+
+	private int entry(int row, Field field) {
+		switch (field) {
+		case TITLE:
+			return titles[row];
+		case AUTHOR:
+			return authors[row];
+		default:
+			return isbns[row];
+		}
+	}
+
+	/**
+	 * Termo contra os tokens (separados por espaço) do texto: EXACT_MATCH, PREFIX_MATCH ou 0.
+	 */
+	private int tokenMatch(int entry, byte[] term) {
+		int from = searchOffsets[entry];
+		int to = searchOffsets[entry + 1];
+		int matched = 0;
+		outer:
+		for (int i = from; i <= to - term.length; i++) {
+			if (i > from && searchPool[i - 1] != SPACE) {
+				continue;
+			}
+			for (int j = 0; j < term.length; j++) {
+				if (searchPool[i + j] != term[j]) {
+					continue outer;
+				}
+			}
+			int end = i + term.length;
+			if (end == to || searchPool[end] == SPACE) {
+				return SearchSemantics.EXACT_MATCH;
+			}
+			matched = SearchSemantics.PREFIX_MATCH;
+		}
+		return matched;
+	}
+
+	/**
+	 * Termo contra os tokens do texto concatenados (isbn sem hífens nem espaços): EXACT_MATCH, PREFIX_MATCH ou 0.
+	 */
+	private int keywordMatch(int entry, byte[] term) {
+		int i = searchOffsets[entry];
+		int to = searchOffsets[entry + 1];
+		for (byte b : term) {
+			while (i < to && searchPool[i] == SPACE) {
+				i++;
+			}
+			if (i == to || searchPool[i] != b) {
+				return 0;
+			}
+			i++;
+		}
+		return i == to ? SearchSemantics.EXACT_MATCH : SearchSemantics.PREFIX_MATCH;
+	}
+
+	private int isbnRow(byte[] key, int from, int to) {
+		int slot = hash(key, from, to) & (rowsByIsbn.length - 1);
+		while (rowsByIsbn[slot] != 0) {
+			int row = rowsByIsbn[slot] - 1;
+			int entry = isbns[row];
+			if (Arrays.equals(pool, poolOffsets[entry], poolOffsets[entry + 1], key, from, to)) {
+				return row;
+			}
+			slot = (slot + 1) & (rowsByIsbn.length - 1);
+		}
+		return -1;
+	}
+
+	private String string(int entry) {
+		if (entry == NONE) {
+			return null;
+		}
+		return new String(pool, poolOffsets[entry], poolOffsets[entry + 1] - poolOffsets[entry], StandardCharsets.UTF_8);
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, bytes, first.length, second.length);
+		return bytes;
+	}
+
+	/** offsets do segundo pool (sem o 0 inicial) deslocados para depois do primeiro */
+	private static int[] concatOffsets(int[] first, int[] second, int shift) {
+		int[] offsets = Arrays.copyOf(first, first.length + second.length - 1);
+		for (int i = 1; i < second.length; i++) {
+			offsets[first.length - 1 + i] = second[i] + shift;
+		}
+		return offsets;
+	}
+
+	private static int hash(byte[] bytes, int from, int to) {
+		int hash = 0x811C9DC5;
+		for (int i = from; i < to; i++) {
+			hash = (hash ^ bytes[i]) * 0x01000193;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Monta o catálogo a partir dos livros em qualquer ordem; ids repetidos ficam com a primeira ocorrência.
+	 */
+	public static final class Builder {
+
+		private long[] ids = new long[1024];
+		private int[] titles = new int[1024];
+		private int[] authors = new int[1024];
+		private int[] isbns = new int[1024];
+		private int size;
+
+		private final Map<String, Integer> interned = new HashMap<>();
+		private final StringPool pool = new StringPool();
+		private final StringPool searchPool = new StringPool();
+
+		private Builder() {
+		}
+
+		public Builder add(long id, String title, String author, String isbn) {
+			if (size == ids.length) {
+				int capacity = size * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				titles = Arrays.copyOf(titles, capacity);
+				authors = Arrays.copyOf(authors, capacity);
+				isbns = Arrays.copyOf(isbns, capacity);
+			}
+			ids[size] = id;
+			titles[size] = intern(title);
+			authors[size] = intern(author);
+			isbns[size] = intern(isbn);
+			size++;
+			return this;
+		}
+
+		public CompactBookStore build() {
+			// a ordenação de objetos é estável: entre ids repetidos, a primeira ocorrência vem antes
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			long[] keys = ids;
+			Arrays.sort(order, Comparator.comparingLong(row -> keys[row]));
+			int rows = 0;
+			long[] sortedIds = new long[size];
+			int[] sortedTitles = new int[size];
+			int[] sortedAuthors = new int[size];
+			int[] sortedIsbns = new int[size];
+			for (int i = 0; i < size; i++) {
+				int row = order[i];
+				if (rows > 0 && sortedIds[rows - 1] == ids[row]) {
+					continue;
+				}
+				sortedIds[rows] = ids[row];
+				sortedTitles[rows] = titles[row];
+				sortedAuthors[rows] = authors[row];
+				sortedIsbns[rows] = isbns[row];
+				rows++;
+			}
+			return new CompactBookStore(Arrays.copyOf(sortedIds, rows), Arrays.copyOf(sortedTitles, rows),
+					Arrays.copyOf(sortedAuthors, rows), Arrays.copyOf(sortedIsbns, rows),
+					pool.bytes(), pool.offsets(), searchPool.bytes(), searchPool.offsets());
+		}
+
+		private int intern(String value) {
+			if (value == null) {
+				return NONE;
+			}
+			Integer entry = interned.get(value);
+			if (entry == null) {
+				entry = interned.size();
+				interned.put(value, entry);
+				pool.add(value.getBytes(StandardCharsets.UTF_8));
+				searchPool.add(String.join(" ", SearchSemantics.tokenize(value)).getBytes(StandardCharsets.UTF_8));
+			}
+			return entry;
+		}
+
+	}
+
+	private static final class StringPool {
+
+		private byte[] bytes = new byte[16 * 1024];
+		private int length;
+		private int[] offsets = new int[1025];
+		private int count;
+
+		void add(byte[] value) {
+			if (length + value.length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + value.length));
+			}
+			System.arraycopy(value, 0, bytes, length, value.length);
+			length += value.length;
+			if (count + 2 > offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			offsets[++count] = length;
+		}
+
+		byte[] bytes() {
+			return Arrays.copyOf(bytes, length);
+		}
+
+		int[] offsets() {
+			return Arrays.copyOf(offsets, count + 1);
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package api.service.memory;
+
+/**
+ * Mapa long -> int (não negativo) com endereçamento aberto e sondagem linear, sem boxing nem objeto por entrada.
+ * Tamanho fixo, definido na criação; usado para id -> linha do CompactBookStore.
+ */
+final class LongIntHashMap {
+
+	private static final long PHI = 0x9E3779B97F4A7C15L;
+
+	private final long[] keys;
+	/** valor + 1; 0 marca posição vazia */
+	private final int[] values;
+	private final int mask;
+	private final int shift;
+
+	LongIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2, expectedSize * 2 - 1)) << 1;
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		this.shift = Long.numberOfLeadingZeros(capacity - 1L);
+	}
+
+	/**
+	 * Associa o valor à chave, se ela ainda não existir.
+	 * @return boolean false quando a chave já existia (o valor anterior é mantido)
+	 */
+	boolean putIfAbsent(long key, int value) {
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value + 1;
+		return true;
+	}
+
+	/**
+	 * @return int valor associado, ou -1 quando a chave não existe
+	 */
+	int get(long key) {
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				return values[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	long sizeInBytes() {
+		return (long) keys.length * Long.BYTES + (long) values.length * Integer.BYTES;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * PHI) >>> shift) & mask;
+	}
+
+}
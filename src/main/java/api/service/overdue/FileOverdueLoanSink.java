@@ -0,0 +1,56 @@
+package api.service.overdue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import api.model.projection.OverdueLoanView;
+
+/**
+ * Acrescenta os empréstimos em atraso em um arquivo NDJSON (library.loan.overdue.sink=file).
+ */
+public class FileOverdueLoanSink implements OverdueLoanSink {
+
+	private final Path file;
+	private final ObjectWriter writer;
+
+	public FileOverdueLoanSink(Path file, ObjectMapper objectMapper) {
+		this.file = file;
+		this.writer = objectMapper.writerFor(Map.class);
+	}
+
+	@Override
+	public void accept(List<OverdueLoanView> loans) {
+		try {
+			if (file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+			try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND)) {
+				for (OverdueLoanView loan : loans) {
+					Map<String, Object> row = new LinkedHashMap<>();
+					row.put("id", loan.getId());
+					row.put("bookId", loan.getBookId());
+					row.put("isbn", loan.getIsbn());
+					row.put("customer", loan.getCustomer());
+					row.put("loanDate", loan.getLoanDate().toString());
+					out.write(writer.writeValueAsString(row));
+					out.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
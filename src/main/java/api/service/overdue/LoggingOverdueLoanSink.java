@@ -0,0 +1,25 @@
+package api.service.overdue;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.model.projection.OverdueLoanView;
+
+/**
+ * Registra cada empréstimo em atraso no log (padrão, library.loan.overdue.sink=log).
+ */
+public class LoggingOverdueLoanSink implements OverdueLoanSink {
+
+	private static final Logger log = LoggerFactory.getLogger(LoggingOverdueLoanSink.class);
+
+	@Override
+	public void accept(List<OverdueLoanView> loans) {
+		for (OverdueLoanView loan : loans) {
+			log.info("Overdue loan {}: book {} (isbn {}) loaned to {} on {}", loan.getId(), loan.getBookId(),
+					loan.getIsbn(), loan.getCustomer(), loan.getLoanDate());
+		}
+	}
+
+}
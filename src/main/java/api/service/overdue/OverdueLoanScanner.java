@@ -0,0 +1,119 @@
+package api.service.overdue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import api.model.projection.OverdueLoanView;
+import api.model.repository.LoanRepository;
+
+/**
+ * Varredura agendada dos empréstimos em atraso (não devolvidos há mais de library.loan.overdue.period).
+ * Percorre a tabela por chave (id) em lotes de tamanho fixo, cada um em sua própria consulta curta,
+ * e grava um checkpoint após entregar cada lote aos {@link OverdueLoanSink}s. Se a execução for
+ * interrompida, a próxima continua do último lote entregue, com a mesma data de corte.
+ */
+public class OverdueLoanScanner {
+
+	private static final Logger log = LoggerFactory.getLogger(OverdueLoanScanner.class);
+
+	private final LoanRepository repository;
+	private final List<OverdueLoanSink> sinks;
+	private final Period period;
+	private final int chunkSize;
+	private final Path checkpointFile;
+	private final Clock clock;
+
+	public OverdueLoanScanner(LoanRepository repository, List<OverdueLoanSink> sinks, Period period, int chunkSize,
+			Path checkpointFile, Clock clock) {
+		this.repository = repository;
+		this.sinks = sinks;
+		this.period = period;
+		this.chunkSize = chunkSize;
+		this.checkpointFile = checkpointFile;
+		this.clock = clock;
+	}
+
+	/**
+	 * Executa (ou retoma) uma varredura completa.
+	 * @return int quantidade de empréstimos em atraso entregues nesta execução
+	 */
+	@Scheduled(cron = "${library.loan.overdue.cron}")
+	public int scan() {
+		Properties checkpoint = readCheckpoint();
+		LocalDate runDate;
+		long lastId;
+		if (Boolean.parseBoolean(checkpoint.getProperty("complete", "true"))) {
+			runDate = LocalDate.now(clock);
+			lastId = 0;
+		} else {
+			runDate = LocalDate.parse(checkpoint.getProperty("runDate"));
+			lastId = Long.parseLong(checkpoint.getProperty("lastId"));
+			log.info("Resuming overdue loan scan of {} after loan {}", runDate, lastId);
+		}
+		LocalDate loanedBefore = runDate.minus(period);
+
+		int total = 0;
+		while (true) {
+			List<OverdueLoanView> chunk = repository.findOverdueAfter(lastId, loanedBefore, PageRequest.of(0, chunkSize));
+			if (chunk.isEmpty()) {
+				break;
+			}
+			for (OverdueLoanSink sink : sinks) {
+				sink.accept(chunk);
+			}
+			lastId = chunk.get(chunk.size() - 1).getId();
+			total += chunk.size();
+			writeCheckpoint(runDate, lastId, false);
+		}
+		writeCheckpoint(runDate, lastId, true);
+		log.info("Overdue loan scan of {} found {} loans made before {}", runDate, total, loanedBefore);
+		return total;
+	}
+
+	private Properties readCheckpoint() {
+		Properties checkpoint = new Properties();
+		if (Files.exists(checkpointFile)) {
+			try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+				checkpoint.load(reader);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return checkpoint;
+	}
+
+	private void writeCheckpoint(LocalDate runDate, long lastId, boolean complete) {
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty("runDate", runDate.toString());
+		checkpoint.setProperty("lastId", Long.toString(lastId));
+		checkpoint.setProperty("complete", Boolean.toString(complete));
+		try {
+			Path parent = checkpointFile.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			Path temp = parent.resolve(checkpointFile.getFileName() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				checkpoint.store(writer, null);
+			}
+			Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package api.service.overdue;
+
+import java.util.List;
+
+import api.model.projection.OverdueLoanView;
+
+/**
+ * Destino das notificações de empréstimos em atraso. Todo bean deste tipo recebe cada lote do
+ * {@link OverdueLoanScanner}; uma exceção interrompe a varredura, que é retomada do último checkpoint.
+ */
+public interface OverdueLoanSink {
+
+	void accept(List<OverdueLoanView> loans);
+
+}
@@ -0,0 +1,496 @@
+package api.service.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import api.model.entity.Book;
+import api.model.repository.BookRepository;
+import api.service.search.SearchSemantics.Field;
+
+/**
+ * Índice invertido em memória sobre title, author e isbn.
+ *
+ * Cada campo é quebrado em tokens normalizados (minúsculas, sem acento) e cada token aponta para os ids
+ * dos livros que o contêm. Um termo da busca casa com tokens que começam com ele (busca por prefixo), e
+ * todos os termos informados precisam casar (AND). O resultado é ordenado por relevância: casamento exato
+ * pesa mais que prefixo, e o título pesa mais que autor e isbn. As regras ficam em {@link SearchSemantics},
+ * compartilhadas com o catálogo em memória.
+ *
+ * Os documentos e as listas de ids de cada token ficam ordenados por id, e os documentos guardam title, author e
+ * isbn originais: listagens sem termos, ordenações pedidas ({@link #find}) e páginas por cursor
+ * ({@link #findAfter}) também são resolvidas em memória.
+ *
+ * O índice é carregado quando a aplicação sobe (do snapshot do catálogo com o delta do banco, ou do banco)
+ * e mantido pelo BookServiceImpl
+ * nas operações de escrita. Enquanto não estiver pronto, {@link #isReady()} retorna falso e a busca
+ * é recusada, para não devolver resultados com outra semântica (like do banco).
+ * Só existe com library.catalog.storage=jpa: o catálogo em memória busca direto no CompactBookStore.
+ */
+@Component
+@ConditionalOnProperty(name = "library.catalog.storage", havingValue = "jpa", matchIfMissing = true)
+public class BookSearchIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(BookSearchIndex.class);
+
+	private static final int WARM_PAGE_SIZE = 1000;
+	/** Maior pontuação primeiro, id como desempate */
+	private static final Comparator<Map.Entry<Long, Integer>> BY_RELEVANCE = Map.Entry.<Long, Integer>comparingByValue()
+			.reversed().thenComparing(Map.Entry.comparingByKey());
+
+	private final BookRepository repository;
+	private final boolean enabled;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<Field, NavigableMap<String, NavigableSet<Long>>> postings = new HashMap<>();
+	private final NavigableMap<Long, Document> documents = new TreeMap<>();
+	private final Set<Long> removedWhileWarming = new HashSet<>();
+	private volatile boolean warming;
+	private volatile boolean ready;
+	/** carregado do snapshot do catálogo: o warm da subida não precisa ir ao banco */
+	private volatile boolean snapshotLoaded;
+
+	public BookSearchIndex(BookRepository repository, @Value("${library.search.index.enabled:true}") boolean enabled) {
+		this.repository = repository;
+		this.enabled = enabled;
+		for (Field field : Field.values()) {
+			postings.put(field, new TreeMap<>());
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Carrega todos os livros do banco, em páginas por chave primária.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warm() {
+		if (!enabled || snapshotLoaded) {
+			return;
+		}
+		warming = true;
+		long start = System.currentTimeMillis();
+		long lastId = 0;
+		List<Book> page;
+		do {
+			page = repository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, WARM_PAGE_SIZE));
+			addWarming(page);
+			if (!page.isEmpty()) {
+				lastId = page.get(page.size() - 1).getId();
+			}
+		} while (page.size() == WARM_PAGE_SIZE);
+		finishWarming(start);
+	}
+
+	/**
+	 * Carrega o índice a partir dos livros do snapshot do catálogo, sem ir ao banco. Depois disso o warm não faz nada.
+	 * @param Iterable<Book> books
+	 */
+	public void load(Iterable<Book> books) {
+		if (!enabled || ready) {
+			return;
+		}
+		snapshotLoaded = true;
+		warming = true;
+		long start = System.currentTimeMillis();
+		List<Book> page = new ArrayList<>(WARM_PAGE_SIZE);
+		for (Book book : books) {
+			page.add(book);
+			if (page.size() == WARM_PAGE_SIZE) {
+				addWarming(page);
+				page.clear();
+			}
+		}
+		addWarming(page);
+		finishWarming(start);
+	}
+
+	private void addWarming(List<Book> page) {
+		lock.writeLock().lock();
+		try {
+			for (Book book : page) {
+				// escritas concorrentes com a carga prevalecem sobre o que foi lido do banco
+				if (!documents.containsKey(book.getId()) && !removedWhileWarming.contains(book.getId())) {
+					add(book);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void finishWarming(long start) {
+		lock.writeLock().lock();
+		try {
+			removedWhileWarming.clear();
+			warming = false;
+			ready = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Book search index loaded with {} books in {} ms", documents.size(), System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Indexa (ou reindexa) um livro.
+	 */
+	public void index(Book book) {
+		if (!enabled || book == null || book.getId() == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			remove(book.getId(), false);
+			add(book);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Long id) {
+		if (!enabled || id == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			remove(id, warming);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Indica se o filtro tem algum termo pesquisável; sem termos a busca equivale a listar todos os livros.
+	 */
+	public boolean hasTerms(Book filter) {
+		return SearchSemantics.hasTerms(filter);
+	}
+
+	/**
+	 * Busca os ids dos livros que casam com todos os termos do filtro, ordenados por relevância
+	 * (e por id em caso de empate).
+	 */
+	public List<Long> search(Book filter) {
+		List<Term> terms = terms(filter);
+		if (terms.isEmpty()) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(scores(terms).entrySet());
+			ranked.sort(BY_RELEVANCE);
+			List<Long> ids = new ArrayList<>(ranked.size());
+			for (Map.Entry<Long, Integer> entry : ranked) {
+				ids.add(entry.getKey());
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Indica se o índice consegue ordenar pelas propriedades pedidas (id, title, author e isbn).
+	 */
+	public boolean isSortable(Sort sort) {
+		return SearchSemantics.isSortable(sort);
+	}
+
+	/**
+	 * Ids dos livros que casam com o filtro, com id maior que afterId, em ordem de id e no máximo limit.
+	 * Mesma semântica do {@link #find}, para a paginação por cursor e a exportação; o filtro deve ter termos
+	 * ({@link #hasTerms}). Não pontua nem ordena o resultado inteiro: percorre em ordem de id, a partir de afterId,
+	 * as listas de ids dos tokens do termo mais seletivo, confere os demais termos nos tokens de cada livro e para
+	 * ao completar limit, então o custo de uma página não depende de quantas vieram antes.
+	 * @param Book filter
+	 * @param long afterId
+	 * @param int limit
+	 * @return List<Long>
+	 */
+	public List<Long> findAfter(Book filter, long afterId, int limit) {
+		List<Term> terms = terms(filter);
+		if (terms.isEmpty()) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			sortBySelectivity(terms);
+			// intercalação das listas (ordenadas por id) dos tokens com o prefixo do termo mais seletivo
+			PriorityQueue<PostingCursor> cursors = new PriorityQueue<>(Comparator.comparingLong(cursor -> cursor.current));
+			for (NavigableSet<Long> ids : prefixed(terms.get(0)).values()) {
+				Iterator<Long> iterator = ids.tailSet(afterId, false).iterator();
+				if (iterator.hasNext()) {
+					cursors.add(new PostingCursor(iterator));
+				}
+			}
+			List<Term> others = terms.subList(1, terms.size());
+			List<Long> ids = new ArrayList<>();
+			long last = afterId;
+			while (ids.size() < limit && !cursors.isEmpty()) {
+				PostingCursor cursor = cursors.poll();
+				long id = cursor.current;
+				if (cursor.advance()) {
+					cursors.add(cursor);
+				}
+				if (id == last) {
+					// o mesmo livro em mais de um token com o prefixo
+					continue;
+				}
+				last = id;
+				if (matchesAll(others, documents.get(id))) {
+					ids.add(id);
+				}
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Página de ids dos livros que casam com o filtro e são aceitos pelo accept.
+	 * Sem termos no filtro, percorre todos os livros em ordem de id. Sem ordenação, segue a relevância da busca
+	 * (ou o id); com ordenação ({@link #isSortable}), compara os valores guardados no índice. Nos dois casos só os
+	 * offset + size primeiros ficam em um heap, com o id como desempate, em vez de ordenar todos os encontrados.
+	 * @param Book filter
+	 * @param Predicate<Long> accept
+	 * @param Pageable pageable
+	 * @return Page<Long> ids da página, com o total de livros aceitos
+	 */
+	public Page<Long> find(Book filter, Predicate<Long> accept, Pageable pageable) {
+		long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+		int size = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+		List<Term> terms = terms(filter);
+		lock.readLock().lock();
+		try {
+			Map<Long, Integer> scores = terms.isEmpty() ? null : scores(terms);
+			Collection<Long> candidates = scores == null ? documents.keySet() : scores.keySet();
+			long total = 0;
+			if (pageable.getSort().isUnsorted() && scores == null) {
+				List<Long> page = new ArrayList<>();
+				for (Long id : candidates) {
+					if (accept.test(id)) {
+						if (total >= offset && page.size() < size) {
+							page.add(id);
+						}
+						total++;
+					}
+				}
+				return new PageImpl<>(page, pageable, total);
+			}
+			Comparator<Long> comparator = pageable.getSort().isUnsorted()
+					? relevance(scores)
+					: SearchSemantics.comparator(pageable.getSort(), id -> id,
+							(id, field) -> documents.get(id).values[field.ordinal()]);
+			long limit = Math.min(offset + size, Integer.MAX_VALUE);
+			PriorityQueue<Long> top = new PriorityQueue<>(comparator.reversed());
+			for (Long id : candidates) {
+				if (accept.test(id)) {
+					total++;
+					if (top.size() < limit) {
+						top.add(id);
+					} else if (comparator.compare(id, top.peek()) < 0) {
+						top.poll();
+						top.add(id);
+					}
+				}
+			}
+			List<Long> sorted = new ArrayList<>(top);
+			sorted.sort(comparator);
+			int from = (int) Math.min(offset, sorted.size());
+			return new PageImpl<>(new ArrayList<>(sorted.subList(from, sorted.size())), pageable, total);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Tokens (por campo) e valores originais de um livro indexado */
+	private static class Document {
+		private final String[][] tokens;
+		private final String[] values;
+
+		Document(String[][] tokens, String[] values) {
+			this.tokens = tokens;
+			this.values = values;
+		}
+	}
+
+	/** Posição em uma lista de ids (ordenada) de um token, para a intercalação do findAfter */
+	private static class PostingCursor {
+		private final Iterator<Long> ids;
+		private long current;
+
+		PostingCursor(Iterator<Long> ids) {
+			this.ids = ids;
+			this.current = ids.next();
+		}
+
+		boolean advance() {
+			if (!ids.hasNext()) {
+				return false;
+			}
+			current = ids.next();
+			return true;
+		}
+	}
+
+	private static class Term {
+		private final Field field;
+		private final String token;
+		private long estimate;
+
+		Term(Field field, String token) {
+			this.field = field;
+			this.token = token;
+		}
+	}
+
+	private static List<Term> terms(Book filter) {
+		List<Term> terms = new ArrayList<>();
+		for (Field field : Field.values()) {
+			for (String token : field.tokens(filter)) {
+				terms.add(new Term(field, token));
+			}
+		}
+		return terms;
+	}
+
+	/** O termo mais seletivo primeiro: ele gera os candidatos e os demais são conferidos nos tokens de cada livro */
+	private void sortBySelectivity(List<Term> terms) {
+		for (Term term : terms) {
+			term.estimate = estimate(term);
+		}
+		terms.sort(Comparator.comparingLong(term -> term.estimate));
+	}
+
+	/** Pontuação de cada livro que casa com todos os termos; chamado com o lock de leitura */
+	private Map<Long, Integer> scores(List<Term> terms) {
+		sortBySelectivity(terms);
+		Map<Long, Integer> scores = match(terms.get(0));
+		for (Term term : terms.subList(1, terms.size())) {
+			Iterator<Map.Entry<Long, Integer>> candidates = scores.entrySet().iterator();
+			while (candidates.hasNext()) {
+				Map.Entry<Long, Integer> candidate = candidates.next();
+				int score = SearchSemantics.score(term.field, term.token, documents.get(candidate.getKey()).tokens[term.field.ordinal()]);
+				if (score == 0) {
+					candidates.remove();
+				} else {
+					candidate.setValue(candidate.getValue() + score);
+				}
+			}
+			if (scores.isEmpty()) {
+				break;
+			}
+		}
+		return scores;
+	}
+
+	/** Mesma ordem do {@link #search}: maior pontuação primeiro, id como desempate */
+	private static Comparator<Long> relevance(Map<Long, Integer> scores) {
+		return (left, right) -> {
+			int compared = Integer.compare(scores.get(right), scores.get(left));
+			return compared != 0 ? compared : Long.compare(left, right);
+		};
+	}
+
+	private static boolean matchesAll(List<Term> terms, Document document) {
+		for (Term term : terms) {
+			if (SearchSemantics.score(term.field, term.token, document.tokens[term.field.ordinal()]) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private NavigableMap<String, NavigableSet<Long>> prefixed(Term term) {
+		return postings.get(term.field).subMap(term.token, true, term.token + Character.MAX_VALUE, false);
+	}
+
+	private long estimate(Term term) {
+		long estimate = 0;
+		for (NavigableSet<Long> ids : prefixed(term).values()) {
+			estimate += ids.size();
+		}
+		return estimate;
+	}
+
+	private Map<Long, Integer> match(Term term) {
+		Map<Long, Integer> matches = new HashMap<>();
+		for (Map.Entry<String, NavigableSet<Long>> posting : prefixed(term).entrySet()) {
+			int score = term.field.weight()
+					* (posting.getKey().equals(term.token) ? SearchSemantics.EXACT_MATCH : SearchSemantics.PREFIX_MATCH);
+			for (Long id : posting.getValue()) {
+				matches.merge(id, score, Math::max);
+			}
+		}
+		return matches;
+	}
+
+	private void add(Book book) {
+		Field[] fields = Field.values();
+		String[][] tokens = new String[fields.length][];
+		String[] values = new String[fields.length];
+		for (Field field : fields) {
+			values[field.ordinal()] = field.value(book);
+			tokens[field.ordinal()] = field.tokens(book);
+			for (String token : tokens[field.ordinal()]) {
+				postings.get(field).computeIfAbsent(token, key -> new TreeSet<>()).add(book.getId());
+			}
+		}
+		documents.put(book.getId(), new Document(tokens, values));
+	}
+
+	private void remove(Long id, boolean rememberRemoval) {
+		Document document = documents.remove(id);
+		if (rememberRemoval) {
+			removedWhileWarming.add(id);
+		}
+		if (document == null) {
+			return;
+		}
+		String[][] tokens = document.tokens;
+		for (Field field : Field.values()) {
+			NavigableMap<String, NavigableSet<Long>> fieldPostings = postings.get(field);
+			for (String token : tokens[field.ordinal()]) {
+				Set<Long> ids = fieldPostings.get(token);
+				if (ids != null && ids.remove(id) && ids.isEmpty()) {
+					fieldPostings.remove(token);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package api.service.search;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import org.springframework.data.domain.Sort;
+
+import api.model.entity.Book;
+
+/**
+ * Regras de busca e ordenação de livros, comuns a todas as implementações do BookService (BookSearchIndex e
+ * InMemoryBookService), para que o mesmo GET /api/books dê o mesmo resultado em qualquer armazenamento.
+ * <ul>
+ * <li>cada campo é quebrado em tokens normalizados (minúsculas, sem acento); o isbn é um único token, sem hífens
+ * nem espaços;</li>
+ * <li>um termo casa com os tokens do mesmo campo que começam com ele, e todos os termos precisam casar;</li>
+ * <li>relevância: casamento exato pesa mais que prefixo, e o título pesa mais que autor e isbn;</li>
+ * <li>ordenação só por id, title, author e isbn, com o id como desempate.</li>
+ * </ul>
+ */
+public final class SearchSemantics {
+
+	public static final String UNSUPPORTED_SORT = "Ordenação não suportada.";
+	public static final int EXACT_MATCH = 2;
+	public static final int PREFIX_MATCH = 1;
+
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+	/** Propriedades do Book que podem ser ordenadas */
+	private static final Set<String> SORTABLE = Set.of("id", "title", "author", "isbn");
+
+	public enum Field {
+		TITLE(3, false, Book::getTitle), AUTHOR(2, false, Book::getAuthor), ISBN(1, true, Book::getIsbn);
+
+		private final int weight;
+		/** isbn é indexado como um único token, ignorando hífens e espaços */
+		private final boolean keyword;
+		private final Function<Book, String> value;
+
+		Field(int weight, boolean keyword, Function<Book, String> value) {
+			this.weight = weight;
+			this.keyword = keyword;
+			this.value = value;
+		}
+
+		public int weight() {
+			return weight;
+		}
+
+		public boolean isKeyword() {
+			return keyword;
+		}
+
+		public String value(Book book) {
+			return value.apply(book);
+		}
+
+		public String[] tokens(Book book) {
+			return tokens(value.apply(book));
+		}
+
+		public String[] tokens(String value) {
+			String[] tokens = tokenize(value);
+			return keyword && tokens.length > 1 ? new String[] { String.join("", tokens) } : tokens;
+		}
+	}
+
+	private SearchSemantics() {
+	}
+
+	/**
+	 * Tokens normalizados e distintos do texto, na ordem em que aparecem.
+	 */
+	public static String[] tokenize(String value) {
+		if (value == null || value.isBlank()) {
+			return new String[0];
+		}
+		String normalized = DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("")
+				.toLowerCase(Locale.ROOT);
+		return Arrays.stream(SEPARATORS.split(normalized))
+				.filter(token -> !token.isEmpty())
+				.distinct()
+				.toArray(String[]::new);
+	}
+
+	/**
+	 * Indica se o filtro tem algum termo pesquisável; sem termos a busca equivale a listar todos os livros.
+	 */
+	public static boolean hasTerms(Book filter) {
+		for (Field field : Field.values()) {
+			if (field.tokens(filter).length > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Pontuação de um termo contra os tokens do campo: 0 quando não casa.
+	 */
+	public static int score(Field field, String term, String[] tokens) {
+		int score = 0;
+		for (String token : tokens) {
+			if (token.equals(term)) {
+				return field.weight * EXACT_MATCH;
+			}
+			if (token.startsWith(term)) {
+				score = field.weight * PREFIX_MATCH;
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Indica se as propriedades pedidas podem ser ordenadas (id, title, author e isbn).
+	 */
+	public static boolean isSortable(Sort sort) {
+		return sort.stream().allMatch(order -> SORTABLE.contains(order.getProperty()));
+	}
+
+	/**
+	 * Mesma ordem do banco (H2): comparação de strings com nulos antes dos demais valores, salvo se a ordem
+	 * pedir outra coisa; empates pelo id. A ordenação deve ser suportada ({@link #isSortable}).
+	 * @param Sort sort
+	 * @param ToLongFunction<T> id
+	 * @param BiFunction<T, Field, String> value valor original do campo
+	 * @return Comparator<T>
+	 */
+	public static <T> Comparator<T> comparator(Sort sort, ToLongFunction<T> id, BiFunction<T, Field, String> value) {
+		Comparator<T> comparator = null;
+		for (Sort.Order order : sort) {
+			Comparator<T> next;
+			if ("id".equals(order.getProperty())) {
+				next = Comparator.comparingLong(id);
+				if (order.isDescending()) {
+					next = next.reversed();
+				}
+			} else {
+				Field field = Field.valueOf(order.getProperty().toUpperCase(Locale.ROOT));
+				Comparator<String> values = order.isIgnoreCase() ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+				if (order.isDescending()) {
+					values = values.reversed();
+				}
+				boolean nullsLast = order.getNullHandling() == Sort.NullHandling.NULLS_LAST
+						|| (order.getNullHandling() == Sort.NullHandling.NATIVE && order.isDescending());
+				values = nullsLast ? Comparator.nullsLast(values) : Comparator.nullsFirst(values);
+				next = Comparator.comparing(item -> value.apply(item, field), values);
+			}
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		Comparator<T> byId = Comparator.comparingLong(id);
+		return comparator == null ? byId : comparator.thenComparing(byId);
+	}
+
+}
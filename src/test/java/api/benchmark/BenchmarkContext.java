@@ -0,0 +1,49 @@
+package api.benchmark;
+
+import java.util.UUID;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import api.LibraryApplication;
+import api.service.search.BookSearchIndex;
+
+/**
+ * Sobe a aplicação para os benchmarks, cada uma com seu próprio banco H2 em memória.
+ */
+final class BenchmarkContext {
+
+	private BenchmarkContext() {
+	}
+
+	static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... properties) {
+		return new SpringApplicationBuilder(LibraryApplication.class)
+				.web(webApplicationType)
+				.properties(
+						"spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+						"spring.devtools.restart.enabled=false",
+						"server.port=0",
+						"management.server.port=-1",
+						"logging.level.root=WARN")
+				.properties(properties)
+				.run();
+	}
+
+	/**
+	 * Popula a tabela book com {@code size} livros direto via SQL (bem mais rápido que via JPA).
+	 * Títulos seguem o padrão "Titulo N", autores "Autor N % 1000" e isbns "isbn-N".
+	 */
+	static void populateBooks(ConfigurableApplicationContext context, int size) {
+		JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+		jdbc.update("INSERT INTO book (id, title, author, isbn, version, updated_at) "
+				+ "SELECT X, CONCAT('Titulo ', X), CONCAT('Autor ', MOD(X, 1000)), CONCAT('isbn-', X), 0, CURRENT_TIMESTAMP "
+				+ "FROM SYSTEM_RANGE(1, ?)", size);
+		// o otimizador pooled do Hibernate usa o valor da sequence como fim da faixa de 50 ids
+		jdbc.execute("ALTER SEQUENCE book_seq RESTART WITH " + (size + 51));
+		// a carga via SQL não passa pelo serviço, então o índice de busca precisa ser recarregado
+		context.getBean(BookSearchIndex.class).warm();
+	}
+
+}
@@ -0,0 +1,99 @@
+package api.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Ida e volta completa (MockMvc + serviço + H2) dos endpoints de /api/books.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookApiBenchmark {
+
+	private static final int BOOKS = 10_000;
+
+	private ConfigurableApplicationContext context;
+	private MockMvc mvc;
+	private final AtomicLong isbnSequence = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = BenchmarkContext.start(WebApplicationType.SERVLET);
+		BenchmarkContext.populateBooks(context, BOOKS);
+		mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public MvcResult getBook() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get("/api/books/" + (BOOKS / 2))
+				.accept(MediaType.APPLICATION_JSON)).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult findBooks() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get("/api/books?author=autor 42&page=0&size=20")
+				.accept(MediaType.APPLICATION_JSON)).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult createBook() throws Exception {
+		String json = "{\"title\":\"Novo\",\"author\":\"Fulano\",\"isbn\":\"bench-" + isbnSequence.incrementAndGet() + "\"}";
+		return mvc.perform(MockMvcRequestBuilders.post("/api/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json)).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult createBookWithInvalidPayload() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.post("/api/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content("{}")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult createBookWithDuplicateIsbn() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.post("/api/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content("{\"title\":\"Novo\",\"author\":\"Fulano\",\"isbn\":\"isbn-1\"}")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult getMissingBook() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get("/api/books/" + (BOOKS * 10))
+				.accept(MediaType.APPLICATION_JSON)).andReturn();
+	}
+
+}
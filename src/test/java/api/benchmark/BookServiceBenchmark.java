@@ -0,0 +1,90 @@
+package api.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import api.exception.BusinessException;
+import api.model.entity.Book;
+import api.model.repository.BookRepository;
+import api.service.BookService;
+
+/**
+ * Busca por exemplo (BookServiceImpl.find) e verificação de isbn do save
+ * sobre um H2 com 10 mil, 100 mil e 1 milhão de livros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class BookServiceBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int books;
+
+	private ConfigurableApplicationContext context;
+	private BookService service;
+	private BookRepository repository;
+	private Book titleFilter;
+	private Book authorFilter;
+	private Book duplicated;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = BenchmarkContext.start(WebApplicationType.NONE);
+		BenchmarkContext.populateBooks(context, books);
+		service = context.getBean(BookService.class);
+		repository = context.getBean(BookRepository.class);
+		titleFilter = Book.builder().title("titulo " + (books / 2)).build();
+		authorFilter = Book.builder().author("autor 42").build();
+		duplicated = Book.builder().title("Repetido").author("Fulano").isbn("isbn-" + (books / 2)).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Page<Book> findByTitle() {
+		return service.find(titleFilter, PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Page<Book> findByAuthor() {
+		return service.find(authorFilter, PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public boolean existsByIsbnMiss() {
+		return repository.existsByIsbn("isbn-inexistente");
+	}
+
+	@Benchmark
+	public Object saveWithDuplicatedIsbn() {
+		try {
+			return service.save(duplicated);
+		} catch (BusinessException e) {
+			return e;
+		}
+	}
+
+}
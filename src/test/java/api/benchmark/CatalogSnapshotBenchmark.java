@@ -0,0 +1,79 @@
+package api.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import api.service.memory.CatalogSnapshot;
+import api.service.memory.CatalogSnapshotService;
+
+/**
+ * Carga do catálogo na subida: leitura do snapshot binário (mmap, validação do CRC32C e cópia das colunas)
+ * contra a leitura do mesmo catálogo no H2, e o custo de gravar o snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class CatalogSnapshotBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int books;
+
+	private ConfigurableApplicationContext context;
+	private CatalogSnapshotService service;
+	private Path file;
+	private CatalogSnapshot snapshot;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		file = Files.createTempFile("catalog", ".snap");
+		context = BenchmarkContext.start(WebApplicationType.NONE, "library.search.index.enabled=false");
+		BenchmarkContext.populateBooks(context, books);
+		service = context.getBean(CatalogSnapshotService.class);
+		snapshot = service.readDatabase();
+		snapshot.write(file);
+		System.out.printf("%nbooks=%d: snapshot %d bytes%n", books, Files.size(file));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		context.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public CatalogSnapshot readSnapshot() throws IOException {
+		return CatalogSnapshot.read(file);
+	}
+
+	@Benchmark
+	public CatalogSnapshot readDatabase() {
+		return service.readDatabase();
+	}
+
+	@Benchmark
+	public long writeSnapshot() throws IOException {
+		return snapshot.write(file);
+	}
+
+}
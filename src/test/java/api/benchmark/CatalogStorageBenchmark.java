@@ -0,0 +1,126 @@
+package api.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import api.model.entity.Book;
+import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.impl.InMemoryBookService;
+import api.service.memory.CompactBookStore;
+
+/**
+ * Consultas do catálogo no BookServiceImpl (H2, sem o índice de busca) e no InMemoryBookService
+ * montado a partir do export do mesmo banco, com ids, isbns e títulos sorteados a cada chamada. O setup imprime a memória por livro do CompactBookStore
+ * e a de uma lista com os mesmos livros como objetos Book.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class CatalogStorageBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int books;
+
+	private ConfigurableApplicationContext context;
+	private BookService jpa;
+	private BookService memory;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = BenchmarkContext.start(WebApplicationType.NONE, "library.search.index.enabled=false");
+		BenchmarkContext.populateBooks(context, books);
+		jpa = context.getBean(BookService.class);
+
+		CompactBookStore.Builder builder = CompactBookStore.builder();
+		jpa.export(new Book(), book -> builder.add(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()));
+		CompactBookStore store = builder.build();
+		memory = new InMemoryBookService(store, context.getBean(BookAvailabilityIndex.class), null);
+
+		// os mesmos livros como objetos Book: tudo o que é alocado aqui fica retido pela lista
+		List<Book> objects = new ArrayList<>(store.size());
+		long before = allocatedBytes();
+		for (int row = 0; row < store.size(); row++) {
+			objects.add(store.book(row));
+		}
+		long objectBytes = allocatedBytes() - before;
+		System.out.printf("%nbooks=%d: List<Book> %d bytes/book, CompactBookStore %d bytes/book%n", objects.size(),
+				objectBytes / objects.size(), store.sizeInBytes() / store.size());
+		objects.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Optional<Book> getByIdJpa() {
+		return jpa.getById(randomId());
+	}
+
+	@Benchmark
+	public Optional<Book> getByIdMemory() {
+		return memory.getById(randomId());
+	}
+
+	@Benchmark
+	public Optional<Book> getByIsbnJpa() {
+		return jpa.getBookByIsbn("isbn-" + randomId());
+	}
+
+	@Benchmark
+	public Optional<Book> getByIsbnMemory() {
+		return memory.getBookByIsbn("isbn-" + randomId());
+	}
+
+	@Benchmark
+	public Page<Book> findByTitleJpa() {
+		return jpa.find(randomTitle(), PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Page<Book> findByTitleMemory() {
+		return memory.find(randomTitle(), PageRequest.of(0, 20));
+	}
+
+	private long randomId() {
+		return ThreadLocalRandom.current().nextLong(1, books + 1);
+	}
+
+	/** Filtro diferente a cada chamada, para o BookServiceImpl não responder do cache de consultas */
+	private Book randomTitle() {
+		return Book.builder().title("titulo " + randomId()).build();
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
@@ -0,0 +1,57 @@
+package api.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import api.exception.ApiErrors;
+import api.exception.BusinessException;
+
+/**
+ * Custo de montar uma resposta de erro: exceção com stack trace (ResponseStatusException / RuntimeException)
+ * contra BusinessException sem stack trace, e ApiErrors novo contra ApiErrors.of (em cache).
+ * A profundidade da pilha no benchmark é bem menor que a de uma requisição real (filtros + DispatcherServlet),
+ * então a diferença em produção é maior.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorPathBenchmark {
+
+	private static final String MESSAGE = "Isbn já cadastrado.";
+
+	@Benchmark
+	public ApiErrors stackTraceException() {
+		RuntimeException ex = new RuntimeException(MESSAGE);
+		return new ApiErrors(ex.getMessage());
+	}
+
+	@Benchmark
+	public ApiErrors responseStatusException() {
+		return new ApiErrors(new ResponseStatusException(HttpStatus.NOT_FOUND, MESSAGE));
+	}
+
+	@Benchmark
+	public ApiErrors stacklessBusinessException() {
+		return new ApiErrors(new BusinessException(MESSAGE));
+	}
+
+	@Benchmark
+	public ApiErrors stacklessBusinessExceptionCachedErrors() {
+		return ApiErrors.of(new BusinessException(MESSAGE).getMessage());
+	}
+
+}
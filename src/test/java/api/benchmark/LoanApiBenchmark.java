@@ -0,0 +1,92 @@
+package api.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Ida e volta completa de POST /api/loans: busca do livro por isbn, checagem de disponibilidade e insert.
+ * Cada chamada empresta um livro diferente; quando os livros acabam, as chamadas passam a medir a recusa.
+ * journal=true mede o modo write-behind (library.loan.journal.enabled), com o journal em um diretório temporário.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanApiBenchmark {
+
+	private static final int BOOKS = 100_000;
+
+	@Param({ "false", "true" })
+	public boolean journal;
+
+	private ConfigurableApplicationContext context;
+	private Path journalDir;
+	private MockMvc mvc;
+	private final AtomicLong bookSequence = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		journalDir = Files.createTempDirectory("loan-journal-bench");
+		context = BenchmarkContext.start(WebApplicationType.SERVLET,
+				"library.loan.journal.enabled=" + journal,
+				"library.loan.journal.dir=" + journalDir);
+		BenchmarkContext.populateBooks(context, BOOKS);
+		mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		context.close();
+		FileSystemUtils.deleteRecursively(journalDir);
+	}
+
+	@Benchmark
+	public MvcResult createLoan() throws Exception {
+		return postLoan();
+	}
+
+	/** Rajada de empréstimos concorrentes: no modo journal, várias requisições compartilham o mesmo fsync */
+	@Benchmark
+	@Threads(16)
+	public MvcResult createLoanBurst() throws Exception {
+		return postLoan();
+	}
+
+	private MvcResult postLoan() throws Exception {
+		String json = "{\"isbn\":\"isbn-" + (bookSequence.incrementAndGet() % BOOKS + 1) + "\",\"customer\":\"Fulano\"}";
+		return mvc.perform(MockMvcRequestBuilders.post("/api/loans")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json)).andReturn();
+	}
+
+}
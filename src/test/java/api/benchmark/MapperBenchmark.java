@@ -0,0 +1,86 @@
+package api.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.dto.BookDTO;
+import api.mapper.BookMapper;
+import api.model.entity.Book;
+
+/**
+ * Compara o BookMapper com o caminho antigo via ModelMapper,
+ * para um item e para uma página de 1.000 livros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+	private static final int PAGE_SIZE = 1000;
+
+	private ModelMapper modelMapper;
+	private BookMapper bookMapper;
+	private Book book;
+	private BookDTO dto;
+	private List<Book> page;
+
+	@Setup
+	public void setup() {
+		modelMapper = new ModelMapper();
+		bookMapper = new BookMapper();
+		book = Book.builder().id(1L).title("As aventuras").author("Fulano").isbn("123").build();
+		dto = BookDTO.builder().title("As aventuras").author("Fulano").isbn("123").build();
+		page = new ArrayList<>(PAGE_SIZE);
+		for (long i = 0; i < PAGE_SIZE; i++) {
+			page.add(Book.builder().id(i).title("Titulo " + i).author("Autor " + i).isbn("isbn-" + i).build());
+		}
+	}
+
+	@Benchmark
+	public BookDTO modelMapperToDTO() {
+		return modelMapper.map(book, BookDTO.class);
+	}
+
+	@Benchmark
+	public BookDTO bookMapperToDTO() {
+		return bookMapper.toDTO(book);
+	}
+
+	@Benchmark
+	public Book modelMapperToEntity() {
+		return modelMapper.map(dto, Book.class);
+	}
+
+	@Benchmark
+	public Book bookMapperToEntity() {
+		return bookMapper.toEntity(dto);
+	}
+
+	@Benchmark
+	public List<BookDTO> modelMapperPage() {
+		return page.stream().map(entity -> modelMapper.map(entity, BookDTO.class)).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<BookDTO> bookMapperPage() {
+		return page.stream().map(bookMapper::toDTO).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,84 @@
+package api.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.dto.BookDTO;
+import api.dto.PageDTO;
+
+/**
+ * Custo de serialização e tamanho (bruto e com gzip) de uma página de livros:
+ * PageImpl em JSON (formato antigo) contra o PageDTO em JSON, CBOR e Smile.
+ * Os tamanhos em bytes são impressos no setup de cada combinação de parâmetros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageSerializationBenchmark {
+
+	@Param({ "pageimpl-json", "json", "cbor", "smile" })
+	public String format;
+
+	@Param({ "20", "1000" })
+	public int size;
+
+	private ObjectMapper mapper;
+	private Object page;
+
+	@Setup
+	public void setup() throws IOException {
+		List<BookDTO> content = new ArrayList<>(size);
+		for (long i = 0; i < size; i++) {
+			content.add(BookDTO.builder().id(i).title("Titulo " + i).author("Autor " + (i % 50)).isbn("978-" + i).build());
+		}
+		PageImpl<BookDTO> pageImpl = new PageImpl<>(content, PageRequest.of(0, size), 100_000);
+		page = "pageimpl-json".equals(format) ? pageImpl : PageDTO.of(content, pageImpl);
+		if ("cbor".equals(format)) {
+			mapper = Jackson2ObjectMapperBuilder.cbor().build();
+		} else if ("smile".equals(format)) {
+			mapper = Jackson2ObjectMapperBuilder.smile().build();
+		} else {
+			mapper = Jackson2ObjectMapperBuilder.json().build();
+		}
+		System.out.printf("%n%s, %d books: %d bytes, %d bytes gzip%n", format, size, serialize().length, gzip().length);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		return mapper.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public byte[] gzip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			mapper.writeValue(out, page);
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,74 @@
+package api.controllerTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+
+import api.model.entity.Book;
+import api.service.BookService;
+
+/**
+ * A compressão é feita pelo Tomcat, então o teste sobe o servidor de verdade.
+ * O HttpClient do JDK não descomprime a resposta, o que permite ver o Content-Encoding.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "library.search.index.enabled=false")
+public class BookApiCompressionTest {
+
+	@LocalServerPort
+	int port;
+
+	@Autowired
+	BookService service;
+
+	List<Book> books = new ArrayList<>();
+
+	@BeforeEach
+	public void setUp() {
+		for (int i = 0; i < 40; i++) {
+			books.add(service.save(Book.builder().author("Compressão").title("As aventuras de wendz, volume " + i)
+					.isbn("gzip-" + i).build()));
+		}
+	}
+
+	@AfterEach
+	public void tearDown() {
+		books.forEach(service::delete);
+	}
+
+	@Test
+	@DisplayName("Deve comprimir com gzip uma página de livros maior que 2KB, com ETag fraco")
+	public void findBooksGzipTest() throws Exception {
+		HttpResponse<byte[]> response = get("/api/books?author=Compressão&size=40");
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).hasValue("gzip");
+		assertThat(response.headers().firstValue(HttpHeaders.ETAG)).hasValueSatisfying(eTag -> assertThat(eTag).startsWith("W/\""));
+		assertThat(response.headers().allValues(HttpHeaders.VARY)).anySatisfy(vary -> assertThat(vary).containsIgnoringCase(HttpHeaders.ACCEPT + ","));
+	}
+
+	private HttpResponse<byte[]> get(String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path.replace("ã", "%C3%A3")))
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.GET()
+				.build();
+		return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+}
@@ -0,0 +1,78 @@
+package api.controllerTest;
+
+import static api.support.QueryBudget.assertMaxQueries;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import api.model.entity.Book;
+import api.model.repository.BookRepository;
+
+/**
+ * Garante que os endpoints de leitura não degeneram em N+1: cada requisição tem um orçamento fixo de consultas.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "library.search.index.enabled=false")
+@AutoConfigureMockMvc
+public class BookApiQueryBudgetTest {
+
+	static String BOOK_API = "/api/books";
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookRepository repository;
+
+	List<Book> books;
+
+	@BeforeEach
+	public void setUp() {
+		books = repository.saveAll(IntStream.range(0, 20)
+				.mapToObj(i -> Book.builder().isbn("budget-" + i).author("Fulano").title("Aventura " + i).build())
+				.collect(Collectors.toList()));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		repository.deleteAllInBatch(books);
+	}
+
+	@Test
+	@DisplayName("Deve obter um livro com no máximo uma consulta")
+	public void getBookQueryBudgetTest() {
+		Long id = books.get(0).getId();
+
+		assertMaxQueries(1, () -> mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + id)
+				.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()));
+	}
+
+	@Test
+	@DisplayName("Deve paginar livros por cursor com uma única consulta, independente do tamanho da página")
+	public void findAfterQueryBudgetTest() {
+		assertMaxQueries(1, () -> mvc.perform(MockMvcRequestBuilders.get(BOOK_API)
+				.param("after", "")
+				.param("author", "Fulano")
+				.param("size", "20")
+				.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("content.length()").value(20)));
+	}
+
+}
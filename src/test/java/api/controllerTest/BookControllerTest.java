@@ -1,11 +1,19 @@
 package api.controllerTest;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,9 +24,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -26,21 +38,31 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 import api.dto.BookDTO;
+import api.dto.BookLookupRequestDTO;
 import api.exception.BusinessException;
+import api.exception.UnavailableException;
+import api.mapper.BookMapper;
+import api.mapper.LoanMapper;
 import api.model.entity.Book;
 import api.resource.BookController;
+import api.model.projection.LoanView;
 import api.service.BookService;
+import api.service.LoanService;
 
 @ExtendWith(SpringExtension.class) 
 @ActiveProfiles("test")
 @WebMvcTest(controllers = {BookController.class})
 @AutoConfigureMockMvc
+@Import({BookMapper.class, LoanMapper.class})
 public class BookControllerTest {
 
 	static String BOOK_API = "/api/books";
+	static String CBOR_VALUE = "application/cbor";
 
 	@Autowired
 	MockMvc mvc;
@@ -48,6 +70,9 @@ public class BookControllerTest {
 	@MockBean // utilizado para mockar e manipular o comportamento do service
 	BookService service;
 
+	@MockBean
+	LoanService loanService;
+
 	@Test
 	@DisplayName("Deve criar um livro com sucesso.")
 	public void createBookTest() throws Exception {
@@ -165,7 +190,8 @@ public class BookControllerTest {
 
 		// verificação 
 		mvc.perform(request)
-		.andExpect(status().isNotFound());
+		.andExpect(status().isNotFound())
+		.andExpect(jsonPath("errors[0]").value("Book not found"));
 
 
 
@@ -175,7 +201,7 @@ public class BookControllerTest {
 	public void deleteBookTest() throws Exception {
 
 		// cenario (given)
-		BDDMockito.given(service.getById(Mockito.anyLong())).willReturn(Optional.of(Book.builder().id(1L).build()));
+		BDDMockito.given(service.getForUpdate(Mockito.anyLong())).willReturn(Optional.of(Book.builder().id(1L).build()));
 
 
 		// execução (when)
@@ -193,7 +219,7 @@ public class BookControllerTest {
 	public void deleteInexistentBookTest() throws Exception {
 
 		// cenario (given)
-		BDDMockito.given(service.getById(Mockito.anyLong())).willReturn(Optional.empty());
+		BDDMockito.given(service.getForUpdate(Mockito.anyLong())).willReturn(Optional.empty());
 
 
 		// execução (when)
@@ -215,7 +241,7 @@ public class BookControllerTest {
 		String json = new ObjectMapper().writeValueAsString(createNewBookDTO());		
 		
 		Book updatingBook = Book.builder().id(id).author("sem author").isbn("321").title("sem titulo").build();
-		BDDMockito.given(service.getById(id) )
+		BDDMockito.given(service.getForUpdate(id) )
 				.willReturn(Optional.of(updatingBook));
 		
 		Book updatedBook = Book.builder().id(id).author("Pedro").isbn("321").title("As aventuras de wendz").build();		
@@ -248,7 +274,7 @@ public class BookControllerTest {
 		// cenario (given)
 		String json = new ObjectMapper().writeValueAsString(createNewBookDTO());		
 		
-		BDDMockito.given(service.getById(Mockito.anyLong()) )
+		BDDMockito.given(service.getForUpdate(Mockito.anyLong()) )
 				.willReturn(Optional.empty());
 
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -290,13 +316,387 @@ public class BookControllerTest {
 			.perform(request)
 			.andExpect(status().isOk())
 			.andExpect(jsonPath("content", hasSize(1)))
-			.andExpect(jsonPath("pageable.pageSize").value(100))
-			.andExpect(jsonPath("pageable.pageNumber").value(0))
+			.andExpect(jsonPath("size").value(100))
+			.andExpect(jsonPath("page").value(0))
 			.andExpect(jsonPath("totalElements").value(1));
 	}
 	
 
 	
+	@Test
+	@DisplayName("Deve retornar a página de livros em CBOR quando solicitado, sem os metadados do Pageable")
+	public void findBooksCborTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willReturn( new PageImpl<Book> (Arrays.asList(book), PageRequest.of(0, 10), 1) );
+
+		byte[] body = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?page=0&size=10"))
+				.accept(CBOR_VALUE))
+			.andExpect(status().isOk())
+			.andExpect(content().contentType(CBOR_VALUE))
+			.andReturn().getResponse().getContentAsByteArray();
+
+		JsonNode page = new ObjectMapper(new CBORFactory()).readTree(body);
+		assertThat(page.get("content").get(0).get("isbn").asText()).isEqualTo("321");
+		assertThat(page.get("totalElements").asLong()).isEqualTo(1);
+		assertThat(page.has("pageable")).isFalse();
+	}
+
+	@Test
+	@DisplayName("Deve cadastrar livros em lote informando os aceitos e os rejeitados")
+	public void createBatchTest() throws Exception {
+		BookDTO valid = createNewBookDTO();
+		BookDTO duplicated = BookDTO.builder().author("Fulano").title("Outro livro").isbn("999").build();
+		BookDTO invalid = BookDTO.builder().author("Fulano").isbn("888").build();
+
+		Book savedBook = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		BDDMockito.given(service.saveAll(Mockito.anyList())).willReturn(Arrays.asList(savedBook));
+
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(valid, duplicated, invalid));
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("accepted", hasSize(1)))
+		.andExpect(jsonPath("accepted[0].id").value(1L))
+		.andExpect(jsonPath("rejected", hasSize(2)))
+		.andExpect(jsonPath("rejected[0].index").value(1))
+		.andExpect(jsonPath("rejected[0].errors[0]").value("Isbn já cadastrado."))
+		.andExpect(jsonPath("rejected[1].index").value(2))
+		.andExpect(jsonPath("stoppedAt").doesNotExist());
+	}
+
+	@Test
+	@DisplayName("Deve gravar os livros já lidos e indicar onde parou quando o lote fica ilegível no meio")
+	public void createBatchWithMalformedBookTest() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		BookDTO dto = createNewBookDTO();
+		Book savedBook = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		BDDMockito.given(service.saveAll(Mockito.anyList())).willReturn(Arrays.asList(savedBook));
+
+		String ndjson = mapper.writeValueAsString(dto) + "\n{\"title\": \n" + mapper.writeValueAsString(dto) + "\n";
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(ndjson);
+
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("accepted", hasSize(1)))
+		.andExpect(jsonPath("accepted[0].id").value(1L))
+		.andExpect(jsonPath("rejected", hasSize(1)))
+		.andExpect(jsonPath("rejected[0].index").value(1))
+		.andExpect(jsonPath("rejected[0].errors[0]").value("JSON inválido."))
+		.andExpect(jsonPath("stoppedAt").value(1));
+	}
+
+	@Test
+	@DisplayName("Deve retornar erro quando o lote é ilegível desde o primeiro registro")
+	public void createBatchMalformedFromStartTest() throws Exception {
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content("not json");
+
+		mvc.perform(request)
+		.andExpect(status().isBadRequest())
+		.andExpect(jsonPath("errors[0]").value("JSON inválido."));
+
+		Mockito.verify(service, Mockito.never()).saveAll(Mockito.anyList());
+	}
+
+	@Test
+	@DisplayName("Deve rejeitar só o livro cujo isbn foi cadastrado por outra requisição durante o lote")
+	public void createBatchConcurrentDuplicateTest() throws Exception {
+		BookDTO valid = createNewBookDTO();
+		BookDTO raced = BookDTO.builder().author("Fulano").title("Outro livro").isbn("999").build();
+		Book savedBook = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		BDDMockito.given(service.saveAll(Mockito.anyList())).willThrow(new DataIntegrityViolationException("uk_book_isbn"));
+		BDDMockito.given(service.save(Mockito.argThat(book -> book != null && "321".equals(book.getIsbn())))).willReturn(savedBook);
+		BDDMockito.given(service.save(Mockito.argThat(book -> book != null && "999".equals(book.getIsbn()))))
+			.willThrow(new BusinessException("Isbn já cadastrado."));
+
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(valid, raced));
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("accepted", hasSize(1)))
+		.andExpect(jsonPath("accepted[0].id").value(1L))
+		.andExpect(jsonPath("rejected", hasSize(1)))
+		.andExpect(jsonPath("rejected[0].index").value(1))
+		.andExpect(jsonPath("rejected[0].errors[0]").value("Isbn já cadastrado."));
+	}
+
+	@Test
+	@DisplayName("Deve cadastrar livros em lote enviados como NDJSON")
+	public void createBatchNdjsonTest() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		BookDTO dto = createNewBookDTO();
+		Book savedBook = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		BDDMockito.given(service.saveAll(Mockito.anyList())).willReturn(Arrays.asList(savedBook));
+
+		String ndjson = mapper.writeValueAsString(dto) + "\n" + mapper.writeValueAsString(dto) + "\n";
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(ndjson);
+
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("accepted", hasSize(1)))
+		.andExpect(jsonPath("rejected", hasSize(1)))
+		.andExpect(jsonPath("rejected[0].index").value(1));
+	}
+
+	@Test
+	@DisplayName("Deve retornar uma página por cursor com o cursor da próxima página")
+	public void shouldReturnACursorPageOfBook() throws Exception {
+		Book first = Book.builder().id(1L).title("As aventuras de wendz").author("Pedro").isbn("321").build();
+		Book second = Book.builder().id(2L).title("As aventuras de wendz 2").author("Pedro").isbn("322").build();
+
+		BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.isNull(), Mockito.eq(2)))
+			.willReturn(Arrays.asList(first, second));
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?author=Pedro&after=&size=1"))
+				.accept(MediaType.APPLICATION_JSON);
+
+		String next = Base64.getUrlEncoder().withoutPadding().encodeToString("1".getBytes());
+		mvc.perform(request)
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content", hasSize(1)))
+			.andExpect(jsonPath("content[0].id").value(1L))
+			.andExpect(jsonPath("next").value(next))
+			.andExpect(jsonPath("totalElements").doesNotExist());
+
+		BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.eq(1L), Mockito.eq(2)))
+			.willReturn(Arrays.asList(second));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=Pedro&size=1&after=" + next)).accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content[0].id").value(2L))
+			.andExpect(jsonPath("next").doesNotExist());
+	}
+
+	@Test
+	@DisplayName("Deve retornar bad request para cursor inválido")
+	public void invalidCursorTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?after=***")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isBadRequest());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	@DisplayName("Deve exportar o catálogo em NDJSON e em CSV")
+	public void exportTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("As aventuras, de \"wendz\"").isbn("321").build();
+		BDDMockito.willAnswer(invocation -> {
+			((Consumer<Book>) invocation.getArgument(1)).accept(book);
+			return null;
+		}).given(service).export(Mockito.any(Book.class), Mockito.any());
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?author=Pedro")))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andExpect(content().string("{\"id\":1,\"title\":\"As aventuras, de \\\"wendz\\\"\",\"author\":\"Pedro\",\"isbn\":\"321\"}\n"));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=csv")))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith("text/csv"))
+			.andExpect(content().string("id,title,author,isbn\n1,\"As aventuras, de \"\"wendz\"\"\",Pedro,321\n"));
+	}
+
+	@Test
+	@DisplayName("Deve responder 304 para um livro que não mudou desde o ETag informado")
+	public void getNotModifiedBookTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").version(2L).build();
+		BDDMockito.given(service.getById(1L)).willReturn(Optional.of(book));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "W/\"1-2\""))
+			.andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header(HttpHeaders.IF_NONE_MATCH, "W/\"1-2\""))
+			.andExpect(status().isNotModified())
+			.andExpect(content().string(""));
+
+		book.setVersion(3L);
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header(HttpHeaders.IF_NONE_MATCH, "\"1-2\""))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "W/\"1-3\""));
+	}
+
+	@Test
+	@DisplayName("Deve responder 304 para uma página de livros que não mudou")
+	public void findNotModifiedBooksTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").version(0L).build();
+		BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willReturn( new PageImpl<Book> (Arrays.asList(book), PageRequest.of(0, 10), 1) );
+
+		String eTag = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=Pedro")))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=Pedro")).header(HttpHeaders.IF_NONE_MATCH, eTag))
+			.andExpect(status().isNotModified());
+
+		book.setVersion(1L);
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=Pedro")).header(HttpHeaders.IF_NONE_MATCH, eTag))
+			.andExpect(status().isOk());
+	}
+
+	@Test
+	@DisplayName("Deve retornar 412 ao atualizar um livro com If-Match desatualizado")
+	public void updateBookWithStaleIfMatchTest() throws Exception {
+		Book book = Book.builder().id(1L).author("sem author").isbn("321").title("sem titulo").version(3L).build();
+		BDDMockito.given(service.getForUpdate(1L)).willReturn(Optional.of(book));
+
+		mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_MATCH, "\"1-2\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(new ObjectMapper().writeValueAsString(createNewBookDTO())))
+			.andExpect(status().isPreconditionFailed());
+
+		mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_MATCH, "W/\"1-2\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(new ObjectMapper().writeValueAsString(createNewBookDTO())))
+			.andExpect(status().isPreconditionFailed());
+
+		Mockito.verify(service, Mockito.never()).update(Mockito.any(Book.class));
+	}
+
+	@Test
+	@DisplayName("Deve atualizar um livro com o ETag fraco da versão atual no If-Match")
+	public void updateBookWithCurrentIfMatchTest() throws Exception {
+		Book book = Book.builder().id(1L).author("sem author").isbn("321").title("sem titulo").version(3L).build();
+		Book updated = Book.builder().id(1L).author("Pedro").isbn("321").title("As aventuras de wendz").version(4L).build();
+		BDDMockito.given(service.getForUpdate(1L)).willReturn(Optional.of(book));
+		BDDMockito.given(service.update(book)).willReturn(updated);
+
+		mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_MATCH, "W/\"1-3\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(new ObjectMapper().writeValueAsString(createNewBookDTO())))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "W/\"1-4\""));
+	}
+
+	@Test
+	@DisplayName("Deve buscar vários livros por id mantendo a ordem e informando os não encontrados")
+	public void findByIdsTest() throws Exception {
+		Book first = Book.builder().id(2L).author("Pedro").title("Segundo").isbn("222").build();
+		Book second = Book.builder().id(1L).author("Pedro").title("Primeiro").isbn("111").build();
+		BDDMockito.given(service.getByIds(Arrays.asList(2L, 1L, 9L, 2L))).willReturn(Arrays.asList(first, second));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?ids=2,1,9,2")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content", hasSize(2)))
+			.andExpect(jsonPath("content[0].id").value(2))
+			.andExpect(jsonPath("content[1].id").value(1))
+			.andExpect(jsonPath("missingIds", hasSize(1)))
+			.andExpect(jsonPath("missingIds[0]").value(9));
+
+		// com ids e after juntos vale a busca por ids, sem ambiguidade entre os dois mapeamentos
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?ids=2,1,9,2&after=")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content", hasSize(2)));
+	}
+
+	@Test
+	@DisplayName("Deve buscar vários livros por id e isbn sem repetir o mesmo livro")
+	public void lookupTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("Primeiro").isbn("111").build();
+		BDDMockito.given(service.getByIds(Arrays.asList(1L))).willReturn(Arrays.asList(book));
+		BDDMockito.given(service.getByIsbns(Arrays.asList("111", "999"))).willReturn(Arrays.asList(book));
+
+		String json = new ObjectMapper().writeValueAsString(new BookLookupRequestDTO(Arrays.asList(1L), Arrays.asList("111", "999")));
+
+		mvc.perform(MockMvcRequestBuilders.post(BOOK_API.concat("/lookup"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content", hasSize(1)))
+			.andExpect(jsonPath("missingIds", hasSize(0)))
+			.andExpect(jsonPath("missingIsbns[0]").value("999"));
+	}
+
+	@Test
+	@DisplayName("Deve listar apenas os livros disponíveis para empréstimo")
+	public void findAvailableBooksTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		BDDMockito.given( service.findAvailable(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willReturn( new PageImpl<Book> (Arrays.asList(book), PageRequest.of(0, 10), 1) );
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?available=true&title=aventuras")))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content", hasSize(1)))
+			.andExpect(jsonPath("content[0].id").value(1));
+
+		Mockito.verify(service, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Deve responder 503 com Retry-After enquanto o índice de busca carrega")
+	public void findWhileIndexLoadingTest() throws Exception {
+		BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willThrow(new UnavailableException("Índice de busca em carga, tente novamente."));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras")))
+			.andExpect(status().isServiceUnavailable())
+			.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+			.andExpect(request().attribute(UnavailableException.REQUEST_ATTRIBUTE, true))
+			.andExpect(jsonPath("errors[0]").value("Índice de busca em carga, tente novamente."));
+	}
+
+	@Test
+	@DisplayName("Deve listar o histórico de empréstimos do livro")
+	public void loansByBookTest() throws Exception {
+		Book book = Book.builder().id(1L).author("Pedro").title("As aventuras de wendz").isbn("321").build();
+		LoanView loan = new SpelAwareProxyProjectionFactory().createProjection(LoanView.class, Map.of("id", 10L,
+				"customer", "Fulano", "loanDate", LocalDate.of(2022, 4, 1), "returned", true, "bookId", 1L, "isbn", "321"));
+		BDDMockito.given(service.getById(1L)).willReturn(Optional.of(book));
+		BDDMockito.given(loanService.find(Mockito.eq(1L), Mockito.isNull(), Mockito.any(Pageable.class)))
+			.willReturn(new PageImpl<LoanView>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=0&size=10")))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("content", hasSize(1)))
+			.andExpect(jsonPath("content[0].id").value(10))
+			.andExpect(jsonPath("content[0].customer").value("Fulano"))
+			.andExpect(jsonPath("content[0].loanDate").value("2022-04-01"))
+			.andExpect(jsonPath("content[0].returned").value(true))
+			.andExpect(jsonPath("totalElements").value(1));
+	}
+
+	@Test
+	@DisplayName("Deve retornar 404 no histórico de empréstimos de um livro inexistente")
+	public void loansByInexistentBookTest() throws Exception {
+		BDDMockito.given(service.getById(Mockito.anyLong())).willReturn(Optional.empty());
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans")))
+			.andExpect(status().isNotFound());
+
+		Mockito.verifyNoInteractions(loanService);
+	}
+
 	public BookDTO createNewBookDTO() {
 		return BookDTO.builder().author("Pedro").title("As aventuras de wendz").isbn("321").build();
 	}
@@ -0,0 +1,89 @@
+package api.controllerTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import api.mapper.LoanMapper;
+import api.resource.LoanController;
+import api.service.BookService;
+import api.service.LoanService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Contadores library.errors do ApplicationControllerAdvice, por exceção e status.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@WebMvcTest(controllers = LoanController.class)
+@AutoConfigureMockMvc
+@Import({ LoanMapper.class, ErrorMetricsTest.MetricsConfig.class })
+public class ErrorMetricsTest {
+
+	static final String LOAN_API = "/api/loans";
+
+	@TestConfiguration
+	static class MetricsConfig {
+
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+	}
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	MeterRegistry registry;
+
+	@MockBean
+	BookService bookService;
+
+	@MockBean
+	LoanService loanService;
+
+	@Test
+	@DisplayName("Deve contar os erros de negócio, de validação e de status por exceção e status")
+	public void errorCountersTest() throws Exception {
+		BDDMockito.given(bookService.getBookByIsbn("123")).willReturn(Optional.empty());
+
+		mvc.perform(MockMvcRequestBuilders.post(LOAN_API).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"isbn\":\"123\",\"customer\":\"Fulano\"}"))
+			.andExpect(status().isBadRequest());
+		mvc.perform(MockMvcRequestBuilders.post(LOAN_API).contentType(MediaType.APPLICATION_JSON).content("{}"))
+			.andExpect(status().isBadRequest());
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API))
+			.andExpect(status().isBadRequest());
+
+		assertThat(count("BusinessException", "400")).isEqualTo(1);
+		assertThat(count("ValidationErrorsException", "400")).isEqualTo(1);
+		assertThat(count("ResponseStatusException", "400")).isEqualTo(1);
+		assertThat(count("NotFoundException", "404")).isZero();
+	}
+
+	private double count(String exception, String status) {
+		return registry.get("library.errors").tags("exception", exception, "status", status).counter().count();
+	}
+
+}
@@ -0,0 +1,74 @@
+package api.controllerTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+
+import api.config.ExecutionConfig;
+
+/**
+ * library.execution.mode: platform e async mantêm o pool do Tomcat; virtual usa virtual threads no Java 21+
+ * e, antes disso, impede a inicialização.
+ */
+public class ExecutionConfigTest {
+
+	private final ApplicationContextRunner runner = new ApplicationContextRunner()
+			.withUserConfiguration(ExecutionConfig.class);
+
+	@Test
+	@DisplayName("Deve manter o pool do Tomcat no modo platform")
+	public void platformModeTest() {
+		runner.withPropertyValues("library.execution.mode=platform").run(context -> {
+			assertThat(context).hasNotFailed();
+			assertThat(context).doesNotHaveBean(ExecutorService.class);
+			assertThat(context).doesNotHaveBean(TomcatProtocolHandlerCustomizer.class);
+		});
+	}
+
+	@Test
+	@DisplayName("Deve manter o pool do Tomcat no modo async")
+	public void asyncModeTest() {
+		runner.withPropertyValues("library.execution.mode=async").run(context -> {
+			assertThat(context).hasNotFailed();
+			assertThat(context).doesNotHaveBean(ExecutorService.class);
+			assertThat(context).doesNotHaveBean(TomcatProtocolHandlerCustomizer.class);
+		});
+	}
+
+	@Test
+	@DisplayName("Deve servir em virtual threads no modo virtual e encerrar o executor com o contexto")
+	public void virtualModeTest() {
+		assumeTrue(Runtime.version().feature() >= 21, "virtual threads require Java 21");
+		AtomicReference<ExecutorService> executor = new AtomicReference<>();
+
+		runner.withPropertyValues("library.execution.mode=virtual").run(context -> {
+			assertThat(context).hasSingleBean(ExecutorService.class);
+			assertThat(context).hasSingleBean(TomcatProtocolHandlerCustomizer.class);
+			executor.set(context.getBean(ExecutorService.class));
+			assertThat(executor.get().submit(() -> Thread.currentThread().toString()).get()).contains("Virtual");
+		});
+
+		assertThat(executor.get().isShutdown()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve falhar na inicialização no modo virtual quando o Java não tem virtual threads")
+	public void virtualModeUnavailableTest() {
+		assumeFalse(Runtime.version().feature() >= 21, "virtual threads available");
+
+		runner.withPropertyValues("library.execution.mode=virtual").run(context -> {
+			assertThat(context).hasFailed();
+			assertThat(context.getStartupFailure()).hasRootCauseInstanceOf(IllegalStateException.class)
+					.hasStackTraceContaining("library.execution.mode=virtual requires Java 21");
+		});
+	}
+
+}
@@ -0,0 +1,68 @@
+package api.controllerTest;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import api.config.IdempotencyFilter;
+import api.service.BookService;
+
+/**
+ * Retentativas de POST /api/books com a mesma Idempotency-Key recebem a resposta original, e não o 400 de isbn duplicado.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "library.search.index.enabled=false")
+@AutoConfigureMockMvc
+public class IdempotencyApiTest {
+
+	static String BOOK_API = "/api/books";
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookService service;
+
+	@AfterEach
+	public void tearDown() {
+		service.getBookByIsbn("idempotent-1").ifPresent(service::delete);
+	}
+
+	@Test
+	@DisplayName("Deve repetir o livro criado na retentativa com a mesma Idempotency-Key")
+	public void retryCreateBookTest() throws Exception {
+		mvc.perform(createBook("retry-1"))
+			.andExpect(status().isCreated())
+			.andExpect(jsonPath("isbn").value("idempotent-1"));
+
+		mvc.perform(createBook("retry-1"))
+			.andExpect(status().isCreated())
+			.andExpect(jsonPath("isbn").value("idempotent-1"))
+			.andExpect(header().string(IdempotencyFilter.IDEMPOTENT_REPLAYED, "true"));
+
+		mvc.perform(createBook("retry-2"))
+			.andExpect(status().isBadRequest())
+			.andExpect(jsonPath("errors[0]").value("Isbn já cadastrado."));
+	}
+
+	private MockHttpServletRequestBuilder createBook(String key) {
+		return MockMvcRequestBuilders.post(BOOK_API)
+				.header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content("{\"title\":\"Meu livro\",\"author\":\"Autor\",\"isbn\":\"idempotent-1\"}");
+	}
+
+}
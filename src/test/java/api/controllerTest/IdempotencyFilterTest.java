@@ -0,0 +1,229 @@
+package api.controllerTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.config.IdempotencyFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class IdempotencyFilterTest {
+
+	IdempotencyFilter filter;
+
+	AtomicInteger executions;
+
+	@BeforeEach
+	public void setUp() {
+		filter = new IdempotencyFilter(Arrays.asList("/api/loans"), "X-Client-Id", Duration.ofMinutes(1), 100, Duration.ofSeconds(5),
+				new ObjectMapper(), new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+		executions = new AtomicInteger();
+	}
+
+	@Test
+	@DisplayName("Deve repetir a resposta original sem executar a requisição de novo")
+	public void replayTest() throws Exception {
+		MockHttpServletResponse first = perform("key-1", "{\"isbn\":\"123\"}", createdLoan());
+		MockHttpServletResponse retry = perform("key-1", "{\"isbn\":\"123\"}", createdLoan());
+
+		assertThat(executions).hasValue(1);
+		assertThat(retry.getStatus()).isEqualTo(201);
+		assertThat(retry.getContentAsString()).isEqualTo(first.getContentAsString()).isEqualTo("1");
+		assertThat(retry.getHeader("Location")).isEqualTo("/api/loans/1");
+		assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+	}
+
+	@Test
+	@DisplayName("Deve executar normalmente sem o header ou com outra chave")
+	public void differentKeysTest() throws Exception {
+		perform(null, "{}", createdLoan());
+		perform(null, "{}", createdLoan());
+		perform("key-1", "{}", createdLoan());
+		perform("key-2", "{}", createdLoan());
+
+		assertThat(executions).hasValue(4);
+	}
+
+	@Test
+	@DisplayName("Deve recusar a chave reutilizada com outro corpo")
+	public void differentBodyTest() throws Exception {
+		perform("key-1", "{\"isbn\":\"123\"}", createdLoan());
+		MockHttpServletResponse retry = perform("key-1", "{\"isbn\":\"456\"}", createdLoan());
+
+		assertThat(executions).hasValue(1);
+		assertThat(retry.getStatus()).isEqualTo(422);
+		assertThat(retry.getContentAsString()).contains("Idempotency-Key already used with a different request");
+	}
+
+	@Test
+	@DisplayName("Não deve guardar respostas de erro do servidor")
+	public void serverErrorTest() throws Exception {
+		perform("key-1", "{}", (request, response) -> {
+			executions.incrementAndGet();
+			((HttpServletResponse) response).setStatus(503);
+		});
+		MockHttpServletResponse retry = perform("key-1", "{}", createdLoan());
+
+		assertThat(executions).hasValue(2);
+		assertThat(retry.getStatus()).isEqualTo(201);
+	}
+
+	@Test
+	@DisplayName("Deve executar só uma de duas requisições simultâneas com a mesma chave")
+	public void concurrentDuplicateTest() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		FilterChain slow = (request, response) -> {
+			started.countDown();
+			try {
+				finish.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			createdLoan().doFilter(request, response);
+		};
+
+		CompletableFuture<MockHttpServletResponse> first = CompletableFuture.supplyAsync(() -> performUnchecked("key-1", slow));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		CompletableFuture<MockHttpServletResponse> duplicate = CompletableFuture.supplyAsync(() -> performUnchecked("key-1", slow));
+		Thread.sleep(100);
+		assertThat(duplicate).isNotDone();
+		finish.countDown();
+
+		assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(201);
+		assertThat(duplicate.get(5, TimeUnit.SECONDS).getContentAsString()).isEqualTo("1");
+		assertThat(executions).hasValue(1);
+	}
+
+	@Test
+	@DisplayName("Não deve repetir a resposta de outro cliente que usou a mesma chave")
+	public void otherClientTest() throws Exception {
+		perform("key-1", "{}", createdLoan(), request -> request.setRemoteAddr("10.0.0.1"));
+		perform("key-1", "{}", createdLoan(), request -> request.setRemoteAddr("10.0.0.2"));
+		perform("key-1", "{}", createdLoan(), request -> request.addHeader("X-Client-Id", "app-1"));
+		perform("key-1", "{}", createdLoan(), request -> request.addHeader("Authorization", "Bearer a"));
+		MockHttpServletResponse retry = perform("key-1", "{}", createdLoan(), request -> request.addHeader("Authorization", "Bearer a"));
+
+		assertThat(executions).hasValue(4);
+		assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+	}
+
+	@Test
+	@DisplayName("Deve entregar o corpo em memória a um ReadListener (leitura assíncrona)")
+	public void readListenerTest() throws Exception {
+		StringBuilder events = new StringBuilder();
+		perform("key-1", "{\"isbn\":\"123\"}", (request, response) -> {
+			ServletInputStream in = request.getInputStream();
+			in.setReadListener(new ReadListener() {
+				@Override
+				public void onDataAvailable() throws IOException {
+					events.append(new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8));
+				}
+
+				@Override
+				public void onAllDataRead() {
+					events.append(" fim");
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					events.append(" erro");
+				}
+			});
+		});
+
+		assertThat(events.toString()).isEqualTo("{\"isbn\":\"123\"} fim");
+	}
+
+	@Test
+	@DisplayName("Não deve despejar pelo limite de entradas uma requisição ainda em andamento")
+	public void inFlightNotEvictedTest() throws Exception {
+		filter = new IdempotencyFilter(Arrays.asList("/api/loans"), "", Duration.ofMinutes(1), 1, Duration.ofSeconds(5),
+				new ObjectMapper(), new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		FilterChain slow = (request, response) -> {
+			started.countDown();
+			try {
+				finish.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			createdLoan().doFilter(request, response);
+		};
+
+		CompletableFuture<MockHttpServletResponse> first = CompletableFuture.supplyAsync(() -> performUnchecked("key-1", slow));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		for (int i = 2; i < 10; i++) {
+			perform("key-" + i, "{}", createdLoan());
+		}
+		CompletableFuture<MockHttpServletResponse> duplicate = CompletableFuture.supplyAsync(() -> performUnchecked("key-1", slow));
+		Thread.sleep(100);
+		finish.countDown();
+
+		assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(201);
+		assertThat(duplicate.get(5, TimeUnit.SECONDS).getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+		assertThat(executions).hasValue(9);
+	}
+
+	private FilterChain createdLoan() {
+		return (request, response) -> {
+			executions.incrementAndGet();
+			StreamUtils.copyToByteArray(request.getInputStream());
+			HttpServletResponse http = (HttpServletResponse) response;
+			http.setStatus(201);
+			http.setHeader("Location", "/api/loans/1");
+			http.setContentType("application/json");
+			http.getOutputStream().write("1".getBytes(StandardCharsets.UTF_8));
+		};
+	}
+
+	private MockHttpServletResponse performUnchecked(String key, FilterChain chain) {
+		try {
+			return perform(key, "{}", chain);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private MockHttpServletResponse perform(String key, String body, FilterChain chain) throws Exception {
+		return perform(key, body, chain, request -> { });
+	}
+
+	private MockHttpServletResponse perform(String key, String body, FilterChain chain,
+			Consumer<MockHttpServletRequest> client) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/loans");
+		client.accept(request);
+		if (key != null) {
+			request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+		}
+		request.setContent(body.getBytes(StandardCharsets.UTF_8));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+}
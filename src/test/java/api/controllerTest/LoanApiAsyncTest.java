@@ -0,0 +1,104 @@
+package api.controllerTest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import api.config.IdempotencyFilter;
+import api.model.entity.Book;
+import api.service.BookService;
+
+/**
+ * library.execution.mode=async com o journal: o POST /api/loans responde pelo despacho async depois do fsync,
+ * passando pelos filtros (Idempotency-Key) nos dois despachos.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = { "library.execution.mode=async", "library.loan.journal.enabled=true",
+		"library.search.index.enabled=false" })
+@AutoConfigureMockMvc
+public class LoanApiAsyncTest {
+
+	static final String LOAN_API = "/api/loans";
+	static final Path JOURNAL_DIR = createTempDir();
+
+	@DynamicPropertySource
+	static void journalDir(DynamicPropertyRegistry registry) {
+		registry.add("library.loan.journal.dir", JOURNAL_DIR::toString);
+	}
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookService bookService;
+
+	@Test
+	@DisplayName("Deve criar o empréstimo de forma assíncrona, repetir a resposta na retentativa e registrar a devolução")
+	public void createLoanAsyncTest() throws Exception {
+		Book book = bookService.save(Book.builder().isbn("async-1").author("Fulano").title("Async").build());
+
+		MvcResult started = mvc.perform(createLoan("async-key-1", "async-1"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String id = mvc.perform(asyncDispatch(started))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+
+		mvc.perform(createLoan("async-key-1", "async-1"))
+			.andExpect(request().asyncNotStarted())
+			.andExpect(status().isCreated())
+			.andExpect(header().string(IdempotencyFilter.IDEMPOTENT_REPLAYED, "true"))
+			.andExpect(content().string(id));
+
+		mvc.perform(createLoan("async-key-2", "async-1"))
+			.andExpect(request().asyncNotStarted())
+			.andExpect(status().isBadRequest())
+			.andExpect(jsonPath("errors[0]").value("Book already loaned"));
+
+		mvc.perform(MockMvcRequestBuilders.patch(LOAN_API + "/" + id)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"returned\":true}"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("isbn").value(book.getIsbn()))
+			.andExpect(jsonPath("returned").value(true));
+	}
+
+	private MockHttpServletRequestBuilder createLoan(String key, String isbn) {
+		return MockMvcRequestBuilders.post(LOAN_API)
+				.header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content("{\"isbn\":\"" + isbn + "\",\"customer\":\"Fulano\"}");
+	}
+
+	private static Path createTempDir() {
+		try {
+			return Files.createTempDirectory("loan-journal-async");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
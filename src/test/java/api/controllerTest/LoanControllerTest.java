@@ -1,9 +1,15 @@
 package api.controllerTest;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 
 import org.hamcrest.Matchers;
@@ -16,19 +22,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import api.dto.LoanDTO;
+import api.dto.ReturnedLoanDTO;
 import api.exception.BusinessException;
+import api.mapper.LoanMapper;
 import api.model.entity.Book;
 import api.model.entity.Loan;
+import api.model.projection.LoanView;
 import api.resource.LoanController;
 import api.service.BookService;
 import api.service.LoanService;
@@ -38,6 +54,7 @@ import api.service.LoanService;
 @ActiveProfiles("test")
 @WebMvcTest(controllers =  LoanController.class)
 @AutoConfigureMockMvc
+@Import(LoanMapper.class)
 public class LoanControllerTest {
 
 	static final String LOAN_API = "/api/loans";
@@ -72,7 +89,10 @@ public class LoanControllerTest {
 				.contentType(MediaType.APPLICATION_JSON)
 				.content(json);
 		
-		mvc.perform( request )
+		MvcResult result = mvc.perform( request )
+			.andExpect( request().asyncStarted() )
+			.andReturn();
+		mvc.perform( asyncDispatch(result) )
 			.andExpect( status().isCreated() )
 			.andExpect( content().string("1"));
 			
@@ -100,6 +120,25 @@ public class LoanControllerTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Deve retornar erro ao tentar fazer emprestimo sem isbn e sem cliente")
+	public void missingFieldsCreateLoanTest() throws Exception{
+		
+		String json = new ObjectMapper().writeValueAsString(new LoanDTO());
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post( LOAN_API )
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform( request )
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors", Matchers.hasSize(2)) );
+		
+		Mockito.verify(bookService, Mockito.never()).getBookByIsbn(Mockito.any());
+		Mockito.verify(loanService, Mockito.never()).save(Mockito.any(Loan.class));
+	}
+	
 	@Test
 	@DisplayName("Deve retornar erro ao tentar fazer emprestimo de um livro já está emprestado")
 	public void loanedBookOnCreateLoanTest() throws Exception{
@@ -126,4 +165,94 @@ public class LoanControllerTest {
 			.andExpect(jsonPath("errors[0]").value("Book alredy loaned"));
 		
 	}
+
+	@Test
+	@DisplayName("Deve registrar a devolução de um empréstimo")
+	public void returnBookTest() throws Exception {
+		Book book = Book.builder().isbn("123").id(1L).build();
+		Loan loan = Loan.builder().id(1L).customer("Fulano").book(book).loanDate(LocalDate.now()).returned(false).build();
+		BDDMockito.given( loanService.getForUpdate(1L) ).willReturn( Optional.of(loan) );
+		BDDMockito.given( loanService.update(loan) ).willReturn(loan);
+
+		String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+
+		mvc.perform( MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("returned").value(true) )
+			.andExpect( jsonPath("isbn").value("123") );
+
+		Mockito.verify(loanService).update(loan);
+		assertThat(loan.getReturned()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve retornar 404 ao tentar devolver um empréstimo inexistente")
+	public void returnInexistentBookTest() throws Exception {
+		BDDMockito.given( loanService.getForUpdate(Mockito.anyLong()) ).willReturn( Optional.empty() );
+
+		String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+
+		mvc.perform( MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json) )
+			.andExpect( status().isNotFound() );
+
+		Mockito.verify(loanService, Mockito.never()).update(Mockito.any(Loan.class));
+	}
+
+	@Test
+	@DisplayName("Deve retornar 409 quando o empréstimo for alterado por outra requisição durante a devolução")
+	public void returnConcurrentlyChangedLoanTest() throws Exception {
+		Book book = Book.builder().isbn("123").id(1L).build();
+		Loan loan = Loan.builder().id(1L).customer("Fulano").book(book).loanDate(LocalDate.now()).returned(false).version(0L).build();
+		BDDMockito.given( loanService.getForUpdate(1L) ).willReturn( Optional.of(loan) );
+		BDDMockito.given( loanService.update(loan) ).willThrow( new ObjectOptimisticLockingFailureException(Loan.class, 1L) );
+
+		String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+
+		mvc.perform( MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json) )
+			.andExpect( status().isConflict() )
+			.andExpect( jsonPath("errors[0]").value("Resource was changed by another request") );
+	}
+
+	@Test
+	@DisplayName("Deve filtrar empréstimos por isbn e cliente")
+	public void findLoansTest() throws Exception {
+		Book book = Book.builder().isbn("123").id(1L).build();
+		LoanView loan = new SpelAwareProxyProjectionFactory().createProjection(LoanView.class, Map.of("id", 1L,
+				"customer", "Fulano", "loanDate", LocalDate.of(2022, 4, 1), "returned", false, "bookId", 1L, "isbn", "123"));
+		BDDMockito.given( bookService.getBookByIsbn("123") ).willReturn( Optional.of(book) );
+		BDDMockito.given( loanService.find(Mockito.eq(1L), Mockito.eq("Fulano"), Mockito.any(Pageable.class)) )
+			.willReturn( new PageImpl<LoanView>(Arrays.asList(loan), PageRequest.of(0, 10), 1) );
+
+		mvc.perform( MockMvcRequestBuilders.get(LOAN_API.concat("?isbn=123&customer=Fulano&page=0&size=10")) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(1)) )
+			.andExpect( jsonPath("content[0].isbn").value("123") )
+			.andExpect( jsonPath("totalElements").value(1) );
+	}
+
+	@Test
+	@DisplayName("Deve retornar página vazia ao filtrar empréstimos por isbn inexistente")
+	public void findLoansInexistentIsbnTest() throws Exception {
+		BDDMockito.given( bookService.getBookByIsbn("123") ).willReturn( Optional.empty() );
+
+		mvc.perform( MockMvcRequestBuilders.get(LOAN_API.concat("?isbn=123")) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(0)) );
+
+		Mockito.verifyNoInteractions(loanService);
+	}
+
+	@Test
+	@DisplayName("Deve exigir isbn ou cliente ao listar empréstimos")
+	public void findLoansWithoutFilterTest() throws Exception {
+		mvc.perform( MockMvcRequestBuilders.get(LOAN_API) )
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors[0]").value("Isbn or customer must be informed") );
+	}
 }
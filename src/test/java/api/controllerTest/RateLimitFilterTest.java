@@ -0,0 +1,213 @@
+package api.controllerTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.context.properties.bind.validation.BindValidationException;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.config.AimdConcurrencyLimiter;
+import api.config.RateLimitConfig;
+import api.config.RateLimitFilter;
+import api.config.TokenBucket;
+import api.exception.UnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class RateLimitFilterTest {
+
+	static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	AtomicInteger executions = new AtomicInteger();
+
+	@Test
+	@DisplayName("Deve aceitar a rajada e repor as fichas na taxa configurada")
+	public void tokenBucketTest() {
+		TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+		assertThat(bucket.tryAcquire(0)).isZero();
+		assertThat(bucket.tryAcquire(0)).isZero();
+		assertThat(bucket.tryAcquire(0)).isZero();
+		assertThat(bucket.tryAcquire(0)).isEqualTo(SECOND / 10);
+
+		assertThat(bucket.tryAcquire(SECOND / 10)).isZero();
+		assertThat(bucket.tryAcquire(SECOND / 10)).isPositive();
+	}
+
+	@Test
+	@DisplayName("Deve aumentar o limite de concorrência aos poucos e reduzi-lo na sobrecarga")
+	public void aimdTest() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 2, 20, TimeUnit.MILLISECONDS.toNanos(100));
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(limiter.tryAcquire()).isTrue();
+		}
+		assertThat(limiter.tryAcquire()).isFalse();
+
+		for (int i = 0; i < 10; i++) {
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+		}
+		assertThat(limiter.getLimit()).isEqualTo(10);
+		assertThat(limiter.getInFlight()).isZero();
+
+		limiter.tryAcquire();
+		limiter.release(TimeUnit.SECONDS.toNanos(1), false);
+		assertThat(limiter.getLimit()).isEqualTo(9);
+
+		limiter.tryAcquire();
+		limiter.release(0, true);
+		assertThat(limiter.getLimit()).isEqualTo(8);
+	}
+
+	@Test
+	@DisplayName("Deve responder 429 com Retry-After quando o cliente passar da taxa")
+	public void rateLimitedTest() throws Exception {
+		RateLimitFilter filter = filter(new AimdConcurrencyLimiter(10, 1, 10, SECOND));
+
+		assertThat(perform(filter, "/api/books", "10.0.0.1").getStatus()).isEqualTo(200);
+		assertThat(perform(filter, "/api/books", "10.0.0.1").getStatus()).isEqualTo(200);
+		MockHttpServletResponse rejected = perform(filter, "/api/loans", "10.0.0.1");
+		MockHttpServletResponse otherClient = perform(filter, "/api/books", "10.0.0.2");
+
+		assertThat(rejected.getStatus()).isEqualTo(429);
+		assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+		assertThat(rejected.getContentAsString()).isEqualTo("{\"errors\":[\"Too many requests\"]}");
+		assertThat(otherClient.getStatus()).isEqualTo(200);
+		assertThat(executions).hasValue(3);
+	}
+
+	@Test
+	@DisplayName("Deve responder 503 sem executar a requisição quando o limite de concorrência estiver esgotado")
+	public void sheddingTest() throws Exception {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(1, 1, 1, SECOND);
+		RateLimitFilter filter = filter(limiter);
+		limiter.tryAcquire();
+
+		MockHttpServletResponse rejected = perform(filter, "/api/books", "10.0.0.1");
+
+		assertThat(rejected.getStatus()).isEqualTo(503);
+		assertThat(rejected.getContentAsString()).isEqualTo("{\"errors\":[\"Server overloaded, retry later\"]}");
+		assertThat(executions).hasValue(0);
+	}
+
+	@Test
+	@DisplayName("Não deve reduzir o limite de concorrência pela duração de um export")
+	public void streamingPathTest() throws Exception {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 1, 10, 0);
+		RateLimitFilter filter = filter(limiter);
+
+		assertThat(perform(filter, "/api/books/export", "10.0.0.1").getStatus()).isEqualTo(200);
+		assertThat(limiter.getLimit()).isEqualTo(10);
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+
+		assertThat(perform(filter, "/api/books", "10.0.0.1").getStatus()).isEqualTo(200);
+		assertThat(limiter.getLimit()).isEqualTo(9);
+	}
+
+	@Test
+	@DisplayName("Não deve limitar caminhos fora de /api/books e /api/loans")
+	public void otherPathsTest() throws Exception {
+		RateLimitFilter filter = filter(new AimdConcurrencyLimiter(1, 1, 1, SECOND));
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(perform(filter, "/actuator/health", "10.0.0.1").getStatus()).isEqualTo(200);
+			assertThat(perform(filter, "/api/booksellers", "10.0.0.1").getStatus()).isEqualTo(200);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve casar os prefixos por segmento inteiro do caminho")
+	public void pathSegmentTest() throws Exception {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 1, 10, 0);
+		RateLimitFilter filter = filter(limiter);
+
+		assertThat(perform(filter, "/api/books/export/csv", "10.0.0.1").getStatus()).isEqualTo(200);
+		assertThat(limiter.getLimit()).isEqualTo(10);
+		assertThat(perform(filter, "/api/books/exported", "10.0.0.2").getStatus()).isEqualTo(200);
+		assertThat(limiter.getLimit()).isEqualTo(9);
+	}
+
+	@Test
+	@DisplayName("Deve manter a vaga de concorrência de uma resposta async até a requisição terminar")
+	public void asyncRequestTest() throws Exception {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 1, 10, SECOND);
+		RateLimitFilter filter = filter(limiter);
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/loans");
+		request.setAsyncSupported(true);
+
+		filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+		assertThat(limiter.getInFlight()).isEqualTo(1);
+
+		request.getAsyncContext().complete();
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	@DisplayName("Não deve reduzir o limite de concorrência pelo 503 da própria aplicação")
+	public void unavailableIsNotOverloadTest() throws Exception {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 1, 10, SECOND);
+		RateLimitFilter filter = filter(limiter);
+
+		for (int i = 0; i < 5; i++) {
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books");
+			request.setRemoteAddr("10.0.0." + i);
+			filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+				req.setAttribute(UnavailableException.REQUEST_ATTRIBUTE, Boolean.TRUE);
+				((HttpServletResponse) res).setStatus(503);
+			});
+		}
+		assertThat(limiter.getLimit()).isEqualTo(10);
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books");
+		filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> ((HttpServletResponse) res).setStatus(500));
+		assertThat(limiter.getLimit()).isEqualTo(9);
+	}
+
+	@Test
+	@DisplayName("Deve falhar na inicialização com taxa ou limites de library.ratelimit inválidos")
+	public void invalidPropertiesTest() {
+		ApplicationContextRunner runner = new ApplicationContextRunner()
+				.withUserConfiguration(RateLimitConfig.class)
+				.withBean(ObjectMapper.class)
+				.withPropertyValues("library.ratelimit.enabled=true");
+
+		runner.run(context -> assertThat(context).hasNotFailed());
+		runner.withPropertyValues("library.ratelimit.requests-per-second=0").run(context ->
+				assertThat(context.getStartupFailure()).hasRootCauseInstanceOf(BindValidationException.class)
+						.hasStackTraceContaining("requestsPerSecond"));
+		runner.withPropertyValues("library.ratelimit.min-concurrency=0").run(context ->
+				assertThat(context.getStartupFailure()).hasRootCauseInstanceOf(BindValidationException.class)
+						.hasStackTraceContaining("minConcurrency"));
+	}
+
+	private RateLimitFilter filter(AimdConcurrencyLimiter limiter) {
+		// 1 requisição por segundo com rajada de 2: a terceira seguida é recusada
+		return new RateLimitFilter(Arrays.asList("/api/books", "/api/loans"), Arrays.asList("/api/books/export"), "", 1, 2,
+				100, Duration.ofMinutes(1), limiter, new ObjectMapper(),
+				new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+	}
+
+	private MockHttpServletResponse perform(RateLimitFilter filter, String path, String remoteAddr) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		request.setRemoteAddr(remoteAddr);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FilterChain chain = (req, res) -> executions.incrementAndGet();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+}
@@ -1,8 +1,19 @@
 package api.model.repositoryTest;
 
+import static api.support.QueryBudget.assertMaxQueries;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -10,10 +21,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import api.model.entity.Book;
+import api.model.entity.Loan;
+import api.model.projection.BookView;
+import api.model.projection.CatalogStatsView;
 import api.model.repository.BookRepository;
 
 @ExtendWith(SpringExtension.class)
@@ -27,6 +45,9 @@ public class BookRepositoryTest {
 	@Autowired
 	BookRepository repository;
 
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
 	@Test
 	@DisplayName("Deve retornar verdadeiro quando existir o livro na base com o isbn informado.")
 	public void shouldReturnTrueWhenIsbnExists() {
@@ -100,6 +121,172 @@ public class BookRepositoryTest {
 		
 	}
 
+	@Test
+	@DisplayName("Deve retornar apenas os isbns já cadastrados em uma única consulta")
+	public void findExistingIsbnsTest() {
+		entityManager.persist(createNewBook());
+
+		Set<String> existing = repository.findExistingIsbns(Arrays.asList("123", "456"));
+
+		assertThat(existing).containsExactly("123");
+	}
+
+	@Test
+	@DisplayName("Deve retornar livro por isbn.")
+	public void findBookByIsbnTest() {
+		Book book = createNewBook();
+		entityManager.persist(book);
+
+		Optional<Book> foundBook = repository.findByIsbn("123");
+
+		assertThat( foundBook ).contains(book);
+	}
+
+	@Test
+	@DisplayName("Deve paginar por chave a partir do último id, aplicando os filtros informados")
+	public void findPageAfterTest() {
+		Book first = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("As aventuras").build());
+		Book second = entityManager.persist(Book.builder().isbn("2").author("Fulano").title("Mais aventuras").build());
+		entityManager.persist(Book.builder().isbn("3").author("Ciclano").title("Outras aventuras").build());
+
+		List<Book> page = repository.findPageAfter(first.getId(), "%aventuras%", "%fulano%", null, PageRequest.of(0, 10));
+
+		assertThat(page).containsExactly(second);
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED) // o cache só é atualizado no commit
+	@DisplayName("Deve manter o livro lido no cache de segundo nível e invalidá-lo ao deletar")
+	public void secondLevelCacheTest() {
+		Cache cache = entityManagerFactory.getCache();
+		Book book = repository.save(Book.builder().isbn("cache-1").author("Fulano").title("As aventuras").build());
+		cache.evictAll();
+
+		repository.findById(book.getId());
+		assertThat(cache.contains(Book.class, book.getId())).isTrue();
+
+		// a exclusão invalida a entrada em cache: a próxima leitura não devolve o livro removido
+		repository.deleteById(book.getId());
+		assertThat(repository.findById(book.getId())).isEmpty();
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED) // o cache só é atualizado no commit
+	@DisplayName("Deve buscar vários livros por id lendo do cache de segundo nível os que já estão lá")
+	public void findAllByIdCachedFirstTest() {
+		Book cached = repository.save(Book.builder().isbn("multi-1").author("Fulano").title("As aventuras").build());
+		Book notCached = repository.save(Book.builder().isbn("multi-2").author("Fulano").title("Mais aventuras").build());
+		List<Long> ids = Arrays.asList(cached.getId(), notCached.getId(), -1L);
+		try {
+			entityManagerFactory.getCache().evictAll();
+			repository.findById(cached.getId());
+
+			assertMaxQueries(1, () -> assertThat(repository.findAllByIdCachedFirst(ids)).hasSize(2));
+			// a consulta com IN também popula o cache, então a próxima busca não vai ao banco para os encontrados
+			assertMaxQueries(0, () -> assertThat(repository.findAllByIdCachedFirst(ids.subList(0, 2))).hasSize(2));
+		} finally {
+			repository.deleteAllById(ids.subList(0, 2));
+		}
+	}
+
+	@Test
+	@DisplayName("Deve percorrer os livros filtrados em ordem de id")
+	public void streamAllTest() {
+		Book first = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("As aventuras").build());
+		entityManager.persist(Book.builder().isbn("2").author("Ciclano").title("Direito Civil").build());
+		Book third = entityManager.persist(Book.builder().isbn("3").author("Fulano").title("Mais aventuras").build());
+
+		try (Stream<BookView> books = repository.streamAll(null, "%fulano%", null)) {
+			assertThat(books.map(BookView::getId).collect(Collectors.toList())).containsExactly(first.getId(), third.getId());
+		}
+	}
+
+	@Test
+	@DisplayName("Deve ler as colunas dos livros informados em ordem de id")
+	public void findViewsByIdInTest() {
+		Book first = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("As aventuras").build());
+		entityManager.persist(Book.builder().isbn("2").author("Ciclano").title("Direito Civil").build());
+		Book third = entityManager.persist(Book.builder().isbn("3").author("Fulano").title("Mais aventuras").build());
+
+		List<BookView> views = repository.findViewsByIdIn(Arrays.asList(third.getId(), first.getId()));
+
+		assertThat(views).extracting(BookView::getId).containsExactly(first.getId(), third.getId());
+		assertThat(views).extracting(BookView::getTitle).containsExactly("As aventuras", "Mais aventuras");
+	}
+
+	@Test
+	@DisplayName("Deve carregar vários livros por id em uma única consulta")
+	public void findAllByIdQueryBudgetTest() {
+		Book first = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("As aventuras").build());
+		Book second = entityManager.persist(Book.builder().isbn("2").author("Ciclano").title("Direito Civil").build());
+		entityManager.flush();
+		entityManager.clear();
+
+		assertMaxQueries(1, () -> assertThat(repository.findAllById(Arrays.asList(first.getId(), second.getId()))).hasSize(2));
+	}
+
+	@Test
+	@DisplayName("Deve incrementar a versão e a data de alteração ao atualizar um livro")
+	public void versionTest() {
+		Book book = entityManager.persistFlushFind(createNewBook());
+		Instant created = book.getUpdatedAt();
+		assertThat(book.getVersion()).isZero();
+
+		book.setTitle("Outro titulo");
+		entityManager.flush();
+
+		assertThat(book.getVersion()).isEqualTo(1L);
+		assertThat(book.getUpdatedAt()).isAfterOrEqualTo(created);
+	}
+
+	@Test
+	@DisplayName("Deve listar apenas os livros sem empréstimo ativo")
+	public void findAvailableTest() {
+		Book available = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("As aventuras").build());
+		Book loaned = entityManager.persist(Book.builder().isbn("2").author("Fulano").title("Mais aventuras").build());
+		entityManager.persist(Loan.builder().book(loaned).customer("Fulano").loanDate(LocalDate.now()).build());
+
+		Page<Book> page = repository.findAvailable("%aventuras%", null, null, PageRequest.of(0, 10));
+
+		assertThat(page.getContent()).containsExactly(available);
+		assertThat(page.getTotalElements()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve resumir a tabela de livros para conferir o snapshot do catálogo")
+	public void catalogStatsTest() {
+		assertThat(repository.catalogStats().getBooks()).isZero();
+		assertThat(repository.catalogStats().getMaxId()).isNull();
+
+		Book first = entityManager.persistFlushFind(createNewBook());
+		Book second = entityManager.persistFlushFind(Book.builder().isbn("456").author("Fulano").title("Outro").build());
+
+		CatalogStatsView stats = repository.catalogStats();
+		assertThat(stats.getBooks()).isEqualTo(2L);
+		assertThat(stats.getMaxId()).isEqualTo(Math.max(first.getId(), second.getId()));
+		assertThat(stats.getLastUpdate()).isEqualTo(second.getUpdatedAt());
+	}
+
+	@Test
+	@DisplayName("Deve listar o delta do snapshot do catálogo: livros alterados, incluídos e ids existentes")
+	public void snapshotDeltaTest() {
+		Book first = entityManager.persistFlushFind(createNewBook());
+		Book second = entityManager.persistFlushFind(Book.builder().isbn("456").author("Fulano").title("Outro").build());
+		Instant since = second.getUpdatedAt().plusSeconds(1);
+		Book third = entityManager.persistFlushFind(Book.builder().isbn("789").author("Fulano").title("Novo").build());
+
+		assertThat(repository.findViewsChangedSince(since, second.getId())).extracting(BookView::getId)
+				.containsExactly(third.getId());
+		assertThat(repository.findViewsChangedSince(first.getUpdatedAt(), third.getId())).extracting(BookView::getId)
+				.contains(first.getId(), second.getId(), third.getId());
+		assertThat(repository.findViewsAfter(first.getId())).extracting(BookView::getId)
+				.containsExactly(second.getId(), third.getId());
+		assertThat(repository.countByIdLessThanEqual(second.getId())).isEqualTo(2L);
+		try (Stream<Long> ids = repository.streamIdsUpTo(second.getId())) {
+			assertThat(ids).containsExactly(first.getId(), second.getId());
+		}
+	}
+
 	public Book createNewBook() {
 		return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
 	}
@@ -0,0 +1,155 @@
+package api.model.repositoryTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import javax.persistence.PersistenceException;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import api.model.entity.Book;
+import api.model.entity.Loan;
+import api.model.projection.LoanView;
+import api.model.projection.OverdueLoanView;
+import api.model.repository.LoanRepository;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class LoanRepositoryTest {
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	@Autowired
+	LoanRepository repository;
+
+	@Test
+	@DisplayName("Deve indicar que o livro possui empréstimo ativo")
+	public void existsActiveLoanTest() {
+		Book book = entityManager.persist(createNewBook());
+		entityManager.persist(createLoan(book));
+
+		assertThat(repository.existsByActiveBookId(book.getId())).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve liberar o livro quando o empréstimo for devolvido")
+	public void returnedLoanTest() {
+		Book book = entityManager.persist(createNewBook());
+		Loan loan = entityManager.persist(createLoan(book));
+
+		loan.setReturned(true);
+		entityManager.flush();
+
+		assertThat(repository.existsByActiveBookId(book.getId())).isFalse();
+		assertThat(loan.getVersion()).isEqualTo(1L);
+	}
+
+	@Test
+	@DisplayName("Não deve permitir dois empréstimos ativos do mesmo livro")
+	public void duplicatedActiveLoanTest() {
+		Book book = entityManager.persist(createNewBook());
+		entityManager.persistAndFlush(createLoan(book));
+
+		Throwable exception = catchThrowable(() -> entityManager.persistAndFlush(createLoan(book)));
+
+		assertThat(exception).isInstanceOf(PersistenceException.class);
+	}
+
+	@Test
+	@DisplayName("Deve paginar por chave apenas os empréstimos não devolvidos anteriores à data de corte")
+	public void findOverdueAfterTest() {
+		LocalDate today = LocalDate.now();
+		Book first = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("Um").build());
+		Book second = entityManager.persist(Book.builder().isbn("2").author("Fulano").title("Dois").build());
+		Book third = entityManager.persist(Book.builder().isbn("3").author("Fulano").title("Tres").build());
+		Book fourth = entityManager.persist(Book.builder().isbn("4").author("Fulano").title("Quatro").build());
+		Loan overdue = entityManager.persist(Loan.builder().book(first).customer("Fulano").loanDate(today.minusDays(30)).returned(false).build());
+		Loan nextOverdue = entityManager.persist(Loan.builder().book(second).customer("Ciclano").loanDate(today.minusDays(20)).returned(false).build());
+		entityManager.persist(Loan.builder().book(third).customer("Fulano").loanDate(today.minusDays(30)).returned(true).build());
+		entityManager.persist(Loan.builder().book(fourth).customer("Fulano").loanDate(today).returned(false).build());
+
+		List<OverdueLoanView> page = repository.findOverdueAfter(0L, today.minusDays(14), PageRequest.of(0, 1));
+		List<OverdueLoanView> next = repository.findOverdueAfter(page.get(0).getId(), today.minusDays(14), PageRequest.of(0, 1));
+
+		assertThat(page).extracting(OverdueLoanView::getId).containsExactly(overdue.getId());
+		assertThat(page.get(0).getIsbn()).isEqualTo("1");
+		assertThat(next).extracting(OverdueLoanView::getId).containsExactly(nextOverdue.getId());
+	}
+
+	@Test
+	@DisplayName("Deve percorrer os empréstimos em atraso pelo índice (returned, id), sem varrer a tabela")
+	public void findOverdueAfterIndexTest() {
+		String plan = String.valueOf(entityManager.getEntityManager()
+				.createNativeQuery("explain select l.id from loan l where l.returned = false and l.id > 0"
+						+ " and l.loan_date < current_date order by l.id")
+				.getSingleResult());
+
+		assertThat(plan).containsIgnoringCase("idx_loan_returned_id");
+	}
+
+	@Test
+	@DisplayName("Deve paginar por chave os livros com empréstimo ativo")
+	public void findActiveBookIdsAfterTest() {
+		Book loaned = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("Um").build());
+		Book returned = entityManager.persist(Book.builder().isbn("2").author("Fulano").title("Dois").build());
+		entityManager.persist(createLoan(loaned));
+		entityManager.persist(Loan.builder().book(returned).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+
+		assertThat(repository.findActiveBookIdsAfter(0L, PageRequest.of(0, 10))).containsExactly(loaned.getId());
+		assertThat(repository.findActiveBookIdsAfter(loaned.getId(), PageRequest.of(0, 10))).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve indicar quais dos livros informados têm empréstimo ativo")
+	public void findActiveBookIdsInTest() {
+		Book loaned = entityManager.persist(Book.builder().isbn("1").author("Fulano").title("Um").build());
+		Book returned = entityManager.persist(Book.builder().isbn("2").author("Fulano").title("Dois").build());
+		entityManager.persist(createLoan(loaned));
+		entityManager.persist(Loan.builder().book(returned).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+
+		assertThat(repository.findActiveBookIdsIn(List.of(loaned.getId(), returned.getId()))).containsExactly(loaned.getId());
+	}
+
+	@Test
+	@DisplayName("Deve listar os empréstimos do livro e do cliente do mais recente para o mais antigo")
+	public void findByBookAndCustomerTest() {
+		Book book = entityManager.persist(createNewBook());
+		Book other = entityManager.persist(Book.builder().isbn("456").author("Fulano").title("Outro").build());
+		Loan first = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+		Loan second = entityManager.persist(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).returned(false).build());
+		Loan third = entityManager.persist(Loan.builder().book(other).customer("Fulano").loanDate(LocalDate.now()).returned(false).build());
+
+		Page<LoanView> byBook = repository.findByBook(book.getId(), PageRequest.of(0, 10));
+		Page<LoanView> byCustomer = repository.findByCustomer("Fulano", PageRequest.of(0, 1));
+		Page<LoanView> byBoth = repository.findByBookAndCustomer(book.getId(), "Fulano", PageRequest.of(0, 10));
+
+		assertThat(byBook.getContent()).extracting(LoanView::getId).containsExactly(second.getId(), first.getId());
+		assertThat(byBook.getContent().get(0).getIsbn()).isEqualTo("123");
+		assertThat(byCustomer.getContent()).extracting(LoanView::getId).containsExactly(third.getId());
+		assertThat(byCustomer.getTotalElements()).isEqualTo(2);
+		assertThat(byBoth.getContent()).extracting(LoanView::getReturned).containsExactly(true);
+	}
+
+	private Book createNewBook() {
+		return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
+	}
+
+	private Loan createLoan(Book book) {
+		return Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(false).build();
+	}
+
+}
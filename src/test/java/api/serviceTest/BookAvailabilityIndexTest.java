@@ -0,0 +1,77 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import api.model.repository.LoanRepository;
+import api.service.availability.BookAvailabilityIndex;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookAvailabilityIndexTest {
+
+	BookAvailabilityIndex index;
+
+	@MockBean
+	LoanRepository repository;
+
+	@BeforeEach
+	public void setup() {
+		Mockito.when(repository.findActiveBookIdsAfter(Mockito.eq(0L), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(1L, 65L, 1_000_000L));
+		index = new BookAvailabilityIndex(repository, true);
+	}
+
+	@Test
+	@DisplayName("Deve carregar os livros com empréstimo ativo")
+	public void warmTest() {
+		assertThat(index.isReady()).isFalse();
+		index.warm();
+
+		assertThat(index.isReady()).isTrue();
+		assertThat(index.isAvailable(1L)).isFalse();
+		assertThat(index.isAvailable(65L)).isFalse();
+		assertThat(index.isAvailable(1_000_000L)).isFalse();
+		assertThat(index.isAvailable(2L)).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve emprestar um livro só uma vez até ele ser devolvido")
+	public void tryLoanTest() {
+		index.warm();
+
+		assertThat(index.tryLoan(2L)).isTrue();
+		assertThat(index.tryLoan(2L)).isFalse();
+		assertThat(index.tryLoan(1L)).isFalse();
+
+		index.release(2L);
+		assertThat(index.isAvailable(2L)).isTrue();
+		assertThat(index.tryLoan(2L)).isTrue();
+	}
+
+	@Test
+	@DisplayName("Não deve carregar quando desabilitado")
+	public void disabledTest() {
+		Mockito.when(repository.findActiveBookIdsAfter(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Collections.emptyList());
+		BookAvailabilityIndex disabled = new BookAvailabilityIndex(repository, false);
+
+		disabled.warm();
+
+		assertThat(disabled.isReady()).isFalse();
+		Mockito.verifyNoInteractions(repository);
+	}
+
+}
@@ -0,0 +1,133 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import api.model.entity.Book;
+import api.model.repository.BookRepository;
+import api.service.search.BookSearchIndex;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookSearchIndexTest {
+
+	BookSearchIndex index;
+
+	@MockBean
+	BookRepository repository;
+
+	@BeforeEach
+	public void setup() {
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(
+					Book.builder().id(1L).title("As Aventuras de Arthur").author("Fulano").isbn("978-85-123").build(),
+					Book.builder().id(2L).title("Arthur").author("Ciclano").isbn("978-85-456").build(),
+					Book.builder().id(3L).title("Direito Civil").author("Artur Souza").isbn("111").build()));
+		index = new BookSearchIndex(repository, true);
+		index.warm();
+	}
+
+	@Test
+	@DisplayName("Deve estar pronto após carregar os livros do banco")
+	public void readyAfterWarmTest() {
+		assertThat(index.isReady()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve buscar por prefixo ordenando pela relevância")
+	public void prefixSearchRankingTest() {
+		// "arthur" casa exatamente com o título dos livros 1 e 2; "art" do livro 3 é só prefixo do autor
+		assertThat(index.search(Book.builder().title("arthur").build())).containsExactly(1L, 2L);
+		assertThat(index.search(Book.builder().title("art").build())).containsExactly(1L, 2L);
+		assertThat(index.search(Book.builder().author("art").build())).containsExactly(3L);
+	}
+
+	@Test
+	@DisplayName("Deve exigir todos os termos e ignorar acentos e maiúsculas")
+	public void tokenizedSearchTest() {
+		assertThat(index.search(Book.builder().title("AVENTURAS arthur").build())).containsExactly(1L);
+		assertThat(index.search(Book.builder().title("direito").author("sóuza").build())).containsExactly(3L);
+		assertThat(index.search(Book.builder().title("direito").author("fulano").build())).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve buscar isbn por prefixo ignorando hífens")
+	public void isbnSearchTest() {
+		assertThat(index.search(Book.builder().isbn("97885").build())).containsExactly(1L, 2L);
+		assertThat(index.search(Book.builder().isbn("978-85-4").build())).containsExactly(2L);
+	}
+
+	@Test
+	@DisplayName("Deve refletir cadastro, alteração e exclusão de livros")
+	public void keepInSyncTest() {
+		index.index(Book.builder().id(4L).title("Arthur e o dragão").author("Beltrano").isbn("222").build());
+		index.index(Book.builder().id(2L).title("Memórias").author("Ciclano").isbn("978-85-456").build());
+		index.remove(1L);
+
+		assertThat(index.search(Book.builder().title("arthur").build())).containsExactly(4L);
+		assertThat(index.search(Book.builder().title("memorias").build())).containsExactly(2L);
+	}
+
+	@Test
+	@DisplayName("Deve paginar todos os livros em ordem de id quando o filtro não tiver termos")
+	public void findWithoutTermsTest() {
+		Page<Long> page = index.find(new Book(), id -> id != 2L, PageRequest.of(0, 1));
+
+		assertThat(page.getContent()).containsExactly(1L);
+		assertThat(page.getTotalElements()).isEqualTo(2);
+		assertThat(index.find(new Book(), id -> id != 2L, PageRequest.of(1, 1)).getContent()).containsExactly(3L);
+	}
+
+	@Test
+	@DisplayName("Deve paginar por cursor em ordem de id, a partir do último id e até o limite")
+	public void findAfterTest() {
+		// "a" casa com os tokens as, aventuras e arthur do livro 1: o livro aparece uma única vez
+		assertThat(index.findAfter(Book.builder().title("a").build(), 0L, 10)).containsExactly(1L, 2L);
+		assertThat(index.findAfter(Book.builder().title("a").build(), 0L, 1)).containsExactly(1L);
+		assertThat(index.findAfter(Book.builder().title("a").build(), 1L, 10)).containsExactly(2L);
+		assertThat(index.findAfter(Book.builder().title("d").author("art").build(), 0L, 10)).containsExactly(3L);
+		assertThat(index.findAfter(Book.builder().title("d").author("art").build(), 3L, 10)).isEmpty();
+		assertThat(index.findAfter(Book.builder().title("aventuras").author("ciclano").build(), 0L, 10)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve paginar pela relevância quando houver termos e nenhuma ordenação")
+	public void findByRelevanceTest() {
+		index.index(Book.builder().id(4L).title("Arthuriana").author("Beltrano").isbn("222").build());
+
+		Page<Long> first = index.find(Book.builder().title("arthur").build(), id -> true, PageRequest.of(0, 2));
+		Page<Long> second = index.find(Book.builder().title("arthur").build(), id -> true, PageRequest.of(1, 2));
+
+		// casamento exato (1 e 2) antes do prefixo (4)
+		assertThat(first.getContent()).containsExactly(1L, 2L);
+		assertThat(second.getContent()).containsExactly(4L);
+		assertThat(second.getTotalElements()).isEqualTo(3);
+		assertThat(index.find(Book.builder().title("arthur").build(), id -> id != 1L, PageRequest.of(0, 1)).getContent())
+			.containsExactly(2L);
+	}
+
+	@Test
+	@DisplayName("Deve ordenar em memória pelos valores indexados quando a ordenação for pedida")
+	public void findSortedTest() {
+		assertThat(index.find(new Book(), id -> true, PageRequest.of(0, 10, Sort.by("title"))).getContent())
+			.containsExactly(2L, 1L, 3L);
+		assertThat(index.find(Book.builder().title("arthur").build(), id -> true,
+				PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "author"))).getContent()).containsExactly(1L);
+		assertThat(index.isSortable(Sort.by("updatedAt"))).isFalse();
+	}
+
+}
@@ -4,7 +4,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,20 +16,29 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import api.exception.BusinessException;
+import api.exception.UnavailableException;
 import api.model.entity.Book;
+import api.model.projection.BookView;
 import api.model.repository.BookRepository;
+import api.model.repository.LoanRepository;
 import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
 import api.service.impl.BookServiceImpl;
+import api.service.search.BookSearchIndex;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -35,10 +47,12 @@ public class BookServiceTest {
 	BookService service;
 	@MockBean
 	BookRepository repository;
+	@MockBean
+	LoanRepository loanRepository;
 
 	@BeforeEach
 	public void setup() {
-		this.service = new BookServiceImpl(repository);
+		this.service = new BookServiceImpl(repository, new BookSearchIndex(repository, false), new BookAvailabilityIndex(loanRepository, false));
 	}
 
 	@Test
@@ -81,6 +95,8 @@ public class BookServiceTest {
 		assertThat(exception)
 		.isInstanceOf(BusinessException.class)
 		.hasMessage("Isbn já cadastrado.");
+		// erro esperado: sem custo de capturar stack trace
+		assertThat(exception.getStackTrace()).isEmpty();
 
 		Mockito.verify(repository, Mockito.never()).save(book);
 
@@ -201,6 +217,294 @@ public class BookServiceTest {
 		
 	}
 
+	@Test
+	@DisplayName("Deve obter um livro pelo isbn")
+	public void getBookByIsbnTest() {
+		Book book = createValidBook();
+		book.setId(1L);
+		Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.of(book));
+		Mockito.when(repository.findById(1L)).thenReturn(Optional.of(book));
+
+		Optional<Book> first = service.getBookByIsbn("123");
+		Optional<Book> second = service.getBookByIsbn("123");
+
+		assertThat(first).contains(book);
+		assertThat(second).contains(book);
+		// a segunda busca é resolvida pelo cache isbn -> id, via chave primária
+		Mockito.verify(repository, Mockito.times(1)).findByIsbn("123");
+		Mockito.verify(repository, Mockito.times(1)).findById(1L);
+	}
+
+	@Test
+	@DisplayName("Deve retornar vazio ao buscar livro por isbn nulo ou em branco")
+	public void getBookByBlankIsbnTest() {
+		assertThat(service.getBookByIsbn(null)).isEmpty();
+		assertThat(service.getBookByIsbn(" ")).isEmpty();
+		Mockito.verify(repository, Mockito.never()).findByIsbn(Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Deve retornar vazio ao buscar livro por isbn inexistente")
+	public void getBookByIsbnNotExistentTest() {
+		Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.empty());
+
+		Optional<Book> book = service.getBookByIsbn("123");
+
+		assertThat(book).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve lançar erro de negócio quando o índice único de isbn rejeitar o cadastro")
+	public void saveBookWithConcurrentDuplicatedIsbnTest() {
+		Book book = createValidBook();
+		Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+		Mockito.when(repository.save(book)).thenThrow(new DataIntegrityViolationException("uk_book_isbn"));
+
+		Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+		assertThat(exception)
+		.isInstanceOf(BusinessException.class)
+		.hasMessage("Isbn já cadastrado.");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	@DisplayName("Deve buscar vários livros por id em uma única consulta, sem repetições e na ordem informada")
+	public void getByIdsTest() {
+		Book first = Book.builder().id(1L).isbn("1").build();
+		Book second = Book.builder().id(2L).isbn("2").build();
+		Mockito.when(repository.findAllByIdCachedFirst(Mockito.anyCollection())).thenReturn(Arrays.asList(first, second));
+
+		List<Book> books = service.getByIds(Arrays.asList(2L, 3L, 1L, 2L));
+
+		assertThat(books).containsExactly(second, first);
+		ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(repository, Mockito.times(1)).findAllByIdCachedFirst(ids.capture());
+		assertThat(ids.getValue()).containsExactly(2L, 3L, 1L);
+	}
+
+	@Test
+	@DisplayName("Deve buscar vários livros por isbn usando o cache isbn -> id para os já conhecidos")
+	public void getByIsbnsTest() {
+		Book known = Book.builder().id(1L).isbn("111").build();
+		Book unknown = Book.builder().id(2L).isbn("222").build();
+		Mockito.when(repository.findByIsbn("111")).thenReturn(Optional.of(known));
+		service.getBookByIsbn("111");
+		Mockito.when(repository.findAllByIdCachedFirst(Mockito.anyCollection())).thenReturn(Arrays.asList(known));
+		Mockito.when(repository.findByIsbnIn(Arrays.asList("222", "999"))).thenReturn(Arrays.asList(unknown));
+
+		List<Book> books = service.getByIsbns(Arrays.asList("222", "111", "999", "111"));
+
+		assertThat(books).containsExactly(unknown, known);
+		Mockito.verify(repository, Mockito.times(1)).findByIsbnIn(Arrays.asList("222", "999"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	@DisplayName("Deve salvar em lote apenas os livros com isbn inédito")
+	public void saveAllTest() {
+		Book existing = createValidBook();
+		Book newBook = Book.builder().isbn("456").author("Fulano").title("Outro livro").build();
+		Book repeated = Book.builder().isbn("456").author("Ciclano").title("Repetido").build();
+
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.singleton("123"));
+		Mockito.when(repository.saveAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+		List<Book> saved = service.saveAll(Arrays.asList(existing, newBook, repeated));
+
+		assertThat(saved).containsExactly(newBook);
+		Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+	}
+
+	@Test
+	@DisplayName("Deve filtrar livros pelo índice de busca quando ele estiver carregado")
+	public void findBookIndexedTest() {
+		Book book = createValidBook();
+		book.setId(1L);
+		Book other = Book.builder().id(2L).isbn("456").author("Ciclano").title("Outro livro").build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(book, other));
+		Mockito.when(repository.findAllById(Arrays.asList(1L))).thenReturn(Arrays.asList(book));
+
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		searchIndex.warm();
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, new BookAvailabilityIndex(loanRepository, false));
+
+		Page<Book> result = indexedService.find(Book.builder().title("aventu").build(), PageRequest.of(0, 10));
+
+		assertThat(result.getTotalElements()).isEqualTo(1);
+		assertThat(result.getContent()).containsExactly(book);
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Example<Book>>any(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Deve listar apenas os livros disponíveis usando os índices em memória")
+	public void findAvailableIndexedTest() {
+		Book book = createValidBook();
+		book.setId(1L);
+		Book loaned = Book.builder().id(2L).isbn("456").author("Fulano").title("Mais aventuras").build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(book, loaned));
+		Mockito.when(loanRepository.findActiveBookIdsAfter(Mockito.eq(0L), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(2L));
+		Mockito.when(repository.findAllById(Arrays.asList(1L))).thenReturn(Arrays.asList(book));
+
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		searchIndex.warm();
+		BookAvailabilityIndex availability = new BookAvailabilityIndex(loanRepository, true);
+		availability.warm();
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, availability);
+
+		Page<Book> result = indexedService.findAvailable(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+
+		assertThat(result.getTotalElements()).isEqualTo(1);
+		assertThat(result.getContent()).containsExactly(book);
+		Mockito.verify(repository, Mockito.never()).findAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Deve listar os livros disponíveis sem filtro e com ordenação usando os índices em memória")
+	public void findAvailableUnfilteredSortedTest() {
+		Book book = createValidBook();
+		book.setId(1L);
+		Book loaned = Book.builder().id(2L).isbn("456").author("Fulano").title("Mais aventuras").build();
+		Book other = Book.builder().id(3L).isbn("789").author("Ciclano").title("Outro livro").build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(book, loaned, other));
+		Mockito.when(loanRepository.findActiveBookIdsAfter(Mockito.eq(0L), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(2L));
+		Mockito.when(repository.findAllById(Mockito.anyIterable())).thenAnswer(invocation -> {
+			List<Book> found = new ArrayList<>();
+			invocation.<Iterable<Long>>getArgument(0).forEach(id -> found.add(id == 1L ? book : other));
+			return found;
+		});
+
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		searchIndex.warm();
+		BookAvailabilityIndex availability = new BookAvailabilityIndex(loanRepository, true);
+		availability.warm();
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, availability);
+
+		Page<Book> unfiltered = indexedService.findAvailable(new Book(), PageRequest.of(0, 10));
+		Page<Book> sorted = indexedService.findAvailable(new Book(), PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "title")));
+
+		assertThat(unfiltered.getContent()).containsExactly(book, other);
+		assertThat(sorted.getContent()).containsExactly(other);
+		assertThat(sorted.getTotalElements()).isEqualTo(2);
+		Mockito.verify(repository, Mockito.never()).findAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Deve buscar pelo índice com a mesma semântica com e sem ordenação, e recusar enquanto ele carrega")
+	public void findIndexedSemanticsTest() {
+		Book assis = Book.builder().id(1L).isbn("123").author("Machado de Assis").title("Dom Casmurro").build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(assis));
+		Mockito.when(repository.findAllById(Arrays.asList(1L))).thenReturn(Arrays.asList(assis));
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, new BookAvailabilityIndex(loanRepository, false));
+
+		assertThrows(UnavailableException.class, () -> indexedService.find(Book.builder().author("assis").build(), PageRequest.of(0, 10)));
+		searchIndex.warm();
+
+		Pageable sorted = PageRequest.of(0, 10, Sort.by("title"));
+		assertThat(indexedService.find(Book.builder().author("ssis").build(), PageRequest.of(0, 10))).isEmpty();
+		assertThat(indexedService.find(Book.builder().author("ssis").build(), sorted)).isEmpty();
+		assertThat(indexedService.find(Book.builder().author("assis").build(), sorted)).containsExactly(assis);
+		assertThrows(BusinessException.class, () -> indexedService.find(new Book(), PageRequest.of(0, 10, Sort.by("updatedAt"))));
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Example<Book>>any(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Deve aplicar o mesmo filtro do índice no find, na paginação por cursor e na exportação")
+	public void sameSemanticsAcrossFindCursorAndExportTest() {
+		Book assis = Book.builder().id(1L).isbn("123").author("Machado de Assis").title("Dom Casmurro").build();
+		Book other = Book.builder().id(2L).isbn("456").author("Ciclano").title("Outro livro").build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(assis, other));
+		Mockito.when(repository.findAllById(Arrays.asList(1L))).thenReturn(Arrays.asList(assis));
+		Mockito.when(repository.findViewsByIdIn(Arrays.asList(1L))).thenReturn(Arrays.asList(view(assis)));
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		searchIndex.warm();
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, new BookAvailabilityIndex(loanRepository, false));
+
+		for (String term : Arrays.asList("ssis", "assis")) {
+			Book filter = Book.builder().author(term).build();
+			List<Book> found = indexedService.find(filter, PageRequest.of(0, 10)).getContent();
+			List<Book> after = indexedService.findAfter(filter, null, 10);
+			List<Long> exported = new ArrayList<>();
+			indexedService.export(filter, book -> exported.add(book.getId()));
+
+			List<Long> expected = term.equals("assis") ? Arrays.asList(1L) : Collections.emptyList();
+			assertThat(found).extracting(Book::getId).isEqualTo(expected);
+			assertThat(after).extracting(Book::getId).isEqualTo(expected);
+			assertThat(exported).isEqualTo(expected);
+		}
+		assertThat(indexedService.findAfter(Book.builder().author("assis").build(), 1L, 10)).isEmpty();
+		Mockito.verify(repository, Mockito.never()).findPageAfter(Mockito.anyLong(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(Pageable.class));
+		Mockito.verify(repository, Mockito.never()).streamAll(Mockito.any(), Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Deve responder a ordenação não suportada com uma mensagem fixa")
+	public void unsupportedSortMessageTest() {
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Collections.emptyList());
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		searchIndex.warm();
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, new BookAvailabilityIndex(loanRepository, false));
+
+		Throwable exception = Assertions.catchThrowable(() -> indexedService.find(new Book(), PageRequest.of(0, 10, Sort.by("<script>"))));
+
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Ordenação não suportada.");
+	}
+
+	@Test
+	@DisplayName("Deve conferir no banco, em bloco, a disponibilidade dos livros do índice enquanto a disponibilidade carrega")
+	public void findAvailableWhileAvailabilityLoadingTest() {
+		Book book = createValidBook();
+		book.setId(1L);
+		Book loaned = Book.builder().id(2L).isbn("456").author("Fulano").title("Mais aventuras").build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Arrays.asList(book, loaned));
+		Mockito.when(loanRepository.findActiveBookIdsIn(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(2L));
+		Mockito.when(repository.findAllById(Arrays.asList(1L))).thenReturn(Arrays.asList(book));
+		BookSearchIndex searchIndex = new BookSearchIndex(repository, true);
+		searchIndex.warm();
+		BookService indexedService = new BookServiceImpl(repository, searchIndex, new BookAvailabilityIndex(loanRepository, false));
+
+		Page<Book> result = indexedService.findAvailable(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+
+		assertThat(result.getContent()).containsExactly(book);
+		assertThat(result.getTotalElements()).isEqualTo(1);
+		Mockito.verify(repository, Mockito.never()).findAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(Pageable.class));
+	}
+
+	private static BookView view(Book book) {
+		return new BookView() {
+			@Override
+			public Long getId() {
+				return book.getId();
+			}
+
+			@Override
+			public String getTitle() {
+				return book.getTitle();
+			}
+
+			@Override
+			public String getAuthor() {
+				return book.getAuthor();
+			}
+
+			@Override
+			public String getIsbn() {
+				return book.getIsbn();
+			}
+		};
+	}
+
 	private Book createValidBook() {
 		return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
 	}
@@ -0,0 +1,275 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import api.model.entity.Book;
+import api.model.projection.BookView;
+import api.model.projection.CatalogStatsView;
+import api.model.repository.BookRepository;
+import api.service.memory.CatalogSnapshot;
+import api.service.memory.CatalogSnapshotService;
+import api.service.memory.CatalogWatermark;
+import api.service.memory.CompactBookStore;
+import api.service.search.BookSearchIndex;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class CatalogSnapshotTest {
+
+	static final Instant NOW = Instant.parse("2026-10-18T10:00:00Z");
+	static final Instant LAST_UPDATE = Instant.parse("2026-10-18T09:30:00.123456Z");
+	static final Duration DELTA_MARGIN = Duration.ofMinutes(5);
+
+	@TempDir
+	Path dir;
+
+	@MockBean
+	BookRepository bookRepository;
+
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	Path file;
+	BookSearchIndex searchIndex;
+
+	@BeforeEach
+	public void setup() {
+		file = dir.resolve("catalog.snap");
+		searchIndex = new BookSearchIndex(bookRepository, true);
+		stats(3L, 30L, LAST_UPDATE);
+		Mockito.when(bookRepository.countByIdLessThanEqual(30L)).thenReturn(3L);
+	}
+
+	@Test
+	@DisplayName("Deve gravar e ler o snapshot com as mesmas colunas e watermark")
+	public void writeAndReadTest() throws IOException {
+		snapshot(NOW).write(file);
+
+		CatalogSnapshot read = CatalogSnapshot.read(file);
+
+		assertThat(read.getCreatedAt()).isEqualTo(NOW);
+		assertThat(read.getWatermark()).isEqualTo(new CatalogWatermark(3L, 30L, LAST_UPDATE));
+		CompactBookStore store = read.getStore();
+		assertThat(store.size()).isEqualTo(3);
+		assertThat(store.book(store.rowOf(30L)).getTitle()).isEqualTo("Memórias Póstumas");
+		assertThat(store.book(store.rowOfIsbn("002")).getId()).isEqualTo(20L);
+		assertThat(store.book(store.rowOf(10L)).getAuthor()).isNull();
+		assertThat(store.score(store.rowOf(30L), CompactBookStore.filter(Book.builder().title("POSTUMAS").build()))).isPositive();
+		try (Stream<Path> files = Files.list(dir)) {
+			assertThat(files).containsExactly(file);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve gravar snapshots simultâneos sem misturar os arquivos temporários")
+	public void concurrentWriteTest() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Long>> writes = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				CatalogSnapshot snapshot = snapshot(NOW.plusSeconds(i));
+				writes.add(executor.submit(() -> snapshot.write(file)));
+			}
+			for (Future<Long> write : writes) {
+				write.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(CatalogSnapshot.read(file).getStore().size()).isEqualTo(3);
+		try (Stream<Path> files = Files.list(dir)) {
+			assertThat(files).containsExactly(file);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve recusar snapshot corrompido, truncado ou de outro formato")
+	public void corruptedTest() throws IOException {
+		snapshot(NOW).write(file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		bytes[bytes.length - 1] ^= 1;
+		Files.write(file, bytes);
+		assertThat(catchThrowable(() -> CatalogSnapshot.read(file))).isInstanceOf(IOException.class)
+				.hasMessageContaining("checksum");
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(bytes.length / 2);
+		}
+		assertThat(catchThrowable(() -> CatalogSnapshot.read(file))).isInstanceOf(IOException.class);
+
+		Files.write(file, "{\"id\":1}".getBytes());
+		assertThat(catchThrowable(() -> CatalogSnapshot.read(file))).isInstanceOf(IOException.class);
+	}
+
+	@Test
+	@DisplayName("Deve usar o snapshot enquanto ele não passar de max-age, sem conferir a tabela de empréstimos")
+	public void maxAgeTest() throws IOException {
+		snapshot(NOW).write(file);
+
+		assertThat(service(NOW.plusSeconds(60)).readCurrent()).isPresent();
+		assertThat(service(NOW.plus(Duration.ofHours(2))).readCurrent()).isEmpty();
+
+		Files.delete(file);
+		assertThat(service(NOW).readCurrent()).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve aplicar no snapshot os livros alterados, incluídos e excluídos depois dele")
+	public void deltaTest() throws IOException {
+		snapshot(NOW).write(file);
+		stats(3L, 40L, LAST_UPDATE.plusSeconds(60));
+		List<BookView> changed = Arrays.asList(view(10L, "Sem autor", "Assis", "001"), view(40L, "Quincas Borba", "Machado", "004"));
+		Mockito.when(bookRepository.findViewsChangedSince(LAST_UPDATE.minus(DELTA_MARGIN), 30L)).thenReturn(changed);
+		Mockito.when(bookRepository.countByIdLessThanEqual(30L)).thenReturn(2L);
+		Mockito.when(bookRepository.streamIdsUpTo(30L)).thenReturn(Stream.of(10L, 30L));
+
+		CatalogSnapshot current = service(NOW).readCurrent().get();
+
+		CompactBookStore store = current.getStore();
+		assertThat(store.size()).isEqualTo(3);
+		assertThat(store.rowOf(20L)).isNegative();
+		assertThat(store.rowOfIsbn("002")).isNegative();
+		assertThat(store.book(store.rowOf(10L)).getAuthor()).isEqualTo("Assis");
+		assertThat(store.book(store.rowOfIsbn("004")).getId()).isEqualTo(40L);
+		assertThat(store.book(store.rowOf(30L)).getTitle()).isEqualTo("Memórias Póstumas");
+		assertThat(store.score(store.rowOf(40L), CompactBookStore.filter(Book.builder().title("quincas").build()))).isPositive();
+		assertThat(current.getWatermark().getMaxBookId()).isEqualTo(40L);
+	}
+
+	@Test
+	@DisplayName("Deve conferir os ids pela chave primária só quando a quantidade de livros do snapshot não bate")
+	public void updatesOnlyDeltaTest() throws IOException {
+		snapshot(NOW).write(file);
+		List<BookView> changed = Collections.singletonList(view(30L, "Memórias Póstumas de Brás Cubas", "Machado", "003"));
+		Mockito.when(bookRepository.findViewsChangedSince(LAST_UPDATE.minus(DELTA_MARGIN), 30L)).thenReturn(changed);
+
+		CompactBookStore store = service(NOW).readCurrent().get().getStore();
+
+		assertThat(store.book(store.rowOf(30L)).getTitle()).isEqualTo("Memórias Póstumas de Brás Cubas");
+		assertThat(store.size()).isEqualTo(3);
+		Mockito.verify(bookRepository, Mockito.never()).streamIdsUpTo(Mockito.anyLong());
+	}
+
+	@Test
+	@DisplayName("Deve aplicar a alteração confirmada depois do snapshot com updated_at anterior ao watermark")
+	public void lateCommitDeltaTest() throws IOException {
+		// livro 20 gravado (flush) 2s antes da última alteração do watermark, mas confirmado depois da leitura
+		snapshot(NOW).write(file);
+		List<BookView> table = Arrays.asList(view(20L, "Dom Casmurro (2a edição)", "Machado", "002"),
+				view(30L, "Memórias Póstumas", "Machado", "003"));
+		List<Instant> updatedAt = Arrays.asList(LAST_UPDATE.minusSeconds(2), LAST_UPDATE);
+		Mockito.when(bookRepository.findViewsChangedSince(Mockito.any(Instant.class), Mockito.anyLong())).thenAnswer(call -> {
+			Instant since = call.getArgument(0);
+			List<BookView> changed = new ArrayList<>();
+			for (int i = 0; i < table.size(); i++) {
+				if (!updatedAt.get(i).isBefore(since)) {
+					changed.add(table.get(i));
+				}
+			}
+			return changed;
+		});
+
+		CompactBookStore store = service(NOW).readCurrent().get().getStore();
+		CompactBookStore withoutMargin = service(NOW, Duration.ZERO).readCurrent().get().getStore();
+
+		assertThat(store.book(store.rowOf(20L)).getTitle()).isEqualTo("Dom Casmurro (2a edição)");
+		assertThat(withoutMargin.book(withoutMargin.rowOf(20L)).getTitle()).isEqualTo("Dom Casmurro");
+	}
+
+	@Test
+	@DisplayName("Deve carregar o índice de busca do snapshot sem ler o catálogo do banco")
+	public void loadIndexesTest() throws IOException {
+		snapshot(NOW).write(file);
+		CatalogSnapshotService service = service(NOW);
+
+		service.loadIndexes();
+		searchIndex.warm();
+
+		assertThat(searchIndex.isReady()).isTrue();
+		assertThat(searchIndex.search(Book.builder().title("postumas").build())).containsExactly(30L);
+		Mockito.verify(bookRepository, Mockito.never()).findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Deve seguir pelo banco quando o snapshot passou de max-age")
+	public void expiredFallbackTest() throws IOException {
+		snapshot(NOW.minus(Duration.ofHours(2))).write(file);
+
+		service(NOW).loadIndexes();
+
+		assertThat(searchIndex.isReady()).isFalse();
+		Mockito.verify(bookRepository, Mockito.never()).findViewsChangedSince(Mockito.any(), Mockito.anyLong());
+	}
+
+	private CatalogSnapshot snapshot(Instant createdAt) {
+		CompactBookStore store = CompactBookStore.builder()
+				.add(30L, "Memórias Póstumas", "Machado", "003")
+				.add(10L, "Sem autor", null, "001")
+				.add(20L, "Dom Casmurro", "Machado", "002")
+				.build();
+		return new CatalogSnapshot(createdAt, new CatalogWatermark(3L, 30L, LAST_UPDATE), store);
+	}
+
+	private CatalogSnapshotService service(Instant now) {
+		return service(now, DELTA_MARGIN);
+	}
+
+	private CatalogSnapshotService service(Instant now, Duration deltaMargin) {
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		return new CatalogSnapshotService(file, Duration.ofHours(1), deltaMargin, bookRepository, readOnly, searchIndex,
+				Clock.fixed(now, ZoneOffset.UTC));
+	}
+
+	private void stats(Long books, Long maxId, Instant lastUpdate) {
+		CatalogStatsView catalog = Mockito.mock(CatalogStatsView.class);
+		Mockito.when(catalog.getBooks()).thenReturn(books);
+		Mockito.when(catalog.getMaxId()).thenReturn(maxId);
+		Mockito.when(catalog.getLastUpdate()).thenReturn(lastUpdate);
+		Mockito.when(bookRepository.catalogStats()).thenReturn(catalog);
+	}
+
+	private static BookView view(Long id, String title, String author, String isbn) {
+		BookView view = Mockito.mock(BookView.class);
+		Mockito.when(view.getId()).thenReturn(id);
+		Mockito.when(view.getTitle()).thenReturn(title);
+		Mockito.when(view.getAuthor()).thenReturn(author);
+		Mockito.when(view.getIsbn()).thenReturn(isbn);
+		return view;
+	}
+
+}
@@ -0,0 +1,230 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import api.exception.BusinessException;
+import api.model.entity.Book;
+import api.model.repository.BookRepository;
+import api.model.repository.LoanRepository;
+import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.impl.InMemoryBookService;
+import api.service.memory.BookSnapshots;
+import api.service.memory.CompactBookStore;
+import api.service.search.BookSearchIndex;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class InMemoryBookServiceTest {
+
+	BookService service;
+	BookAvailabilityIndex availability;
+
+	@MockBean
+	LoanRepository loanRepository;
+
+	@BeforeEach
+	public void setup() {
+		CompactBookStore store = CompactBookStore.builder()
+				.add(30L, "O Senhor dos Anéis", "Tolkien", "003")
+				.add(10L, "Arthur e a Távola", "Autor", "001")
+				.add(20L, "Rei ARTHUR", "Outro Autor", "002")
+				.add(40L, "Sem autor", null, "004")
+				.build();
+		Mockito.when(loanRepository.findActiveBookIdsAfter(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(Collections.emptyList());
+		availability = new BookAvailabilityIndex(loanRepository, true);
+		service = new InMemoryBookService(store, availability, loanRepository);
+	}
+
+	@Test
+	@DisplayName("Deve obter livro por id e por isbn")
+	public void getByIdAndIsbnTest() {
+		Book book = service.getById(20L).get();
+
+		assertThat(book.getTitle()).isEqualTo("Rei ARTHUR");
+		assertThat(book.getAuthor()).isEqualTo("Outro Autor");
+		assertThat(book.getIsbn()).isEqualTo("002");
+		assertThat(service.getBookByIsbn("003").get().getId()).isEqualTo(30L);
+		assertThat(service.getById(40L).get().getAuthor()).isNull();
+		assertThat(service.getById(99L)).isEmpty();
+		assertThat(service.getById(null)).isEmpty();
+		assertThat(service.getBookByIsbn("999")).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve obter vários livros na ordem informada, sem repetidos")
+	public void getByIdsAndIsbnsTest() {
+		List<Book> byIds = service.getByIds(Arrays.asList(30L, 99L, 10L, 30L));
+		List<Book> byIsbns = service.getByIsbns(Arrays.asList("002", "999", "001", "002"));
+
+		assertThat(byIds).extracting(Book::getId).containsExactly(30L, 10L);
+		assertThat(byIsbns).extracting(Book::getId).containsExactly(20L, 10L);
+	}
+
+	@Test
+	@DisplayName("Deve filtrar pelo início das palavras, sem diferenciar maiúsculas nem acentos, paginando")
+	public void findTest() {
+		Book filter = Book.builder().title("arthur").build();
+
+		Page<Book> first = service.find(filter, PageRequest.of(0, 1));
+		Page<Book> second = service.find(filter, PageRequest.of(1, 1));
+
+		assertThat(first.getTotalElements()).isEqualTo(2);
+		assertThat(first.getContent()).extracting(Book::getId).containsExactly(10L);
+		assertThat(second.getContent()).extracting(Book::getId).containsExactly(20L);
+		assertThat(service.find(Book.builder().title("anéis").author("TOLK").build(), PageRequest.of(0, 10))
+				.getContent()).extracting(Book::getId).containsExactly(30L);
+		assertThat(service.find(Book.builder().author("autor").build(), PageRequest.of(0, 10))
+				.getContent()).extracting(Book::getId).containsExactly(10L, 20L);
+	}
+
+	@Test
+	@DisplayName("Deve buscar e ordenar com as mesmas regras do índice de busca do BookServiceImpl")
+	public void sameSemanticsAsSearchIndexTest() {
+		List<Book> books = Arrays.asList(
+				Book.builder().id(1L).title("Machado de Assis").author("Machado").isbn("978-85-1").build(),
+				Book.builder().id(2L).title("Dom Casmurro").author("Machado de Assis").isbn("97885").build(),
+				Book.builder().id(3L).title("Memórias Póstumas").author("Assis").isbn("123").build(),
+				Book.builder().id(4L).title("Sem autor").author(null).isbn("124").build());
+		CompactBookStore.Builder builder = CompactBookStore.builder();
+		books.forEach(book -> builder.add(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()));
+		BookService memory = new InMemoryBookService(builder.build(), availability, loanRepository);
+		BookRepository bookRepository = Mockito.mock(BookRepository.class);
+		Mockito.when(bookRepository.findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any(Pageable.class)))
+			.thenReturn(books);
+		BookSearchIndex searchIndex = new BookSearchIndex(bookRepository, true);
+		searchIndex.warm();
+
+		List<Book> filters = Arrays.asList(new Book(), Book.builder().title("ssis").build(), Book.builder().author("assis").build(),
+				Book.builder().title("mach").author("mach").build(), Book.builder().title("POSTUMA").build(),
+				Book.builder().isbn("97885").build(), Book.builder().isbn("978-8").build(), Book.builder().author("-").build());
+		List<Pageable> pages = Arrays.asList(PageRequest.of(0, 10), PageRequest.of(1, 1), PageRequest.of(0, 10, Sort.by("title")),
+				PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "author")), PageRequest.of(0, 10, Sort.by("isbn").and(Sort.by("id").descending())));
+		for (Book filter : filters) {
+			for (Pageable page : pages) {
+				Page<Long> expected = searchIndex.find(filter, id -> true, page);
+				Page<Book> actual = memory.find(filter, page);
+				assertThat(actual.getContent()).extracting(Book::getId).as("%s %s", filter, page).isEqualTo(expected.getContent());
+				assertThat(actual.getTotalElements()).isEqualTo(expected.getTotalElements());
+			}
+			List<Long> exported = new ArrayList<>();
+			memory.export(filter, book -> exported.add(book.getId()));
+			List<Long> expected = searchIndex.hasTerms(filter) ? searchIndex.findAfter(filter, 0L, 10) : Arrays.asList(1L, 2L, 3L, 4L);
+			assertThat(exported).as("%s", filter).isEqualTo(expected);
+			assertThat(memory.findAfter(filter, 1L, 10)).extracting(Book::getId)
+				.isEqualTo(expected.stream().filter(id -> id > 1L).collect(Collectors.toList()));
+		}
+
+		assertThat(catchThrowable(() -> memory.find(new Book(), PageRequest.of(0, 10, Sort.by("updatedAt")))))
+				.isInstanceOf(BusinessException.class).hasMessage("Ordenação não suportada.");
+	}
+
+	@Test
+	@DisplayName("Deve listar só os livros sem empréstimo ativo")
+	public void findAvailableTest() {
+		Mockito.when(loanRepository.findActiveBookIdsIn(Mockito.anyCollection())).thenReturn(Arrays.asList(10L));
+		Book filter = Book.builder().title("arthur").build();
+
+		assertThat(service.findAvailable(filter, PageRequest.of(0, 10)).getContent())
+				.extracting(Book::getId).containsExactly(20L);
+
+		availability.warm();
+		availability.markLoaned(20L);
+		assertThat(service.findAvailable(filter, PageRequest.of(0, 10)).getContent())
+				.extracting(Book::getId).containsExactly(10L);
+	}
+
+	@Test
+	@DisplayName("Deve conferir a disponibilidade no banco com uma consulta por bloco quando o índice está desligado")
+	public void findAvailableWithoutIndexTest() {
+		CompactBookStore.Builder builder = CompactBookStore.builder();
+		for (long id = 1; id <= 2500; id++) {
+			builder.add(id, "Livro " + id, "Autor", String.valueOf(id));
+		}
+		Mockito.when(loanRepository.findActiveBookIdsIn(Mockito.anyCollection())).thenReturn(Arrays.asList(1L, 1500L));
+		BookAvailabilityIndex disabled = new BookAvailabilityIndex(loanRepository, false);
+		disabled.warm();
+		BookService service = new InMemoryBookService(builder.build(), disabled, loanRepository);
+
+		Page<Book> page = service.findAvailable(new Book(), PageRequest.of(0, 2));
+
+		assertThat(page.getContent()).extracting(Book::getId).containsExactly(2L, 3L);
+		assertThat(page.getTotalElements()).isEqualTo(2500 - 2);
+		Mockito.verify(loanRepository, Mockito.times(3)).findActiveBookIdsIn(Mockito.anyCollection());
+		Mockito.verify(loanRepository, Mockito.never()).existsByActiveBookId(Mockito.anyLong());
+	}
+
+	@Test
+	@DisplayName("Deve buscar por chave a partir do último id")
+	public void findAfterTest() {
+		Book all = new Book();
+
+		assertThat(service.findAfter(all, null, 2)).extracting(Book::getId).containsExactly(10L, 20L);
+		assertThat(service.findAfter(all, 20L, 2)).extracting(Book::getId).containsExactly(30L, 40L);
+		assertThat(service.findAfter(all, 25L, 10)).extracting(Book::getId).containsExactly(30L, 40L);
+		assertThat(service.findAfter(all, 40L, 10)).isEmpty();
+
+		List<Long> exported = new ArrayList<>();
+		service.export(Book.builder().isbn("00").build(), book -> exported.add(book.getId()));
+		assertThat(exported).containsExactly(10L, 20L, 30L, 40L);
+	}
+
+	@Test
+	@DisplayName("Deve recusar escritas no catálogo somente leitura")
+	public void readOnlyTest() {
+		Book book = Book.builder().id(10L).title("Novo").author("Autor").isbn("005").build();
+
+		assertThat(catchThrowable(() -> service.save(book))).isInstanceOf(BusinessException.class)
+				.hasMessage("Catalog is read-only");
+		assertThat(catchThrowable(() -> service.update(book))).isInstanceOf(BusinessException.class);
+		assertThat(catchThrowable(() -> service.delete(book))).isInstanceOf(BusinessException.class);
+		assertThat(catchThrowable(() -> service.saveAll(Arrays.asList(book)))).isInstanceOf(BusinessException.class);
+	}
+
+	@Test
+	@DisplayName("Deve carregar o snapshot NDJSON do export, mantendo a primeira ocorrência de cada id")
+	public void readNdjsonTest(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("books.ndjson");
+		List<String> lines = Arrays.asList(
+				"{\"id\":2,\"title\":\"Duna\",\"author\":\"Herbert\",\"isbn\":\"b\"}",
+				"{\"id\":1,\"title\":\"Duna\",\"author\":\"Herbert\",\"isbn\":\"a\"}",
+				"{\"id\":2,\"title\":\"Repetido\",\"author\":\"X\",\"isbn\":\"c\"}");
+		Files.write(file, lines, StandardCharsets.UTF_8);
+
+		CompactBookStore store = BookSnapshots.readNdjson(file, new ObjectMapper());
+
+		assertThat(store.size()).isEqualTo(2);
+		assertThat(store.book(store.rowOf(2L)).getTitle()).isEqualTo("Duna");
+		assertThat(store.rowOfIsbn("c")).isEqualTo(-1);
+		assertThat(store.id(0)).isEqualTo(1L);
+		assertThat(store.id(1)).isEqualTo(2L);
+	}
+
+}
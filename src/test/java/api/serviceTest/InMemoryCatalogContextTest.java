@@ -0,0 +1,38 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import api.service.BookService;
+import api.service.impl.InMemoryBookService;
+import api.service.search.BookSearchIndex;
+
+/**
+ * Com library.catalog.storage=memory o catálogo fica só no CompactBookStore: o índice de busca do BookServiceImpl
+ * não é criado nem carregado.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:memory-catalog;DB_CLOSE_DELAY=-1",
+		"library.catalog.storage=memory",
+		"library.catalog.snapshot=target/memory-catalog/books.ndjson",
+		"library.catalog.binary-snapshot.file=target/memory-catalog/catalog.snap" })
+public class InMemoryCatalogContextTest {
+
+	@Autowired
+	ApplicationContext context;
+
+	@Test
+	@DisplayName("Deve servir o catálogo em memória sem criar o índice de busca")
+	public void noSearchIndexTest() {
+		assertThat(context.getBean(BookService.class)).isInstanceOf(InMemoryBookService.class);
+		assertThat(context.getBeanNamesForType(BookSearchIndex.class)).isEmpty();
+	}
+
+}
@@ -0,0 +1,267 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import api.service.journal.LoanEvent;
+import api.service.journal.LoanJournal;
+
+public class LoanJournalTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	@DisplayName("Deve reaplicar na recuperação os eventos gravados depois do último checkpoint")
+	public void recoverAfterCheckpointTest() throws IOException {
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(journal.recover()).isEmpty();
+			List<LoanJournal.Position> positions = journal.write(Arrays.asList(event(1), event(2)));
+			journal.write(Arrays.asList(event(3)));
+			journal.checkpoint(positions.get(0));
+		}
+
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(2L, 3L);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve descartar um registro incompleto no fim do journal e continuar gravando depois dele")
+	public void recoverTornWriteTest() throws IOException {
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			journal.recover();
+			journal.write(Arrays.asList(event(1)));
+		}
+		Path segment = Files.list(dir).filter(path -> path.toString().endsWith(".log")).findFirst().get();
+		try (FileChannel file = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+			file.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2, 3 }));
+		}
+
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(1L);
+			journal.write(Arrays.asList(event(2)));
+		}
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(1L, 2L);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve desfazer um registro gravado pela metade quando o write falha, sem perder os seguintes")
+	public void failedWriteTest() throws IOException {
+		FailingChannel[] channel = new FailingChannel[1];
+		try (LoanJournal journal = new LoanJournal(dir, 1024) {
+			@Override
+			protected FileChannel openChannel(Path path) throws IOException {
+				channel[0] = new FailingChannel(super.openChannel(path));
+				return channel[0];
+			}
+		}) {
+			journal.recover();
+			journal.write(Arrays.asList(event(1)));
+			channel[0].failNextWrite = true;
+			assertThat(catchThrowable(() -> journal.write(Arrays.asList(event(2))))).isInstanceOf(IOException.class);
+			journal.write(Arrays.asList(event(3)));
+		}
+
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(1L, 3L);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve reaplicar todo o journal quando o checkpoint estiver vazio ou corrompido")
+	public void corruptedCheckpointTest() throws IOException {
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			journal.recover();
+			List<LoanJournal.Position> positions = journal.write(Arrays.asList(event(1), event(2)));
+			journal.checkpoint(positions.get(0));
+		}
+		Path checkpoint = dir.resolve("checkpoint");
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(2L);
+		}
+
+		Files.write(checkpoint, new byte[0]);
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(1L, 2L);
+		}
+
+		byte[] bytes = new byte[20];
+		bytes[7] = 1;
+		Files.write(checkpoint, bytes);
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(loanIds(journal.recover())).containsExactly(1L, 2L);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve abrir novos segmentos e apagar os já projetados")
+	public void segmentRollTest() throws IOException {
+		try (LoanJournal journal = new LoanJournal(dir, 64)) {
+			journal.recover();
+			journal.write(Arrays.asList(event(1), event(2)));
+			LoanJournal.Position last = journal.write(Arrays.asList(event(3), event(4))).get(1);
+			journal.write(Arrays.asList(event(5)));
+			assertThat(Files.list(dir).filter(path -> path.toString().endsWith(".log")).count()).isEqualTo(3);
+
+			journal.checkpoint(last);
+			assertThat(Files.list(dir).filter(path -> path.toString().endsWith(".log")).count()).isEqualTo(2);
+		}
+		try (LoanJournal journal = new LoanJournal(dir, 64)) {
+			assertThat(loanIds(journal.recover())).containsExactly(5L);
+		}
+	}
+
+	@Test
+	@DisplayName("Deve guardar no dead letter os eventos recusados, fora dos segmentos apagados pelo checkpoint")
+	public void deadLetterTest() throws IOException {
+		try (LoanJournal journal = new LoanJournal(dir, 64)) {
+			journal.recover();
+			LoanJournal.Position last = journal.write(Arrays.asList(event(1), event(2))).get(1);
+			journal.deadLetter(Arrays.asList(event(2)));
+			journal.write(Arrays.asList(event(3)));
+			journal.checkpoint(last);
+			journal.deadLetter(Arrays.asList(event(3)));
+		}
+
+		try (LoanJournal journal = new LoanJournal(dir, 64)) {
+			assertThat(journal.deadLetters()).extracting(LoanEvent::getLoanId).containsExactly(2L, 3L);
+		}
+	}
+
+	private static LoanEvent event(long loanId) {
+		return new LoanEvent(LoanEvent.CREATED, loanId, 100 + loanId, LocalDate.of(2024, 1, 1), "Cliente " + loanId);
+	}
+
+	private static List<Long> loanIds(List<LoanJournal.Entry> entries) {
+		return entries.stream().map(entry -> entry.getEvent().getLoanId()).collect(Collectors.toList());
+	}
+
+	/** Grava metade do buffer e falha, como um disco cheio no meio do registro */
+	private static class FailingChannel extends FileChannel {
+
+		private final FileChannel delegate;
+		boolean failNextWrite;
+
+		FailingChannel(FileChannel delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (failNextWrite) {
+				failNextWrite = false;
+				ByteBuffer half = src.duplicate();
+				half.limit(half.position() + half.remaining() / 2);
+				delegate.write(half);
+				throw new IOException("No space left on device");
+			}
+			return delegate.write(src);
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return delegate.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return delegate.read(dsts, offset, length);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return delegate.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException {
+			return delegate.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			delegate.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return delegate.size();
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			delegate.truncate(size);
+			return this;
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			delegate.force(metaData);
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return delegate.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return delegate.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return delegate.read(dst, position);
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			return delegate.write(src, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return delegate.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return delegate.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return delegate.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			delegate.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,219 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import api.exception.BusinessException;
+import api.model.entity.Book;
+import api.model.entity.Loan;
+import api.model.repository.LoanRepository;
+import api.service.LoanService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.impl.LoanServiceImpl;
+import api.service.journal.LoanWriteBehind;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LoanServiceTest {
+
+	LoanService service;
+
+	@MockBean
+	LoanRepository repository;
+
+	@BeforeEach
+	public void setup() {
+		this.service = new LoanServiceImpl(repository, new BookAvailabilityIndex(repository, false), null);
+	}
+
+	@Test
+	@DisplayName("Deve salvar um empréstimo")
+	public void saveLoanTest() {
+		Loan loan = createLoan();
+		Loan savedLoan = createLoan();
+		savedLoan.setId(1L);
+
+		Mockito.when(repository.existsByActiveBookId(1L)).thenReturn(false);
+		Mockito.when(repository.save(loan)).thenReturn(savedLoan);
+
+		Loan result = service.save(loan);
+
+		assertThat(result.getId()).isEqualTo(1L);
+		assertThat(loan.getReturned()).isFalse();
+	}
+
+	@Test
+	@DisplayName("Deve lançar erro de negócio ao emprestar um livro já emprestado")
+	public void loanedBookSaveTest() {
+		Loan loan = createLoan();
+		Mockito.when(repository.existsByActiveBookId(1L)).thenReturn(true);
+
+		Throwable exception = Assertions.catchThrowable(() -> service.save(loan));
+
+		assertThat(exception)
+		.isInstanceOf(BusinessException.class)
+		.hasMessage("Book already loaned");
+		Mockito.verify(repository, Mockito.never()).save(loan);
+	}
+
+	@Test
+	@DisplayName("Deve lançar erro de negócio quando outro empréstimo do livro vencer a corrida")
+	public void concurrentLoanSaveTest() {
+		Loan loan = createLoan();
+		Mockito.when(repository.existsByActiveBookId(1L)).thenReturn(false);
+		Mockito.when(repository.save(loan)).thenThrow(new DataIntegrityViolationException("uk_loan_active_book"));
+
+		Throwable exception = Assertions.catchThrowable(() -> service.save(loan));
+
+		assertThat(exception)
+		.isInstanceOf(BusinessException.class)
+		.hasMessage("Book already loaned");
+	}
+
+	@Test
+	@DisplayName("Deve liberar a reserva do livro quando o empréstimo pelo journal for recusado")
+	public void writeBehindLoanedBookSaveTest() {
+		LoanWriteBehind writeBehind = Mockito.mock(LoanWriteBehind.class);
+		LoanService journaled = new LoanServiceImpl(repository, new BookAvailabilityIndex(repository, false), writeBehind);
+		Loan loan = createLoan();
+		Mockito.when(writeBehind.reserve(1L)).thenReturn(true);
+		Mockito.when(repository.existsByActiveBookId(1L)).thenReturn(true);
+
+		Throwable exception = Assertions.catchThrowable(() -> journaled.save(loan));
+
+		assertThat(exception).isInstanceOf(BusinessException.class);
+		Mockito.verify(writeBehind).release(1L);
+		Mockito.verify(writeBehind, Mockito.never()).append(loan);
+		Mockito.verify(repository, Mockito.never()).save(loan);
+	}
+
+	@Test
+	@DisplayName("Deve checar a disponibilidade no índice em memória, sem consultar o banco")
+	public void availabilityIndexSaveTest() {
+		BookAvailabilityIndex availability = new BookAvailabilityIndex(repository, true);
+		availability.warm();
+		LoanService indexed = new LoanServiceImpl(repository, availability, null);
+		Loan loan = createLoan();
+		Mockito.when(repository.save(loan)).thenReturn(loan);
+
+		indexed.save(loan);
+		Throwable exception = Assertions.catchThrowable(() -> indexed.save(createLoan()));
+
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+		Mockito.verify(repository, Mockito.never()).existsByActiveBookId(Mockito.anyLong());
+	}
+
+	@Test
+	@DisplayName("Deve liberar o livro no índice de disponibilidade ao registrar a devolução")
+	public void returnLoanTest() {
+		BookAvailabilityIndex availability = new BookAvailabilityIndex(repository, true);
+		availability.warm();
+		availability.markLoaned(1L);
+		LoanService indexed = new LoanServiceImpl(repository, availability, null);
+		Loan loan = createLoan();
+		loan.setId(10L);
+		loan.setReturned(true);
+		Mockito.when(repository.save(loan)).thenReturn(loan);
+
+		indexed.update(loan);
+
+		assertThat(availability.isAvailable(1L)).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve recusar reabrir um empréstimo quando o livro tem empréstimo aguardando projeção no journal")
+	public void reopenPendingLoanTest() {
+		LoanWriteBehind writeBehind = Mockito.mock(LoanWriteBehind.class);
+		LoanService journaled = new LoanServiceImpl(repository, new BookAvailabilityIndex(repository, false), writeBehind);
+		Loan loan = createLoan();
+		loan.setId(10L);
+		loan.setVersion(1L);
+		loan.setReturned(false);
+		Mockito.when(writeBehind.reserve(1L)).thenReturn(false);
+
+		Throwable exception = Assertions.catchThrowable(() -> journaled.update(loan));
+
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+		Mockito.verify(repository, Mockito.never()).save(loan);
+	}
+
+	@Test
+	@DisplayName("Deve liberar o livro no índice de disponibilidade quando a reabertura falhar ao gravar")
+	public void reopenFailureReleasesBookTest() {
+		BookAvailabilityIndex availability = new BookAvailabilityIndex(repository, true);
+		availability.warm();
+		LoanService indexed = new LoanServiceImpl(repository, availability, null);
+		Loan loan = createLoan();
+		loan.setId(10L);
+		loan.setVersion(1L);
+		loan.setReturned(false);
+		Mockito.when(repository.save(loan)).thenThrow(new OptimisticLockingFailureException("stale loan"));
+
+		Throwable exception = Assertions.catchThrowable(() -> indexed.update(loan));
+
+		assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+		assertThat(availability.isAvailable(1L)).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve buscar por id um empréstimo do journal ainda não projetado")
+	public void getUnprojectedLoanTest() {
+		LoanWriteBehind writeBehind = Mockito.mock(LoanWriteBehind.class);
+		LoanService journaled = new LoanServiceImpl(repository, new BookAvailabilityIndex(repository, false), writeBehind);
+		Loan pending = createLoan();
+		pending.setId(10L);
+		Mockito.when(repository.findById(10L)).thenReturn(Optional.empty());
+		Mockito.when(writeBehind.awaitProjection(Mockito.eq(10L), Mockito.anyLong(), Mockito.any())).thenReturn(Optional.of(pending));
+
+		assertThat(journaled.getById(10L)).containsSame(pending);
+
+		Throwable exception = Assertions.catchThrowable(() -> journaled.update(pending));
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Loan is still being recorded, try again");
+		Mockito.verify(repository, Mockito.never()).save(pending);
+	}
+
+	@Test
+	@DisplayName("Deve escolher a consulta de empréstimos pelo filtro informado")
+	public void findTest() {
+		Pageable page = PageRequest.of(0, 10);
+
+		service.find(1L, null, page);
+		service.find(null, "Fulano", page);
+		service.find(1L, "Fulano", page);
+
+		Mockito.verify(repository).findByBook(1L, page);
+		Mockito.verify(repository).findByCustomer("Fulano", page);
+		Mockito.verify(repository).findByBookAndCustomer(1L, "Fulano", page);
+	}
+
+	@Test
+	@DisplayName("Deve lançar erro ao listar empréstimos sem filtro")
+	public void findWithoutFilterTest() {
+		Throwable exception = Assertions.catchThrowable(() -> service.find(null, null, PageRequest.of(0, 10)));
+
+		assertThat(exception).isInstanceOf(IllegalArgumentException.class).hasMessage("Book or customer must be informed");
+		Mockito.verifyNoInteractions(repository);
+	}
+
+	private Loan createLoan() {
+		Book book = Book.builder().id(1L).isbn("123").build();
+		return Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+	}
+
+}
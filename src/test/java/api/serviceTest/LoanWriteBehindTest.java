@@ -0,0 +1,257 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import api.exception.BusinessException;
+import api.model.entity.Book;
+import api.model.entity.Loan;
+import api.service.BookService;
+import api.service.LoanService;
+import api.service.journal.LoanEvent;
+import api.service.journal.LoanJournal;
+import api.service.journal.LoanProjector;
+import api.service.journal.LoanWriteBehind;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = { "library.loan.journal.enabled=true", "library.search.index.enabled=false" })
+public class LoanWriteBehindTest {
+
+	static final Path JOURNAL_DIR = createTempDir();
+
+	@DynamicPropertySource
+	static void journalDir(DynamicPropertyRegistry registry) {
+		registry.add("library.loan.journal.dir", JOURNAL_DIR::toString);
+	}
+
+	@Autowired
+	LoanService service;
+
+	@Autowired
+	BookService bookService;
+
+	@Autowired
+	JdbcTemplate jdbc;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	@Test
+	@DisplayName("Deve confirmar o empréstimo pelo journal e projetá-lo na tabela em segundo plano")
+	public void writeBehindLoanTest() throws InterruptedException {
+		Book book = bookService.save(Book.builder().isbn("journal-1").author("Fulano").title("As aventuras").build());
+
+		Loan loan = service.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+		assertThat(loan.getId()).isNotNull();
+
+		Throwable exception = Assertions.catchThrowable(() ->
+				service.save(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build()));
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+
+		assertThat(awaitLoanRow(loan.getId())).isEqualTo("Fulano");
+		assertThat(awaitCheckpoint()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve aguardar o replay do journal, sem falhar, o empréstimo que chega durante a inicialização")
+	public void appendDuringReplayTest() throws Exception {
+		Book replayed = bookService.save(Book.builder().isbn("journal-2").author("Fulano").title("Replay").build());
+		Book posted = bookService.save(Book.builder().isbn("journal-3").author("Fulano").title("Durante").build());
+		Path dir = Files.createTempDirectory("loan-journal-replay");
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			journal.recover();
+			journal.write(Arrays.asList(new LoanEvent(LoanEvent.CREATED, 900_001L, replayed.getId(), LocalDate.now(), "Fulano")));
+		}
+		CountDownLatch replaying = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		LoanProjector projector = new LoanProjector(jdbc, new TransactionTemplate(transactionManager)) {
+			@Override
+			public List<LoanEvent> apply(List<LoanEvent> events) {
+				replaying.countDown();
+				try {
+					proceed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.apply(events);
+			}
+		};
+		LoanWriteBehind writeBehind = new LoanWriteBehind(new LoanJournal(dir, 1024), projector,
+				entityManagerFactory.unwrap(SessionFactoryImplementor.class), 10, Duration.ofMinutes(1));
+		assertThat(writeBehind.getPhase()).isLessThan(WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			executor.submit(writeBehind::start);
+			assertThat(replaying.await(5, TimeUnit.SECONDS)).isTrue();
+			Future<Loan> loan = executor.submit(() -> writeBehind.append(
+					Loan.builder().book(posted).customer("Ciclano").loanDate(LocalDate.now()).returned(false).build()));
+			Thread.sleep(200);
+			assertThat(loan).isNotDone();
+
+			proceed.countDown();
+			assertThat(loan.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+			assertThat(awaitLoanRow(900_001L)).isEqualTo("Fulano");
+		} finally {
+			proceed.countDown();
+			writeBehind.stop();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("Deve falhar a inicialização quando o replay do journal não termina no prazo")
+	public void replayTimeoutTest() throws Exception {
+		Path dir = Files.createTempDirectory("loan-journal-timeout");
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			journal.recover();
+			journal.write(Arrays.asList(new LoanEvent(LoanEvent.CREATED, 900_004L, 1L, LocalDate.now(), "Fulano")));
+		}
+		LoanProjector projector = new LoanProjector(jdbc, new TransactionTemplate(transactionManager)) {
+			@Override
+			public List<LoanEvent> apply(List<LoanEvent> events) {
+				throw new IllegalStateException("database down");
+			}
+		};
+		LoanWriteBehind writeBehind = new LoanWriteBehind(new LoanJournal(dir, 1024), projector,
+				entityManagerFactory.unwrap(SessionFactoryImplementor.class), 10, Duration.ofMillis(100));
+
+		Throwable exception = Assertions.catchThrowable(writeBehind::start);
+
+		assertThat(exception).isInstanceOf(IllegalStateException.class).hasMessageStartingWith("Could not replay the loan journal");
+		assertThat(writeBehind.isRunning()).isFalse();
+	}
+
+	@Test
+	@DisplayName("Deve mover para o dead letter o empréstimo do journal recusado pelo banco, sem perdê-lo")
+	public void deadLetterTest() throws Exception {
+		Book book = bookService.save(Book.builder().isbn("journal-4").author("Fulano").title("Rejeitado").build());
+		Path dir = Files.createTempDirectory("loan-journal-dead-letter");
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			journal.recover();
+			journal.write(Arrays.asList(new LoanEvent(LoanEvent.CREATED, 900_002L, book.getId(), LocalDate.now(), "Fulano"),
+					new LoanEvent(LoanEvent.CREATED, 900_003L, book.getId(), LocalDate.now(), "Ciclano")));
+		}
+		LoanWriteBehind writeBehind = new LoanWriteBehind(new LoanJournal(dir, 1024),
+				new LoanProjector(jdbc, new TransactionTemplate(transactionManager)),
+				entityManagerFactory.unwrap(SessionFactoryImplementor.class), 10, Duration.ofMinutes(1));
+
+		writeBehind.start();
+		writeBehind.stop();
+
+		assertThat(awaitLoanRow(900_002L)).isEqualTo("Fulano");
+		try (LoanJournal journal = new LoanJournal(dir, 1024)) {
+			assertThat(journal.deadLetters()).extracting(LoanEvent::getLoanId).containsExactly(900_003L);
+			assertThat(journal.recover()).isEmpty();
+		}
+	}
+
+	@Test
+	@DisplayName("Deve devolver por id o empréstimo confirmado enquanto a projeção não termina")
+	public void readUnprojectedLoanTest() throws Exception {
+		Book book = bookService.save(Book.builder().isbn("journal-5").author("Fulano").title("Pendente").build());
+		CountDownLatch proceed = new CountDownLatch(1);
+		LoanProjector projector = new LoanProjector(jdbc, new TransactionTemplate(transactionManager)) {
+			@Override
+			public List<LoanEvent> apply(List<LoanEvent> events) {
+				try {
+					proceed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.apply(events);
+			}
+		};
+		LoanWriteBehind writeBehind = new LoanWriteBehind(new LoanJournal(Files.createTempDirectory("loan-journal-read"), 1024),
+				projector, entityManagerFactory.unwrap(SessionFactoryImplementor.class), 10, Duration.ofMinutes(1));
+		writeBehind.start();
+		try {
+			Loan loan = writeBehind.append(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).returned(false).build());
+
+			assertThat(writeBehind.awaitProjection(loan.getId(), 100, TimeUnit.MILLISECONDS))
+					.hasValueSatisfying(pending -> assertThat(pending.getCustomer()).isEqualTo("Ciclano"));
+
+			proceed.countDown();
+			assertThat(writeBehind.awaitProjection(loan.getId(), 5, TimeUnit.SECONDS)).isEmpty();
+			assertThat(awaitLoanRow(loan.getId())).isEqualTo("Ciclano");
+		} finally {
+			proceed.countDown();
+			writeBehind.stop();
+		}
+	}
+
+	@Test
+	@DisplayName("Deve completar o saveAsync depois do fsync do journal e recusar na hora o livro já emprestado")
+	public void saveAsyncTest() throws Exception {
+		Book book = bookService.save(Book.builder().isbn("journal-6").author("Fulano").title("Async").build());
+
+		CompletableFuture<Loan> loan = service.saveAsync(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+		assertThat(loan.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+
+		Throwable exception = Assertions.catchThrowable(() ->
+				service.saveAsync(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build()));
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+
+		assertThat(awaitLoanRow(loan.get().getId())).isEqualTo("Fulano");
+	}
+
+	/** O checkpoint é gravado logo depois do commit da projeção */
+	private boolean awaitCheckpoint() throws InterruptedException {
+		for (int attempt = 0; attempt < 100 && !Files.exists(JOURNAL_DIR.resolve("checkpoint")); attempt++) {
+			Thread.sleep(50);
+		}
+		return Files.exists(JOURNAL_DIR.resolve("checkpoint"));
+	}
+
+	private String awaitLoanRow(Long id) throws InterruptedException {
+		for (int attempt = 0; attempt < 100; attempt++) {
+			if (jdbc.queryForObject("select count(*) from loan where id = ?", Integer.class, id) > 0) {
+				return jdbc.queryForObject("select customer from loan where id = ?", String.class, id);
+			}
+			Thread.sleep(50);
+		}
+		return null;
+	}
+
+	private static Path createTempDir() {
+		try {
+			return Files.createTempDirectory("loan-journal");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import api.model.projection.OverdueLoanView;
+import api.model.repository.LoanRepository;
+import api.service.overdue.OverdueLoanScanner;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OverdueLoanScannerTest {
+
+	static final LocalDate TODAY = LocalDate.of(2024, 3, 1);
+	static final LocalDate LOANED_BEFORE = TODAY.minusDays(14);
+
+	@MockBean
+	LoanRepository repository;
+
+	@TempDir
+	Path dir;
+
+	List<Long> delivered = new ArrayList<>();
+
+	@BeforeEach
+	public void setUp() {
+		Mockito.when(repository.findOverdueAfter(0L, LOANED_BEFORE, PageRequest.of(0, 2))).thenReturn(Arrays.asList(loan(1), loan(5)));
+		Mockito.when(repository.findOverdueAfter(5L, LOANED_BEFORE, PageRequest.of(0, 2))).thenReturn(Arrays.asList(loan(8)));
+		Mockito.when(repository.findOverdueAfter(8L, LOANED_BEFORE, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+	}
+
+	@Test
+	@DisplayName("Deve percorrer os empréstimos em atraso em lotes por chave")
+	public void scanTest() {
+		OverdueLoanScanner scanner = scanner(Collections.emptyList());
+
+		int total = scanner.scan();
+
+		assertThat(total).isEqualTo(3);
+		assertThat(delivered).containsExactly(1L, 5L, 8L);
+	}
+
+	@Test
+	@DisplayName("Deve retomar a varredura interrompida a partir do último lote entregue")
+	public void resumeScanTest() {
+		OverdueLoanScanner failing = scanner(Arrays.asList(8L));
+		Throwable exception = Assertions.catchThrowable(failing::scan);
+		assertThat(exception).isInstanceOf(IllegalStateException.class);
+		assertThat(delivered).containsExactly(1L, 5L);
+
+		delivered.clear();
+		int total = scanner(Collections.emptyList()).scan();
+
+		assertThat(total).isEqualTo(1);
+		assertThat(delivered).containsExactly(8L);
+		Mockito.verify(repository, Mockito.times(1)).findOverdueAfter(0L, LOANED_BEFORE, PageRequest.of(0, 2));
+	}
+
+	private OverdueLoanScanner scanner(List<Long> failOn) {
+		Clock clock = Clock.fixed(TODAY.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+		return new OverdueLoanScanner(repository, Arrays.asList(loans -> {
+			List<Long> ids = loans.stream().map(OverdueLoanView::getId).collect(Collectors.toList());
+			if (ids.stream().anyMatch(failOn::contains)) {
+				throw new IllegalStateException("sink unavailable");
+			}
+			delivered.addAll(ids);
+		}), Period.ofDays(14), 2, dir.resolve("overdue.checkpoint"), clock);
+	}
+
+	private static OverdueLoanView loan(long id) {
+		return new OverdueLoanView() {
+			public Long getId() { return id; }
+			public String getCustomer() { return "Fulano"; }
+			public LocalDate getLoanDate() { return LOANED_BEFORE.minusDays(1); }
+			public Long getBookId() { return id; }
+			public String getIsbn() { return "isbn-" + id; }
+		};
+	}
+
+}
@@ -0,0 +1,142 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import api.config.ReplicaLagMonitor;
+import api.model.entity.Book;
+import api.model.entity.Loan;
+import api.model.repository.LoanRepository;
+import api.service.BookService;
+import api.service.LoanService;
+
+/**
+ * Dois bancos H2 em memória fazem o papel de primário e réplica; a "replicação" é feita à mão no teste.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+		"library.datasource.replica.enabled=true",
+		"library.datasource.replica.url=" + ReadReplicaRoutingTest.REPLICA_URL,
+		"library.datasource.replica.lag-query=select max(lag) from replica_lag",
+		"library.datasource.replica.max-lag=5s",
+		"library.datasource.replica.check-interval=1h",
+		"library.search.index.enabled=false" })
+public class ReadReplicaRoutingTest {
+
+	static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	BookService service;
+
+	@Autowired
+	LoanService loanService;
+
+	@Autowired
+	LoanRepository loanRepository;
+
+	@Autowired
+	JdbcTemplate primary;
+
+	@Autowired
+	ReplicaLagMonitor monitor;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	Book book;
+
+	@BeforeEach
+	public void setUp() throws SQLException {
+		book = service.save(Book.builder().isbn("replica-1").author("Fulano").title("Titulo no primario").build());
+		replica("create table if not exists book (id bigint primary key, author varchar(255), isbn varchar(255),"
+				+ " title varchar(255), updated_at timestamp, version bigint)");
+		replica("create table if not exists loan (id bigint primary key, active_book_id bigint, book_id bigint,"
+				+ " customer varchar(255), loan_date date, returned boolean, version bigint)");
+		replica("create table if not exists replica_lag (lag double)");
+		replica("insert into book (id, author, isbn, title, version) values (" + book.getId()
+				+ ", 'Fulano', 'replica-1', 'Titulo na replica', 0)");
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@AfterEach
+	public void tearDown() throws SQLException {
+		loanRepository.deleteAll();
+		service.delete(book);
+		replica("delete from loan");
+		replica("delete from book");
+		replica("delete from replica_lag");
+	}
+
+	@Test
+	@DisplayName("Deve ler da réplica nas consultas somente leitura e gravar no primário")
+	public void readsFromReplicaTest() throws SQLException {
+		replica("insert into replica_lag values (0)");
+		monitor.check();
+
+		assertThat(service.getById(book.getId())).map(Book::getTitle).contains("Titulo na replica");
+		assertThat(primary.queryForObject("select title from book where id = ?", String.class, book.getId()))
+			.isEqualTo("Titulo no primario");
+	}
+
+	@Test
+	@DisplayName("Deve voltar a ler do primário quando a réplica estiver atrasada")
+	public void fallsBackToPrimaryWhenLaggingTest() throws SQLException {
+		replica("insert into replica_lag values (60)");
+		monitor.check();
+
+		assertThat(monitor.isAvailable()).isFalse();
+		assertThat(service.getById(book.getId())).map(Book::getTitle).contains("Titulo no primario");
+	}
+
+	@Test
+	@DisplayName("Deve ler do primário, e não do cache, o livro a alterar mesmo com a réplica disponível")
+	public void readsForUpdateFromPrimaryTest() throws SQLException {
+		replica("insert into replica_lag values (0)");
+		replica("insert into book (id, title, author, isbn, version) values (" + (book.getId() + 1)
+				+ ", 'Somente na replica', 'Autor', 'isbn-replica', 0)");
+		monitor.check();
+
+		assertThat(service.getById(book.getId())).map(Book::getTitle).contains("Titulo na replica");
+		assertThat(service.getForUpdate(book.getId())).map(Book::getTitle).contains("Titulo no primario");
+		assertThat(service.getForUpdate(book.getId() + 1)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve ler do primário o empréstimo a devolver, ainda que a réplica não o tenha")
+	public void readsLoanForUpdateFromPrimaryTest() throws SQLException {
+		Loan loan = loanService.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(false).build());
+		replica("insert into replica_lag values (0)");
+		monitor.check();
+
+		assertThat(loanService.getById(loan.getId())).isEmpty();
+		assertThat(loanService.getForUpdate(loan.getId())).hasValueSatisfying(found -> {
+			assertThat(found.getVersion()).isEqualTo(loan.getVersion());
+			assertThat(found.getBook().getTitle()).isEqualTo("Titulo no primario");
+		});
+	}
+
+	private static void replica(String sql) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+				Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+}
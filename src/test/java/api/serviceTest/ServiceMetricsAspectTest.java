@@ -0,0 +1,57 @@
+package api.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import api.config.ServiceMetricsAspect;
+import api.exception.BusinessException;
+import api.model.entity.Book;
+import api.model.repository.LoanRepository;
+import api.service.BookService;
+import api.service.availability.BookAvailabilityIndex;
+import api.service.impl.InMemoryBookService;
+import api.service.memory.CompactBookStore;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ServiceMetricsAspectTest {
+
+	SimpleMeterRegistry registry;
+	BookService service;
+
+	@BeforeEach
+	public void setup() {
+		registry = new SimpleMeterRegistry();
+		LoanRepository loanRepository = Mockito.mock(LoanRepository.class);
+		CompactBookStore store = CompactBookStore.builder().add(1L, "Dom Casmurro", "Machado", "001").build();
+		AspectJProxyFactory factory = new AspectJProxyFactory(
+				new InMemoryBookService(store, new BookAvailabilityIndex(loanRepository, false), loanRepository));
+		// proxy por classe, como o Spring Boot cria (spring.aop.proxy-target-class=true)
+		factory.setProxyTargetClass(true);
+		factory.addAspect(new ServiceMetricsAspect(registry));
+		service = factory.getProxy();
+	}
+
+	@Test
+	@DisplayName("Deve medir cada chamada de serviço com as tags de classe, método e exceção")
+	public void timerTagsTest() {
+		service.getById(1L);
+		service.getById(2L);
+		assertThat(catchThrowable(() -> service.save(new Book()))).isInstanceOf(BusinessException.class);
+
+		Timer success = registry.get("library.service")
+				.tags("class", "InMemoryBookService", "method", "getById", "exception", "none").timer();
+		Timer failure = registry.get("library.service")
+				.tags("class", "InMemoryBookService", "method", "save", "exception", "BusinessException").timer();
+		assertThat(success.count()).isEqualTo(2);
+		assertThat(failure.count()).isEqualTo(1);
+		assertThat(registry.find("library.service").tags("method", "save", "exception", "none").timer()).isNull();
+	}
+
+}
@@ -0,0 +1,30 @@
+package api.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.assertj.core.api.ThrowableAssert.ThrowingCallable;
+
+import api.config.QueryCounter;
+
+/**
+ * Asserção de orçamento de consultas SQL para os testes de repositório e de controller.
+ * Ex: QueryBudget.assertMaxQueries(1, () -> repository.findByIsbn("123"));
+ */
+public final class QueryBudget {
+
+	private QueryBudget() {
+	}
+
+	public static void assertMaxQueries(int max, ThrowingCallable action) {
+		QueryCounter.reset();
+		try {
+			action.call();
+		} catch (Throwable e) {
+			throw new AssertionError("Action failed while counting queries", e);
+		}
+		assertThat(QueryCounter.count())
+			.as("SQL statements executed")
+			.isLessThanOrEqualTo(max);
+	}
+
+}